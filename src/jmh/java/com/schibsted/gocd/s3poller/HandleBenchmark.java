@@ -0,0 +1,62 @@
+package com.schibsted.gocd.s3poller;
+
+import com.thoughtworks.go.plugin.api.request.DefaultGoPluginApiRequest;
+import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// PackageRepositoryMaterial.handle for every request name, against an in-memory bucket. Polls are mostly answered
+// from the listing cache, as they are between two uploads.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandleBenchmark {
+
+    @Param({
+        PackageRepositoryMaterial.REQUEST_REPOSITORY_CONFIGURATION,
+        PackageRepositoryMaterial.REQUEST_PACKAGE_CONFIGURATION,
+        PackageRepositoryMaterial.REQUEST_VALIDATE_REPOSITORY_CONFIGURATION,
+        PackageRepositoryMaterial.REQUEST_VALIDATE_PACKAGE_CONFIGURATION,
+        PackageRepositoryMaterial.REQUEST_CHECK_REPOSITORY_CONNECTION,
+        PackageRepositoryMaterial.REQUEST_CHECK_PACKAGE_CONNECTION,
+        PackageRepositoryMaterial.REQUEST_LATEST_PACKAGE_REVISION,
+        PackageRepositoryMaterial.REQUEST_LATEST_PACKAGE_REVISION_SINCE
+    })
+    String requestName;
+
+    PackageRepositoryMaterial material;
+    DefaultGoPluginApiRequest request;
+
+    @Setup
+    public void setUp() {
+        material = new PackageRepositoryMaterial(new InMemoryS3Client("bucket", 1000).withBuilds("path/", 5000));
+        request = new DefaultGoPluginApiRequest(PackageRepositoryMaterial.EXTENSION, "1.0", requestName);
+        if (requestName.equals(PackageRepositoryMaterial.REQUEST_VALIDATE_REPOSITORY_CONFIGURATION)
+            || requestName.equals(PackageRepositoryMaterial.REQUEST_CHECK_REPOSITORY_CONNECTION)) {
+            request.setRequestBody(JsonCodecBenchmark.REPOSITORY_REQUEST);
+        } else if (requestName.equals(PackageRepositoryMaterial.REQUEST_LATEST_PACKAGE_REVISION_SINCE)) {
+            request.setRequestBody(JsonCodecBenchmark.REVISION_SINCE_REQUEST);
+        } else {
+            request.setRequestBody(JsonCodecBenchmark.PACKAGE_REQUEST);
+        }
+    }
+
+    @Benchmark
+    public GoPluginApiResponse handle() {
+        return material.handle(request);
+    }
+}
@@ -0,0 +1,75 @@
+package com.schibsted.gocd.s3poller;
+
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.schibsted.gocd.s3poller.fake.FakeBucket;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Answers requests for one bucket straight from a FakeBucket, without HTTP.
+public class InMemoryS3Client extends AmazonS3Client {
+
+    private final FakeBucket bucket;
+    private final int pageSize;
+    private final AtomicLong listRequests = new AtomicLong();
+
+    public InMemoryS3Client(String bucketName, int pageSize) {
+        this.bucket = new FakeBucket(bucketName);
+        this.pageSize = pageSize;
+    }
+
+    public InMemoryS3Client withBuilds(String prefix, int count) {
+        bucket.withBuilds(prefix, count);
+        return this;
+    }
+
+    public long getListRequests() {
+        return listRequests.get();
+    }
+
+    @Override
+    public boolean doesBucketExist(String bucketName) {
+        return bucket.getName().equals(bucketName);
+    }
+
+    @Override
+    public ObjectListing listObjects(String bucketName, String prefix) {
+        return listObjects(new ListObjectsRequest().withBucketName(bucketName).withPrefix(prefix));
+    }
+
+    @Override
+    public ObjectListing listNextBatchOfObjects(ObjectListing previous) {
+        return listObjects(new ListObjectsRequest(previous.getBucketName(), previous.getPrefix(), previous.getNextMarker(),
+            previous.getDelimiter(), previous.getMaxKeys()));
+    }
+
+    @Override
+    public ObjectListing listObjects(ListObjectsRequest request) {
+        listRequests.incrementAndGet();
+        if (!bucket.getName().equals(request.getBucketName())) {
+            return new ObjectListing();
+        }
+        int maxKeys = request.getMaxKeys() == null ? pageSize : Math.min(request.getMaxKeys(), pageSize);
+        return bucket.list(request.getPrefix(), request.getMarker(), request.getDelimiter(), maxKeys);
+    }
+
+    @Override
+    public ObjectMetadata getObjectMetadata(String bucketName, String key) {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.addUserMetadata("version", key);
+        return metadata;
+    }
+
+    @Override
+    public URL getUrl(String bucketName, String key) {
+        try {
+            return new URL("https://" + bucketName + ".s3.amazonaws.com/" + key);
+        } catch (MalformedURLException ex) {
+            throw new IllegalArgumentException(ex);
+        }
+    }
+}
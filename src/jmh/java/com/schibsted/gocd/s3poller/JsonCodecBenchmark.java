@@ -0,0 +1,123 @@
+package com.schibsted.gocd.s3poller;
+
+import com.schibsted.gocd.s3poller.message.CheckConnectionResultMessage;
+import com.schibsted.gocd.s3poller.message.LatestPackageRevisionMessage;
+import com.schibsted.gocd.s3poller.message.LatestPackageRevisionSinceMessage;
+import com.schibsted.gocd.s3poller.message.PackageConnectionMessage;
+import com.schibsted.gocd.s3poller.message.PackageMaterialProperty;
+import com.schibsted.gocd.s3poller.message.PackageRevisionMessage;
+import com.schibsted.gocd.s3poller.message.RepositoryConnectionMessage;
+import com.schibsted.gocd.s3poller.message.ValidatePackageConfigurationMessage;
+import com.schibsted.gocd.s3poller.message.ValidateRepositoryConfigurationMessage;
+import com.schibsted.gocd.s3poller.message.ValidationError;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Encoding and decoding of every plugin message through JsonUtil.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonCodecBenchmark {
+
+    static final String REPOSITORY_CONFIGURATION = "\"repository-configuration\":{\"S3_BUCKET\":{\"value\":\"bucket\"}}";
+    static final String PACKAGE_CONFIGURATION = "\"package-configuration\":{\"S3_PATH\":{\"value\":\"path/\"}}";
+    static final String PREVIOUS_REVISION = "\"previous-revision\":{\"revision\":\"1.0.42\",\"timestamp\":\"2015-07-04T10:00:00.000Z\"," +
+        "\"user\":\"S3\",\"revisionComment\":\"Object at path/build-42/app.zip\",\"data\":{\"LATEST_KEY\":\"path/build-42/app.zip\"," +
+        "\"ETAG\":\"etag\",\"LAST_MODIFIED\":\"1436004000000\",\"MARKER\":\"path/build-42/app.zip\"}}";
+
+    static final String REPOSITORY_REQUEST = "{" + REPOSITORY_CONFIGURATION + "}";
+    static final String PACKAGE_REQUEST = "{" + REPOSITORY_CONFIGURATION + "," + PACKAGE_CONFIGURATION + "}";
+    static final String REVISION_SINCE_REQUEST = "{" + REPOSITORY_CONFIGURATION + "," + PACKAGE_CONFIGURATION + "," +
+        PREVIOUS_REVISION + "}";
+
+    PackageRevisionMessage revision;
+    Map<String, PackageMaterialProperty> repositoryConfiguration;
+    Map<String, PackageMaterialProperty> packageConfiguration;
+    CheckConnectionResultMessage checkConnectionResult;
+    List<ValidationError> validationErrors;
+
+    @Setup
+    public void setUp() {
+        revision = new PackageRevisionMessage("1.0.42", new Date(1436004000000L), "S3", "Object at path/build-42/app.zip",
+            "https://ci.example.com/build/42");
+        new ListingCursor("path/build-42/app.zip", "etag", 1436004000000L, "path/build-42/app.zip").writeTo(revision);
+        PackageRepositoryConfigurationProvider configurationProvider = new PackageRepositoryConfigurationProvider();
+        repositoryConfiguration = configurationProvider.repositoryConfiguration().getPropertyMap();
+        packageConfiguration = configurationProvider.packageConfiguration().getPropertyMap();
+        checkConnectionResult = new CheckConnectionResultMessage(CheckConnectionResultMessage.STATUS.SUCCESS,
+            Arrays.asList("Objects found on path"));
+        validationErrors = Arrays.asList(ValidationError.create(Constants.S3_PATH, "S3 path must be specified"));
+    }
+
+    @Benchmark
+    public String encodeRevision() {
+        return JsonUtil.toJsonString(revision);
+    }
+
+    @Benchmark
+    public String encodeRepositoryConfiguration() {
+        return JsonUtil.toJsonString(repositoryConfiguration);
+    }
+
+    @Benchmark
+    public String encodePackageConfiguration() {
+        return JsonUtil.toJsonString(packageConfiguration);
+    }
+
+    @Benchmark
+    public String encodeCheckConnectionResult() {
+        return JsonUtil.toJsonString(checkConnectionResult);
+    }
+
+    @Benchmark
+    public String encodeValidationErrors() {
+        return JsonUtil.toJsonString(validationErrors);
+    }
+
+    @Benchmark
+    public Object decodeValidateRepositoryConfiguration() {
+        return JsonUtil.fromJsonString(REPOSITORY_REQUEST, ValidateRepositoryConfigurationMessage.class);
+    }
+
+    @Benchmark
+    public Object decodeValidatePackageConfiguration() {
+        return JsonUtil.fromJsonString(PACKAGE_REQUEST, ValidatePackageConfigurationMessage.class);
+    }
+
+    @Benchmark
+    public Object decodeRepositoryConnection() {
+        return JsonUtil.fromJsonString(REPOSITORY_REQUEST, RepositoryConnectionMessage.class);
+    }
+
+    @Benchmark
+    public Object decodePackageConnection() {
+        return JsonUtil.fromJsonString(PACKAGE_REQUEST, PackageConnectionMessage.class);
+    }
+
+    @Benchmark
+    public Object decodeLatestRevision() {
+        return JsonUtil.fromJsonString(PACKAGE_REQUEST, LatestPackageRevisionMessage.class);
+    }
+
+    @Benchmark
+    public Object decodeLatestRevisionSince() {
+        return JsonUtil.fromJsonString(REVISION_SINCE_REQUEST, LatestPackageRevisionSinceMessage.class);
+    }
+}
@@ -0,0 +1,57 @@
+package com.schibsted.gocd.s3poller;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Picking the newest of the listed summaries (ListingResult.getLatest) in listing order.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LatestSelectionBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    int objects;
+
+    List<S3ObjectSummary> summaries;
+
+    @Setup
+    public void setUp() {
+        summaries = new ArrayList<S3ObjectSummary>(objects);
+        for (int i = 0; i < objects; i++) {
+            S3ObjectSummary summary = new S3ObjectSummary();
+            summary.setBucketName("bucket");
+            summary.setKey(String.format("path/build-%07d/app.zip", i));
+            summary.setETag(Integer.toHexString(i));
+            summary.setLastModified(new Date(1436000000000L + i * 1000L));
+            summaries.add(summary);
+        }
+        Collections.shuffle(summaries, new Random(42));
+    }
+
+    @Benchmark
+    public S3ObjectSummary latest() {
+        ListingResult result = new ListingResult();
+        result.add(summaries);
+        return result.getLatest();
+    }
+}
@@ -0,0 +1,64 @@
+package com.schibsted.gocd.s3poller;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Paging through a prefix of an in-memory bucket, measuring the plugin's side of the listing.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListingBenchmark {
+
+    @Param({"10000", "100000"})
+    int objects;
+
+    @Param({"1000"})
+    int pageSize;
+
+    ExecutorService executor;
+    ListingEngine engine;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(8, new DaemonThreadFactory("benchmark-listing"));
+        engine = new ListingEngine(new InMemoryS3Client("bucket", pageSize).withBuilds("path/", objects), executor);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public ListingResult list() {
+        return engine.list("bucket", "path/");
+    }
+
+    @Benchmark
+    public ListingResult listAfterLastKey() {
+        return engine.listAfter("bucket", "path/", String.format("path/build-%07d/", objects));
+    }
+
+    @Benchmark
+    public ListingResult listGreatest() {
+        return engine.listGreatest("bucket", "path/");
+    }
+}
@@ -0,0 +1,83 @@
+package com.schibsted.gocd.s3poller;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Groups the packages of a bucket by their parent prefix ("releases/" for "releases/serviceA/"), so a parent with
+// enough packages under it is listed once for all of them. A parent whose keys mostly belong to no package is cheaper
+// to poll package by package and is not batched again.
+public class BatchPlanner {
+
+    private final int minPackages;
+    private final ConcurrentMap<S3Location, Set<String>> packagesByParent = new ConcurrentHashMap<S3Location, Set<String>>();
+    private final Set<S3Location> unbatched = Collections.newSetFromMap(new ConcurrentHashMap<S3Location, Boolean>());
+
+    private final Logger log = Logger.getLoggerFor(this.getClass());
+
+    // Fewer than 2 packages per batch turns batching off.
+    public BatchPlanner(int minPackages) {
+        this.minPackages = minPackages;
+    }
+
+    // Remembers the package and returns the batch it can be polled with, null when it is polled on its own.
+    public Batch plan(S3Location location) {
+        String parentPrefix = parentOf(location.getPrefix());
+        if (minPackages < 2 || parentPrefix == null) {
+            return null;
+        }
+        S3Location parent = new S3Location(location.getBucketName(), parentPrefix);
+        Set<String> packages = packagesByParent.get(parent);
+        if (packages == null) {
+            Set<String> created = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+            packages = packagesByParent.putIfAbsent(parent, created);
+            if (packages == null) {
+                packages = created;
+            }
+        }
+        packages.add(location.getPrefix());
+        if (packages.size() < minPackages || unbatched.contains(parent)) {
+            return null;
+        }
+        return new Batch(parent, new ArrayList<String>(packages));
+    }
+
+    // Stops batching a parent when less than half of its listed keys belonged to a package.
+    public void learn(Batch batch, long listedKeys, long routedKeys) {
+        if (routedKeys * 2 < listedKeys && unbatched.add(batch.getParent())) {
+            log.info("polling the packages under " + batch.getParent() + " one by one, only " + routedKeys + " of its " +
+                listedKeys + " keys belong to them");
+        }
+    }
+
+    // The prefix up to the previous "/", null for top level prefixes: the bucket root is never listed as a whole.
+    static String parentOf(String prefix) {
+        int end = prefix.endsWith(ListingEngine.DELIMITER) ? prefix.length() - 1 : prefix.length();
+        int slash = prefix.lastIndexOf(ListingEngine.DELIMITER, end - 1);
+        return slash < 0 ? null : prefix.substring(0, slash + 1);
+    }
+
+    public static class Batch {
+
+        private final S3Location parent;
+        private final List<String> prefixes;
+
+        public Batch(S3Location parent, List<String> prefixes) {
+            this.parent = parent;
+            this.prefixes = prefixes;
+        }
+
+        public S3Location getParent() {
+            return parent;
+        }
+
+        public List<String> getPrefixes() {
+            return prefixes;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.schibsted.gocd.s3poller;
+
+import com.amazonaws.regions.Region;
+import com.amazonaws.regions.Regions;
+import com.amazonaws.services.s3.AmazonS3Client;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Resolves the region of a bucket once and remembers it.
+public class BucketRegions {
+
+    public static final String US_STANDARD = "us-east-1";
+
+    private final AmazonS3Client client;
+    private final ConcurrentMap<String, String> regions = new ConcurrentHashMap<String, String>();
+
+    public BucketRegions(AmazonS3Client client) {
+        this.client = client;
+    }
+
+    public String regionOf(String bucketName) {
+        String region = regions.get(bucketName);
+        if (region == null) {
+            region = normalize(client.getBucketLocation(bucketName));
+            regions.put(bucketName, region);
+        }
+        return region;
+    }
+
+    // GetBucketLocation answers with the legacy names US (or nothing) and EU for the two oldest regions.
+    static String normalize(String location) {
+        if (location == null || location.isEmpty() || "US".equals(location)) {
+            return US_STANDARD;
+        }
+        if ("EU".equals(location)) {
+            return Regions.EU_WEST_1.getName();
+        }
+        return location;
+    }
+
+    public static String endpointOf(String region) {
+        try {
+            return Region.getRegion(Regions.fromName(region)).getServiceEndpoint("s3");
+        } catch (IllegalArgumentException ex) {
+            return "s3." + region + ".amazonaws.com";
+        }
+    }
+}
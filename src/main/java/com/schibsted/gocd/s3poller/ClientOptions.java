@@ -0,0 +1,79 @@
+package com.schibsted.gocd.s3poller;
+
+import com.amazonaws.ClientConfiguration;
+
+// Connection pool settings of the S3 clients of a repository. Clients are shared by repositories with equal options.
+public class ClientOptions {
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 128;
+    public static final int DEFAULT_CONNECTION_TIMEOUT_MILLIS = 10000;
+    public static final int DEFAULT_SOCKET_TIMEOUT_MILLIS = ClientConfiguration.DEFAULT_SOCKET_TIMEOUT;
+    public static final ClientOptions DEFAULTS = new ClientOptions(DEFAULT_MAX_CONNECTIONS,
+        DEFAULT_CONNECTION_TIMEOUT_MILLIS, DEFAULT_SOCKET_TIMEOUT_MILLIS, true);
+
+    private final int maxConnections;
+    private final int connectionTimeoutMillis;
+    private final int socketTimeoutMillis;
+    private final boolean tcpKeepAlive;
+
+    public ClientOptions(int maxConnections, int connectionTimeoutMillis, int socketTimeoutMillis, boolean tcpKeepAlive) {
+        this.maxConnections = maxConnections;
+        this.connectionTimeoutMillis = connectionTimeoutMillis;
+        this.socketTimeoutMillis = socketTimeoutMillis;
+        this.tcpKeepAlive = tcpKeepAlive;
+    }
+
+    public ClientConfiguration toClientConfiguration() {
+        return new ClientConfiguration()
+            .withMaxConnections(maxConnections)
+            .withConnectionTimeout(connectionTimeoutMillis)
+            .withSocketTimeout(socketTimeoutMillis)
+            .withTcpKeepAlive(tcpKeepAlive);
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public int getConnectionTimeoutMillis() {
+        return connectionTimeoutMillis;
+    }
+
+    public int getSocketTimeoutMillis() {
+        return socketTimeoutMillis;
+    }
+
+    public boolean isTcpKeepAlive() {
+        return tcpKeepAlive;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ClientOptions that = (ClientOptions) o;
+
+        if (maxConnections != that.maxConnections) return false;
+        if (connectionTimeoutMillis != that.connectionTimeoutMillis) return false;
+        if (socketTimeoutMillis != that.socketTimeoutMillis) return false;
+        if (tcpKeepAlive != that.tcpKeepAlive) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = maxConnections;
+        result = 31 * result + connectionTimeoutMillis;
+        result = 31 * result + socketTimeoutMillis;
+        result = 31 * result + (tcpKeepAlive ? 1 : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "maxConnections=" + maxConnections + ", connectionTimeout=" + connectionTimeoutMillis +
+            "ms, socketTimeout=" + socketTimeoutMillis + "ms, tcpKeepAlive=" + tcpKeepAlive;
+    }
+}
@@ -3,4 +3,28 @@ package com.schibsted.gocd.s3poller;
 public class Constants {
     public static final String S3_BUCKET = "S3_BUCKET";
     public static final String S3_PATH = "S3_PATH";
+    public static final String KEY_ORDER = "KEY_ORDER";
+    public static final String DEPTH = "DEPTH";
+    public static final String INCLUDE = "INCLUDE";
+    public static final String EXCLUDE = "EXCLUDE";
+    public static final String REVISION_SOURCE = "REVISION_SOURCE";
+    public static final String REVISION_PATTERN = "REVISION_PATTERN";
+    public static final String SQS_QUEUE_URL = "SQS_QUEUE_URL";
+    public static final String INVENTORY_LOCATION = "INVENTORY_LOCATION";
+    public static final String S3_MAX_CONNECTIONS = "S3_MAX_CONNECTIONS";
+    public static final String S3_CONNECTION_TIMEOUT = "S3_CONNECTION_TIMEOUT";
+    public static final String S3_SOCKET_TIMEOUT = "S3_SOCKET_TIMEOUT";
+    public static final String S3_TCP_KEEP_ALIVE = "S3_TCP_KEEP_ALIVE";
+
+    public static final String KEY_ORDER_LAST_MODIFIED = "LAST_MODIFIED";
+    public static final String KEY_ORDER_LEXICAL = "LEXICAL";
+
+    public static final String REVISION_SOURCE_METADATA = "METADATA";
+    public static final String REVISION_SOURCE_ETAG = "ETAG";
+    public static final String REVISION_SOURCE_KEY = "KEY";
+
+    public static final String DATA_LATEST_KEY = "LATEST_KEY";
+    public static final String DATA_ETAG = "ETAG";
+    public static final String DATA_LAST_MODIFIED = "LAST_MODIFIED";
+    public static final String DATA_MARKER = "MARKER";
 }
@@ -0,0 +1,24 @@
+package com.schibsted.gocd.s3poller;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+public class Futures {
+
+    public static <V> V get(Future<V> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for S3", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+}
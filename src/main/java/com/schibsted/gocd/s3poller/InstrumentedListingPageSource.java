@@ -0,0 +1,49 @@
+package com.schibsted.gocd.s3poller;
+
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.schibsted.gocd.s3poller.metrics.CallStats;
+import com.schibsted.gocd.s3poller.metrics.PollMetrics;
+
+// Records the latency, errors and keys of every listing page fetched through the wrapped source.
+public class InstrumentedListingPageSource implements ListingPageSource {
+
+    private final ListingPageSource source;
+    private final PollMetrics metrics;
+
+    public InstrumentedListingPageSource(ListingPageSource source, PollMetrics metrics) {
+        this.source = source;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public ListingPage list(ListObjectsRequest request, ListingResult result) {
+        CallStats stats = metrics.s3("listObjects", request.getBucketName());
+        long keysBefore = result.getKeyCount();
+        long started = System.nanoTime();
+        boolean success = false;
+        try {
+            ListingPage page = source.list(request, result);
+            stats.addListed(result.getKeyCount() - keysBefore, 1);
+            success = true;
+            return page;
+        } finally {
+            stats.record(started, success);
+        }
+    }
+
+    @Override
+    public ListingPage next(ListingPage previous, ListingResult result) {
+        CallStats stats = metrics.s3("listObjects", previous.getRequest().getBucketName());
+        long keysBefore = result.getKeyCount();
+        long started = System.nanoTime();
+        boolean success = false;
+        try {
+            ListingPage page = source.next(previous, result);
+            stats.addListed(result.getKeyCount() - keysBefore, 1);
+            success = true;
+            return page;
+        } finally {
+            stats.record(started, success);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.schibsted.gocd.s3poller;
+
+// Parses the UTC timestamps S3 uses (2015-07-01T10:00:00.000Z) to epoch millis without allocating.
+public class Iso8601 {
+
+    public static long parseMillis(CharSequence value) {
+        if (value.length() < 20 || value.charAt(4) != '-' || value.charAt(7) != '-' || value.charAt(10) != 'T') {
+            throw new IllegalArgumentException("Not an ISO 8601 timestamp: " + value);
+        }
+        int year = digits(value, 0, 4);
+        int month = digits(value, 5, 2);
+        int day = digits(value, 8, 2);
+        int hour = digits(value, 11, 2);
+        int minute = digits(value, 14, 2);
+        int second = digits(value, 17, 2);
+        int millis = 0;
+        int position = 19;
+        if (value.charAt(position) == '.') {
+            int scale = 100;
+            position++;
+            while (position < value.length() && Character.isDigit(value.charAt(position))) {
+                millis += (value.charAt(position) - '0') * scale;
+                scale /= 10;
+                position++;
+            }
+        }
+        if (position >= value.length() || value.charAt(position) != 'Z') {
+            throw new IllegalArgumentException("Only UTC timestamps are supported: " + value);
+        }
+        return ((daysFromCivil(year, month, day) * 24 + hour) * 60 + minute) * 60000L + second * 1000L + millis;
+    }
+
+    private static int digits(CharSequence value, int offset, int length) {
+        int result = 0;
+        for (int i = offset; i < offset + length; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("Not an ISO 8601 timestamp: " + value);
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    // Days since 1970-01-01 in the proleptic Gregorian calendar.
+    private static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+}
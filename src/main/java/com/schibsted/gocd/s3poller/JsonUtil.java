@@ -1,18 +1,25 @@
 package com.schibsted.gocd.s3poller;
 
+import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.schibsted.gocd.s3poller.message.MessageTypeAdapters;
 
 public class JsonUtil {
 
+    // Gson instances are thread safe and cache their type adapters, so they are built once.
+    private static final Gson TO_JSON = MessageTypeAdapters.register(new GsonBuilder())
+        .setDateFormat(MessageTypeAdapters.DATE_FORMAT)
+        .excludeFieldsWithoutExposeAnnotation()
+        .create();
+    private static final Gson FROM_JSON = MessageTypeAdapters.register(new GsonBuilder())
+        .setDateFormat(MessageTypeAdapters.DATE_FORMAT)
+        .create();
+
     public static String toJsonString(Object object) {
-        GsonBuilder gsonBuilder = new GsonBuilder();
-        gsonBuilder.setDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
-        return gsonBuilder.excludeFieldsWithoutExposeAnnotation().create().toJson(object);
+        return TO_JSON.toJson(object);
     }
 
     public static <T> T fromJsonString(String json, Class<T> type) {
-        GsonBuilder gsonBuilder = new GsonBuilder();
-        gsonBuilder.setDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
-        return gsonBuilder.create().fromJson(json, type);
+        return FROM_JSON.fromJson(json, type);
     }
 }
@@ -0,0 +1,123 @@
+package com.schibsted.gocd.s3poller;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Include and exclude patterns of a package, matched against each key relative to the package path. A value is
+// either "regex:" followed by one regular expression, or comma separated globs: "*" and "?" stay within a folder, "**"
+// crosses folders, and a glob without "/" matches the file name in any folder. All patterns of a value are compiled
+// once into a single alternation.
+public class KeyFilter {
+
+    public static final KeyFilter ALL = new KeyFilter(null, null, null, null);
+
+    private static final String REGEX = "regex:";
+    private static final LruCache<String, KeyFilter> COMPILED = new LruCache<String, KeyFilter>(1000, 0);
+
+    private final String includes;
+    private final String excludes;
+    private final Pattern include;
+    private final Pattern exclude;
+
+    private KeyFilter(String includes, String excludes, Pattern include, Pattern exclude) {
+        this.includes = includes;
+        this.excludes = excludes;
+        this.include = include;
+        this.exclude = exclude;
+    }
+
+    // Throws IllegalArgumentException for an invalid regular expression.
+    public static KeyFilter of(String includes, String excludes) {
+        if (includes == null && excludes == null) {
+            return ALL;
+        }
+        String cacheKey = includes + "\n" + excludes;
+        KeyFilter filter = COMPILED.get(cacheKey);
+        if (filter == null) {
+            filter = new KeyFilter(includes, excludes, compile(includes), compile(excludes));
+            COMPILED.put(cacheKey, filter);
+        }
+        return filter;
+    }
+
+    static Pattern compile(String patterns) {
+        if (patterns == null) {
+            return null;
+        }
+        if (patterns.startsWith(REGEX)) {
+            return Pattern.compile(patterns.substring(REGEX.length()));
+        }
+        StringBuilder regex = new StringBuilder();
+        for (String glob : patterns.split(",")) {
+            glob = glob.trim();
+            if (!glob.isEmpty()) {
+                regex.append(regex.length() == 0 ? "" : "|").append("(?:").append(globToRegex(glob)).append(')');
+            }
+        }
+        return regex.length() == 0 ? null : Pattern.compile(regex.toString());
+    }
+
+    static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder(glob.length() + 16);
+        if (glob.indexOf('/') < 0) {
+            regex.append("(?:.*/)?");
+        }
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' && i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                i++;
+                if (i + 1 < glob.length() && glob.charAt(i + 1) == '/') {
+                    i++;
+                    regex.append("(?:.*/)?");
+                } else {
+                    regex.append(".*");
+                }
+            } else if (c == '*') {
+                regex.append("[^/]*");
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else {
+                if ("\\.[]{}()+-^$|".indexOf(c) >= 0) {
+                    regex.append('\\');
+                }
+                regex.append(c);
+            }
+        }
+        return regex.toString();
+    }
+
+    public boolean isFiltering() {
+        return include != null || exclude != null;
+    }
+
+    // Matchers for one listing, which adds keys from a single thread at a time. Null when every key is accepted.
+    public Selector selector(String prefix) {
+        return isFiltering() ? new Selector(prefix.length()) : null;
+    }
+
+    @Override
+    public String toString() {
+        return isFiltering() ? "include=" + includes + " exclude=" + excludes : "all";
+    }
+
+    public class Selector {
+
+        private final int prefixLength;
+        private final Matcher included = include == null ? null : include.matcher("");
+        private final Matcher excluded = exclude == null ? null : exclude.matcher("");
+
+        private Selector(int prefixLength) {
+            this.prefixLength = prefixLength;
+        }
+
+        public boolean accepts(String key) {
+            if (key.length() < prefixLength) {
+                return false;
+            }
+            if (included != null && !included.reset(key).region(prefixLength, key.length()).matches()) {
+                return false;
+            }
+            return excluded == null || !excluded.reset(key).region(prefixLength, key.length()).matches();
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package com.schibsted.gocd.s3poller;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Object keys of a bucket in a radix trie where every node knows the newest key below it, so the latest object under
+// a prefix is found by walking the prefix instead of scanning the keys. Nodes are slots in parallel primitive arrays
+// and "folder" fragments are shared between the nodes labelled with them; a key adds at most two nodes, so the heap
+// used grows linearly up to the key limit, after which the trie is full and takes no more keys.
+public class KeyTrie {
+
+    private static final int NONE = -1;
+    private static final int ROOT = 0;
+    private static final long NO_KEY = Long.MIN_VALUE;
+
+    private final int maxKeys;
+    private final Map<String, String> fragments = new HashMap<String, String>();
+    private String[] labels;
+    private int[] parents;
+    private int[] firstChildren;
+    private int[] nextSiblings;
+    private int[] latest;
+    private long[] newest;
+    private long[] modified;
+    private String[] eTags;
+    private int nodes;
+    private int keys;
+    private boolean full;
+
+    public KeyTrie(int maxKeys) {
+        this.maxKeys = maxKeys;
+        clear();
+    }
+
+    // False when the key did not fit, the trie is full from then on.
+    public synchronized boolean put(String key, String eTag, long lastModified) {
+        if (full) {
+            return false;
+        }
+        if (keys >= maxKeys && find(key) == NONE) {
+            full = true;
+            return false;
+        }
+        ensureCapacity(nodes + 2);
+        int node = ROOT;
+        int i = 0;
+        while (i < key.length()) {
+            int child = child(node, key.charAt(i));
+            if (child == NONE) {
+                node = addChild(node, key.substring(i));
+                break;
+            }
+            int common = commonLength(labels[child], key, i);
+            if (common < labels[child].length()) {
+                child = split(child, common);
+            }
+            node = child;
+            i += common;
+        }
+        if (modified[node] == NO_KEY) {
+            keys++;
+        }
+        modified[node] = lastModified;
+        eTags[node] = eTag;
+        // Ties keep the key seen first, as a listing does.
+        for (int n = node; n != NONE; n = parents[n]) {
+            if (latest[n] != NONE && latest[n] != node && lastModified <= newest[n]) {
+                break;
+            }
+            latest[n] = node;
+            newest[n] = lastModified;
+        }
+        return true;
+    }
+
+    // The newest object under the prefix, with the greatest key under it as the listing's last key.
+    public synchronized ListingResult latestUnder(String bucketName, String prefix) {
+        ListingResult result = new ListingResult();
+        int node = find(prefix);
+        if (node == NONE || latest[node] == NONE) {
+            return result;
+        }
+        result.add(bucketName, keyOf(latest[node]), eTags[latest[node]], modified[latest[node]]);
+        result.addPage(0, keyOf(greatest(node)));
+        return result;
+    }
+
+    public synchronized String greatestKeyUnder(String prefix) {
+        int node = find(prefix);
+        return node == NONE || latest[node] == NONE ? null : keyOf(greatest(node));
+    }
+
+    // A listing result that also puts every listed key into the trie, including those of streamed pages, which only
+    // offer the keys newer than the latest so far.
+    public ListingResult indexing() {
+        return new ListingResult() {
+            @Override
+            public boolean isNewer(long lastModified) {
+                return true;
+            }
+
+            @Override
+            public void offerLatest(String bucketName, String key, String eTag, long lastModified) {
+                put(key, eTag, lastModified);
+                super.offerLatest(bucketName, key, eTag, lastModified);
+            }
+        };
+    }
+
+    public synchronized int size() {
+        return keys;
+    }
+
+    public synchronized boolean isFull() {
+        return full;
+    }
+
+    // Releases the nodes, a full trie keeps refusing keys.
+    public synchronized void clear() {
+        fragments.clear();
+        labels = new String[16];
+        parents = new int[16];
+        firstChildren = new int[16];
+        nextSiblings = new int[16];
+        latest = new int[16];
+        newest = new long[16];
+        modified = new long[16];
+        eTags = new String[16];
+        nodes = 0;
+        keys = 0;
+        newNode(NONE, "");
+    }
+
+    // The node whose subtree holds exactly the keys starting with the prefix.
+    private int find(String prefix) {
+        int node = ROOT;
+        int i = 0;
+        while (i < prefix.length()) {
+            int child = child(node, prefix.charAt(i));
+            if (child == NONE) {
+                return NONE;
+            }
+            int common = commonLength(labels[child], prefix, i);
+            if (i + common == prefix.length()) {
+                return child;
+            }
+            if (common < labels[child].length()) {
+                return NONE;
+            }
+            node = child;
+            i += common;
+        }
+        return node;
+    }
+
+    // Children are kept in key order, a longer key sorts after the key it continues.
+    private int greatest(int node) {
+        while (firstChildren[node] != NONE) {
+            node = firstChildren[node];
+            while (nextSiblings[node] != NONE) {
+                node = nextSiblings[node];
+            }
+        }
+        return node;
+    }
+
+    private int child(int node, char c) {
+        for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+            char first = labels[child].charAt(0);
+            if (first == c) {
+                return child;
+            }
+            if (first > c) {
+                break;
+            }
+        }
+        return NONE;
+    }
+
+    private int addChild(int parent, String label) {
+        int node = newNode(parent, label);
+        char first = label.charAt(0);
+        int previous = NONE;
+        int next = firstChildren[parent];
+        while (next != NONE && labels[next].charAt(0) < first) {
+            previous = next;
+            next = nextSiblings[next];
+        }
+        nextSiblings[node] = next;
+        if (previous == NONE) {
+            firstChildren[parent] = node;
+        } else {
+            nextSiblings[previous] = node;
+        }
+        return node;
+    }
+
+    // Splits the node's label after its first length characters, returning the new node of the first part.
+    private int split(int node, int length) {
+        int parent = parents[node];
+        String label = labels[node];
+        int head = newNode(parent, label.substring(0, length));
+        nextSiblings[head] = nextSiblings[node];
+        if (firstChildren[parent] == node) {
+            firstChildren[parent] = head;
+        } else {
+            int previous = firstChildren[parent];
+            while (nextSiblings[previous] != node) {
+                previous = nextSiblings[previous];
+            }
+            nextSiblings[previous] = head;
+        }
+        firstChildren[head] = node;
+        latest[head] = latest[node];
+        newest[head] = newest[node];
+        labels[node] = fragment(label.substring(length));
+        parents[node] = head;
+        nextSiblings[node] = NONE;
+        return head;
+    }
+
+    private int newNode(int parent, String label) {
+        int node = nodes++;
+        labels[node] = fragment(label);
+        parents[node] = parent;
+        firstChildren[node] = NONE;
+        nextSiblings[node] = NONE;
+        latest[node] = NONE;
+        newest[node] = NO_KEY;
+        modified[node] = NO_KEY;
+        eTags[node] = null;
+        return node;
+    }
+
+    // Folder names repeat across the bucket, the rest of a key mostly does not.
+    private String fragment(String label) {
+        if (!label.endsWith(ListingEngine.DELIMITER)) {
+            return label;
+        }
+        String shared = fragments.get(label);
+        if (shared == null) {
+            fragments.put(label, label);
+            shared = label;
+        }
+        return shared;
+    }
+
+    private String keyOf(int node) {
+        int length = 0;
+        for (int n = node; n != ROOT; n = parents[n]) {
+            length += labels[n].length();
+        }
+        char[] key = new char[length];
+        for (int n = node; n != ROOT; n = parents[n]) {
+            length -= labels[n].length();
+            labels[n].getChars(0, labels[n].length(), key, length);
+        }
+        return new String(key);
+    }
+
+    private static int commonLength(String label, String key, int offset) {
+        int max = Math.min(label.length(), key.length() - offset);
+        int i = 0;
+        while (i < max && label.charAt(i) == key.charAt(offset + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= labels.length) {
+            return;
+        }
+        int length = Math.max(capacity, labels.length + (labels.length >> 1));
+        labels = Arrays.copyOf(labels, length);
+        parents = Arrays.copyOf(parents, length);
+        firstChildren = Arrays.copyOf(firstChildren, length);
+        nextSiblings = Arrays.copyOf(nextSiblings, length);
+        latest = Arrays.copyOf(latest, length);
+        newest = Arrays.copyOf(newest, length);
+        modified = Arrays.copyOf(modified, length);
+        eTags = Arrays.copyOf(eTags, length);
+    }
+}
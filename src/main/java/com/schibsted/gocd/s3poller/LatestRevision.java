@@ -0,0 +1,29 @@
+package com.schibsted.gocd.s3poller;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.schibsted.gocd.s3poller.message.PackageRevisionMessage;
+
+public class LatestRevision {
+
+    private final S3ObjectSummary latest;
+    private final String lastKey;
+    private final PackageRevisionMessage revision;
+
+    public LatestRevision(S3ObjectSummary latest, String lastKey, PackageRevisionMessage revision) {
+        this.latest = latest;
+        this.lastKey = lastKey;
+        this.revision = revision;
+    }
+
+    public S3ObjectSummary getLatest() {
+        return latest;
+    }
+
+    public String getLastKey() {
+        return lastKey;
+    }
+
+    public PackageRevisionMessage getRevision() {
+        return revision;
+    }
+}
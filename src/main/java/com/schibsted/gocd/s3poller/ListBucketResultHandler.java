@@ -0,0 +1,117 @@
+package com.schibsted.gocd.s3poller;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// SAX handler for a ListObjects response page. Keys and dates are read into reused buffers and only the newest
+// object so far is turned into Strings, so a page produces almost no garbage.
+class ListBucketResultHandler extends DefaultHandler {
+
+    private final StringBuilder text = new StringBuilder(256);
+    private final StringBuilder key = new StringBuilder(256);
+    private final StringBuilder eTag = new StringBuilder(64);
+    private final StringBuilder lastKey = new StringBuilder(256);
+    private long lastModified;
+
+    private boolean inContents;
+    private boolean inCommonPrefixes;
+    private boolean truncated;
+    private String nextMarker;
+    private List<String> commonPrefixes;
+    private int keys;
+
+    private String bucketName;
+    private ListingResult result;
+
+    void reset(String bucketName, ListingResult result) {
+        this.bucketName = bucketName;
+        this.result = result;
+        this.inContents = false;
+        this.inCommonPrefixes = false;
+        this.truncated = false;
+        this.nextMarker = null;
+        this.commonPrefixes = new ArrayList<String>();
+        this.keys = 0;
+        this.lastKey.setLength(0);
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+        text.setLength(0);
+        if ("Contents".equals(qName)) {
+            inContents = true;
+            key.setLength(0);
+            eTag.setLength(0);
+            lastModified = 0;
+        } else if ("CommonPrefixes".equals(qName)) {
+            inCommonPrefixes = true;
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) {
+        text.append(ch, start, length);
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+        if (inContents) {
+            if ("Key".equals(qName)) {
+                key.setLength(0);
+                key.append(text);
+            } else if ("LastModified".equals(qName)) {
+                lastModified = Iso8601.parseMillis(text);
+            } else if ("ETag".equals(qName)) {
+                eTag.setLength(0);
+                int start = text.length() > 0 && text.charAt(0) == '"' ? 1 : 0;
+                int end = text.length() > start && text.charAt(text.length() - 1) == '"' ? text.length() - 1 : text.length();
+                eTag.append(text, start, end);
+            } else if ("Contents".equals(qName)) {
+                inContents = false;
+                keys++;
+                if (result.isNewer(lastModified)) {
+                    result.offerLatest(bucketName, key.toString(), eTag.toString(), lastModified);
+                }
+                lastKey.setLength(0);
+                lastKey.append(key);
+            }
+        } else if (inCommonPrefixes) {
+            if ("Prefix".equals(qName)) {
+                commonPrefixes.add(text.toString());
+            } else if ("CommonPrefixes".equals(qName)) {
+                inCommonPrefixes = false;
+            }
+        } else if ("IsTruncated".equals(qName)) {
+            truncated = "true".contentEquals(text);
+        } else if ("NextMarker".equals(qName)) {
+            nextMarker = text.toString();
+        }
+    }
+
+    @Override
+    public void endDocument() {
+        result.addPage(keys, keys > 0 ? lastKey.toString() : null);
+    }
+
+    boolean isTruncated() {
+        return truncated;
+    }
+
+    // Without a delimiter S3 leaves NextMarker out, the last key is the marker then.
+    String getNextMarker() {
+        if (nextMarker != null) {
+            return nextMarker;
+        }
+        if (lastKey.length() > 0) {
+            return lastKey.toString();
+        }
+        return commonPrefixes.isEmpty() ? null : commonPrefixes.get(commonPrefixes.size() - 1);
+    }
+
+    List<String> getCommonPrefixes() {
+        return commonPrefixes;
+    }
+}
@@ -0,0 +1,63 @@
+package com.schibsted.gocd.s3poller;
+
+import com.schibsted.gocd.s3poller.message.PackageRevisionMessage;
+
+/**
+ * Where the previous listing stopped, round-tripped by GoCD in the revision data map.
+ */
+public class ListingCursor {
+
+    private final String latestKey;
+    private final String eTag;
+    private final long lastModified;
+    private final String marker;
+
+    public ListingCursor(String latestKey, String eTag, long lastModified, String marker) {
+        this.latestKey = latestKey;
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+        this.marker = marker;
+    }
+
+    public static ListingCursor fromRevision(PackageRevisionMessage revision) {
+        if (revision == null) {
+            return null;
+        }
+        String latestKey = revision.getDataFor(Constants.DATA_LATEST_KEY);
+        String lastModified = revision.getDataFor(Constants.DATA_LAST_MODIFIED);
+        String marker = revision.getDataFor(Constants.DATA_MARKER);
+        if (latestKey == null || lastModified == null || marker == null) {
+            return null;
+        }
+        try {
+            return new ListingCursor(latestKey, revision.getDataFor(Constants.DATA_ETAG), Long.parseLong(lastModified), marker);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    public void writeTo(PackageRevisionMessage revision) {
+        revision.addData(Constants.DATA_LATEST_KEY, latestKey);
+        if (eTag != null) {
+            revision.addData(Constants.DATA_ETAG, eTag);
+        }
+        revision.addData(Constants.DATA_LAST_MODIFIED, String.valueOf(lastModified));
+        revision.addData(Constants.DATA_MARKER, marker);
+    }
+
+    public String getLatestKey() {
+        return latestKey;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public String getMarker() {
+        return marker;
+    }
+}
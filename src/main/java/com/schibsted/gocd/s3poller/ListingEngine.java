@@ -0,0 +1,277 @@
+package com.schibsted.gocd.s3poller;
+
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ListingEngine {
+
+    static final String DELIMITER = "/";
+    private static final int MAX_DESCENT = 3;
+    // Sorts after every key that continues the same prefix (only keys containing U+10FFFF itself are missed).
+    private static final String HIGHEST_SUFFIX = new String(Character.toChars(Character.MAX_CODE_POINT));
+    private static final int LAST_ASCII = 0x7F;
+
+    private final ListingPageSource pages;
+    private final ExecutorService executor;
+
+    public ListingEngine(AmazonS3Client client, ExecutorService executor) {
+        this(new SdkListingPageSource(client), executor);
+    }
+
+    public ListingEngine(ListingPageSource pages, ExecutorService executor) {
+        this.pages = pages;
+        this.executor = executor;
+    }
+
+    public ListingResult list(String bucketName, String prefix) {
+        return list(bucketName, prefix, KeyFilter.ALL);
+    }
+
+    public ListingResult list(String bucketName, String prefix, KeyFilter filter) {
+        Promise<ListingResult> listed = new Promise<ListingResult>();
+        listInto(bucketName, prefix, filter, listed);
+        return listed.get();
+    }
+
+    // Lists on the pool instead of the calling thread. The last shard to finish completes the promise, so no thread
+    // waits for the others while the pages of a large prefix are fetched.
+    public Promise<ListingResult> listAsync(final String bucketName, final String prefix, final KeyFilter filter) {
+        final Promise<ListingResult> listed = new Promise<ListingResult>();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    listInto(bucketName, prefix, filter, listed);
+                }
+            });
+        } catch (RuntimeException ex) {
+            listed.fail(ex);
+        }
+        return listed;
+    }
+
+    private void listInto(String bucketName, String prefix, KeyFilter filter, Promise<ListingResult> listed) {
+        try {
+            ListingResult firstPageResult = new ListingResult(filter.selector(prefix));
+            ListingPage firstPage = pages.list(request(bucketName, prefix), firstPageResult);
+            if (!firstPage.isTruncated()) {
+                listed.complete(firstPageResult);
+                return;
+            }
+            listSharded(bucketName, prefix, filter, firstPage, firstPageResult, listed);
+        } catch (RuntimeException ex) {
+            listed.fail(ex);
+        }
+    }
+
+    public ListingResult listAfter(String bucketName, String prefix, String marker) {
+        return listAfter(bucketName, prefix, marker, new ListingResult());
+    }
+
+    public ListingResult listAfter(String bucketName, String prefix, String marker, ListingResult result) {
+        listRemaining(pages.list(request(bucketName, prefix).withMarker(marker), result), result);
+        return result;
+    }
+
+    // Lists only the objects at most depth "folders" below the prefix: each level is listed with a delimiter, so deeper
+    // subtrees are never paged through. The folders of a level are listed concurrently.
+    public ListingResult listShallow(String bucketName, String prefix, int depth) {
+        return listShallow(bucketName, prefix, depth, KeyFilter.ALL);
+    }
+
+    public ListingResult listShallow(final String bucketName, final String prefix, int depth, final KeyFilter filter) {
+        ListingResult result = new ListingResult(filter.selector(prefix));
+        List<String> folders = listShards(bucketName, prefix, result);
+        for (int level = 2; level <= depth && !folders.isEmpty(); level++) {
+            final List<String> subFolders = Collections.synchronizedList(new ArrayList<String>());
+            List<Future<ListingResult>> futures = new ArrayList<Future<ListingResult>>();
+            for (final String folder : folders) {
+                futures.add(executor.submit(new Callable<ListingResult>() {
+                    @Override
+                    public ListingResult call() throws Exception {
+                        ListingResult folderResult = new ListingResult(filter.selector(prefix));
+                        subFolders.addAll(listShards(bucketName, folder, folderResult));
+                        return folderResult;
+                    }
+                }));
+            }
+            try {
+                for (Future<ListingResult> future : futures) {
+                    result.merge(Futures.get(future));
+                }
+            } finally {
+                for (Future<ListingResult> future : futures) {
+                    future.cancel(true);
+                }
+            }
+            folders = new ArrayList<String>(subFolders);
+        }
+        return result;
+    }
+
+    // Lists the parent once, page by page, routing each key to the packages it belongs to.
+    public RoutedListingResult listRouted(String bucketName, String parentPrefix, Collection<String> prefixes) {
+        RoutedListingResult result = new RoutedListingResult(prefixes);
+        listRemaining(pages.list(request(bucketName, parentPrefix), result), result);
+        return result;
+    }
+
+    // For keys that sort in upload order: finds the greatest key without listing every page. A path of one page is
+    // just listed. Otherwise a single key probe after the greatest key seen shows whether it is the greatest of all.
+    // If not, S3 returning the first key after a marker lets a binary search find the first position where a greater
+    // key branches off, and another one the greatest character at that position. Each round fixes one more branch of
+    // the greatest key, so the requests grow with the number of branches, not with the number of keys.
+    public ListingResult listGreatest(String bucketName, String prefix) {
+        ListingResult result = ListingResult.byGreatestKey();
+        if (!pages.list(request(bucketName, prefix), result).isTruncated()) {
+            return result;
+        }
+        int from = prefix.length();
+        String greatest = result.getLatest().getKey();
+        S3ObjectSummary after;
+        while ((after = probe(bucketName, prefix, greatest, result)) != null) {
+            // Keys after the greatest one branch off at or before its end: find the first code point where one does.
+            int lo = 0;
+            int hi = greatest.codePointCount(from, greatest.length());
+            while (lo < hi) {
+                int mid = lo + (hi - lo) / 2;
+                S3ObjectSummary above = probe(bucketName, prefix,
+                    greatest.substring(0, greatest.offsetByCodePoints(from, mid + 1)) + HIGHEST_SUFFIX, result);
+                if (above == null) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                    after = above;
+                }
+            }
+            int j = greatest.offsetByCodePoints(from, lo);
+            String branch = greatest.substring(0, j);
+            // The greatest code point any key has there.
+            int low = after.getKey().codePointAt(j);
+            int high = Character.MAX_CODE_POINT;
+            int mid = low;
+            while (low < high) {
+                S3ObjectSummary above = probe(bucketName, branch,
+                    new StringBuilder(j + 3).append(branch).appendCodePoint(mid).append(HIGHEST_SUFFIX).toString(), result);
+                if (above == null) {
+                    high = mid;
+                } else {
+                    low = above.getKey().codePointAt(j);
+                }
+                mid = nextProbe(low, high);
+            }
+            from = j + Character.charCount(low);
+            greatest = result.getLatest().getKey();
+        }
+        return result;
+    }
+
+    private static int nextProbe(int lo, int hi) {
+        if (lo < LAST_ASCII && hi > LAST_ASCII) {
+            return LAST_ASCII;
+        }
+        int mid = lo + (hi - lo) / 2;
+        if (mid >= Character.MIN_SURROGATE && mid <= Character.MAX_SURROGATE) {
+            return Character.MIN_SURROGATE - 1;
+        }
+        return mid;
+    }
+
+    private S3ObjectSummary probe(String bucketName, String prefix, String marker, ListingResult result) {
+        ListingResult probe = new ListingResult();
+        pages.list(request(bucketName, prefix).withMarker(marker).withMaxKeys(1), probe);
+        // Every probe is a request, it counts as a page of the listing.
+        result.merge(probe);
+        return probe.getLatest();
+    }
+
+    // More than one page: split the prefix on its sub-"folders" and list those concurrently. The first page is kept,
+    // only what sorts after its last key is listed again: listed with that key as marker, S3 leaves out the folders
+    // the first page covered completely, and the folder it stopped in is listed from there.
+    private void listSharded(final String bucketName, final String prefix, final KeyFilter filter, ListingPage firstPage,
+                             ListingResult firstPageResult, final Promise<ListingResult> listed) {
+        final ListingResult result = new ListingResult(filter.selector(prefix));
+        result.merge(firstPageResult);
+        final String listedUpTo = firstPageResult.getLastKey();
+        List<String> shards = new ArrayList<String>();
+        String shardParent = prefix;
+        for (int depth = 0; depth < MAX_DESCENT; depth++) {
+            shards = listShards(bucketName, shardParent, listedUpTo, result);
+            if (shards.size() != 1 || result.getKeyCount() > firstPageResult.getKeyCount()) {
+                break;
+            }
+            shardParent = shards.get(0);
+        }
+        if (shards.isEmpty()) {
+            listed.complete(result);
+            return;
+        }
+        if (shards.size() == 1) {
+            listRemaining(firstPage, firstPageResult);
+            listed.complete(firstPageResult);
+            return;
+        }
+
+        final AtomicInteger remaining = new AtomicInteger(shards.size());
+        for (final String shard : shards) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (listed.isDone()) {
+                        // Another shard failed already.
+                        return;
+                    }
+                    try {
+                        ListingResult shardResult = new ListingResult(filter.selector(prefix));
+                        String marker = listedUpTo.startsWith(shard) ? listedUpTo : null;
+                        listRemaining(pages.list(request(bucketName, shard).withMarker(marker), shardResult), shardResult);
+                        synchronized (result) {
+                            result.merge(shardResult);
+                        }
+                    } catch (RuntimeException ex) {
+                        listed.fail(ex);
+                        return;
+                    }
+                    if (remaining.decrementAndGet() == 0) {
+                        listed.complete(result);
+                    }
+                }
+            });
+        }
+    }
+
+    private List<String> listShards(String bucketName, String prefix, ListingResult directChildren) {
+        return listShards(bucketName, prefix, null, directChildren);
+    }
+
+    private List<String> listShards(String bucketName, String prefix, String marker, ListingResult directChildren) {
+        List<String> shards = new ArrayList<String>();
+        ListingPage page = pages.list(request(bucketName, prefix).withDelimiter(DELIMITER).withMarker(marker), directChildren);
+        shards.addAll(page.getCommonPrefixes());
+        while (page.isTruncated()) {
+            page = pages.next(page, directChildren);
+            shards.addAll(page.getCommonPrefixes());
+        }
+        return shards;
+    }
+
+    private void listRemaining(ListingPage page, ListingResult result) {
+        while (page.isTruncated()) {
+            page = pages.next(page, result);
+        }
+    }
+
+    private static ListObjectsRequest request(String bucketName, String prefix) {
+        return new ListObjectsRequest().withBucketName(bucketName).withPrefix(prefix);
+    }
+}
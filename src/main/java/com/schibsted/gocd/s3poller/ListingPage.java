@@ -0,0 +1,47 @@
+package com.schibsted.gocd.s3poller;
+
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+
+import java.util.List;
+
+public class ListingPage {
+
+    private final ListObjectsRequest request;
+    private final boolean truncated;
+    private final String nextMarker;
+    private final List<String> commonPrefixes;
+    private final ObjectListing listing;
+
+    public ListingPage(ListObjectsRequest request, boolean truncated, String nextMarker, List<String> commonPrefixes, ObjectListing listing) {
+        this.request = request;
+        this.truncated = truncated;
+        this.nextMarker = nextMarker;
+        this.commonPrefixes = commonPrefixes;
+        this.listing = listing;
+    }
+
+    public ListObjectsRequest getRequest() {
+        return request;
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public String getNextMarker() {
+        return nextMarker;
+    }
+
+    public List<String> getCommonPrefixes() {
+        return commonPrefixes;
+    }
+
+    public ObjectListing getListing() {
+        return listing;
+    }
+
+    public ListObjectsRequest nextRequest() {
+        return new ListObjectsRequest(request.getBucketName(), request.getPrefix(), nextMarker, request.getDelimiter(), request.getMaxKeys());
+    }
+}
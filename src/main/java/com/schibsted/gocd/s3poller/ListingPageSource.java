@@ -0,0 +1,11 @@
+package com.schibsted.gocd.s3poller;
+
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+
+// Fetches listing pages, adding every object of the page to the result.
+public interface ListingPageSource {
+
+    ListingPage list(ListObjectsRequest request, ListingResult result);
+
+    ListingPage next(ListingPage previous, ListingResult result);
+}
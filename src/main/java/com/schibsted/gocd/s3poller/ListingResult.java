@@ -0,0 +1,121 @@
+package com.schibsted.gocd.s3poller;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+import java.util.Date;
+import java.util.List;
+
+// Running maximum of a listing. Only the newest object is kept, as primitives; a summary is built on request.
+// Keys refused by the package's key filter are counted and move the cursor, but are never the latest.
+public class ListingResult {
+
+    private final KeyFilter.Selector selector;
+    private final boolean greatestKey;
+
+    private String bucketName;
+    private String latestKey;
+    private String latestETag;
+    private long latestModified;
+    private String lastKey;
+    private long keyCount;
+    private int pageCount;
+
+    private S3ObjectSummary latest;
+
+    public ListingResult() {
+        this(null);
+    }
+
+    public ListingResult(KeyFilter.Selector selector) {
+        this(selector, false);
+    }
+
+    private ListingResult(KeyFilter.Selector selector, boolean greatestKey) {
+        this.selector = selector;
+        this.greatestKey = greatestKey;
+    }
+
+    // For keys that sort in upload order: the greatest key is kept as the latest, whatever its date.
+    public static ListingResult byGreatestKey() {
+        return new ListingResult(null, true);
+    }
+
+    public void add(List<S3ObjectSummary> s3Objects) {
+        pageCount++;
+        for (S3ObjectSummary s3Object : s3Objects) {
+            add(s3Object.getBucketName(), s3Object.getKey(), s3Object.getETag(), s3Object.getLastModified().getTime());
+        }
+    }
+
+    public void add(String bucketName, String key, String eTag, long lastModified) {
+        keyCount++;
+        offerLatest(bucketName, key, eTag, lastModified);
+        if (lastKey == null || key.compareTo(lastKey) > 0) {
+            lastKey = key;
+        }
+    }
+
+    // Whether an object could become the latest, to skip building its key; any key may be greater than the latest.
+    public boolean isNewer(long lastModified) {
+        return latestKey == null || greatestKey || lastModified > latestModified;
+    }
+
+    public void offerLatest(String bucketName, String key, String eTag, long lastModified) {
+        boolean newer = latestKey == null || (greatestKey ? key.compareTo(latestKey) > 0 : lastModified > latestModified);
+        if (newer && (selector == null || selector.accepts(key))) {
+            this.bucketName = bucketName;
+            this.latestKey = key;
+            this.latestETag = eTag;
+            this.latestModified = lastModified;
+            this.latest = null;
+        }
+    }
+
+    // For streamed pages: the keys were offered one by one, a page's last key is also its greatest.
+    public void addPage(int keys, String lastKeyOfPage) {
+        pageCount++;
+        keyCount += keys;
+        if (lastKeyOfPage != null && (lastKey == null || lastKeyOfPage.compareTo(lastKey) > 0)) {
+            lastKey = lastKeyOfPage;
+        }
+    }
+
+    public void merge(ListingResult other) {
+        pageCount += other.pageCount;
+        keyCount += other.keyCount;
+        if (other.latestKey != null) {
+            offerLatest(other.bucketName, other.latestKey, other.latestETag, other.latestModified);
+        }
+        if (other.lastKey != null && (lastKey == null || other.lastKey.compareTo(lastKey) > 0)) {
+            lastKey = other.lastKey;
+        }
+    }
+
+    public boolean isEmpty() {
+        return latestKey == null;
+    }
+
+    public S3ObjectSummary getLatest() {
+        if (latest == null && latestKey != null) {
+            S3ObjectSummary s3Object = new S3ObjectSummary();
+            s3Object.setBucketName(bucketName);
+            s3Object.setKey(latestKey);
+            s3Object.setETag(latestETag);
+            s3Object.setLastModified(new Date(latestModified));
+            latest = s3Object;
+        }
+        return latest;
+    }
+
+    public String getLastKey() {
+        return lastKey;
+    }
+
+    public long getKeyCount() {
+        return keyCount;
+    }
+
+    public int getPageCount() {
+        return pageCount;
+    }
+}
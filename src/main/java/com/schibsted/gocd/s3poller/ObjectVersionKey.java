@@ -0,0 +1,37 @@
+package com.schibsted.gocd.s3poller;
+
+// An object key is only a stable cache key together with its ETag: overwriting the object changes the ETag.
+public class ObjectVersionKey {
+
+    private final String bucketName;
+    private final String key;
+    private final String eTag;
+
+    public ObjectVersionKey(String bucketName, String key, String eTag) {
+        this.bucketName = bucketName;
+        this.key = key;
+        this.eTag = eTag;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ObjectVersionKey that = (ObjectVersionKey) o;
+
+        if (bucketName != null ? !bucketName.equals(that.bucketName) : that.bucketName != null) return false;
+        if (key != null ? !key.equals(that.key) : that.key != null) return false;
+        if (eTag != null ? !eTag.equals(that.eTag) : that.eTag != null) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = bucketName != null ? bucketName.hashCode() : 0;
+        result = 31 * result + (key != null ? key.hashCode() : 0);
+        result = 31 * result + (eTag != null ? eTag.hashCode() : 0);
+        return result;
+    }
+}
@@ -0,0 +1,122 @@
+package com.schibsted.gocd.s3poller;
+
+import com.schibsted.gocd.s3poller.message.PackageMaterialProperties;
+import com.schibsted.gocd.s3poller.message.PackageMaterialProperty;
+
+import java.util.Locale;
+
+public class PackageOptions {
+
+    private final String keyOrder;
+    private final int depth;
+    private final KeyFilter keyFilter;
+    private final RevisionSource revisionSource;
+    private final String identity;
+
+    private PackageOptions(String keyOrder, int depth, KeyFilter keyFilter, RevisionSource revisionSource, String identity) {
+        this.keyOrder = keyOrder;
+        this.depth = depth;
+        this.keyFilter = keyFilter;
+        this.revisionSource = revisionSource;
+        this.identity = identity;
+    }
+
+    public static PackageOptions from(PackageMaterialProperties packageConfiguration) {
+        int depth = depthOf(valueOf(packageConfiguration, Constants.DEPTH, null));
+        String includes = valueOf(packageConfiguration, Constants.INCLUDE, null);
+        String excludes = valueOf(packageConfiguration, Constants.EXCLUDE, null);
+        KeyFilter keyFilter = keyFilterOf(includes, excludes);
+        String source = valueOf(packageConfiguration, Constants.REVISION_SOURCE, null);
+        String pattern = valueOf(packageConfiguration, Constants.REVISION_PATTERN, null);
+        RevisionSource revisionSource = revisionSourceOf(source, pattern);
+        return new PackageOptions(valueOf(packageConfiguration, Constants.KEY_ORDER, Constants.KEY_ORDER_LAST_MODIFIED),
+            depth, keyFilter, revisionSource, identityOf(depth, keyFilter, includes, excludes, revisionSource, source, pattern));
+    }
+
+    // Only the options in effect count, in a fixed order, so the defaults are the empty string.
+    private static String identityOf(int depth, KeyFilter keyFilter, String includes, String excludes,
+                                     RevisionSource revisionSource, String source, String pattern) {
+        StringBuilder identity = new StringBuilder();
+        if (depth > 0) {
+            identity.append(Constants.DEPTH).append('=').append(depth).append(';');
+        }
+        if (keyFilter.isFiltering()) {
+            identity.append(Constants.INCLUDE).append('=').append(includes == null ? "" : includes).append(';')
+                .append(Constants.EXCLUDE).append('=').append(excludes == null ? "" : excludes).append(';');
+        }
+        if (revisionSource != RevisionSource.METADATA) {
+            identity.append(Constants.REVISION_SOURCE).append('=').append(source.toUpperCase(Locale.ROOT)).append(';')
+                .append(Constants.REVISION_PATTERN).append('=').append(pattern == null ? "" : pattern).append(';');
+        }
+        return identity.toString();
+    }
+
+    private static RevisionSource revisionSourceOf(String source, String keyPattern) {
+        try {
+            return RevisionSource.of(source, keyPattern);
+        } catch (IllegalArgumentException ex) {
+            return RevisionSource.METADATA;
+        }
+    }
+
+    // Invalid patterns are refused by validation, a package saved before that polls unfiltered.
+    private static KeyFilter keyFilterOf(String includes, String excludes) {
+        try {
+            return KeyFilter.of(includes, excludes);
+        } catch (IllegalArgumentException ex) {
+            return KeyFilter.ALL;
+        }
+    }
+
+    // Unset or invalid (refused by validation) is unlimited.
+    private static int depthOf(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Integer.parseInt(value));
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    static String valueOf(PackageMaterialProperties configuration, String key, String defaultValue) {
+        PackageMaterialProperty property = configuration.getProperty(key);
+        if (property == null || property.value() == null || property.value().trim().isEmpty()) {
+            return defaultValue;
+        }
+        return property.value().trim();
+    }
+
+    public boolean isLexicalKeyOrder() {
+        return Constants.KEY_ORDER_LEXICAL.equalsIgnoreCase(keyOrder);
+    }
+
+    // Only objects at most this many "folders" below the path count, 0 for all of them.
+    public int getDepth() {
+        return depth;
+    }
+
+    public boolean isShallow() {
+        return depth > 0;
+    }
+
+    public KeyFilter getKeyFilter() {
+        return keyFilter;
+    }
+
+    public RevisionSource getRevisionSource() {
+        return revisionSource;
+    }
+
+    // The options that change which object is the latest or what its revision says, "" for the defaults.
+    public String getIdentity() {
+        return identity;
+    }
+
+    // Every key under the path is a candidate, so event notifications, the greatest key and listings shared with
+    // other packages can stand in for a listing of its own.
+    public boolean selectsAllKeys() {
+        return !isShallow() && !keyFilter.isFiltering();
+    }
+}
@@ -3,8 +3,11 @@ package com.schibsted.gocd.s3poller;
 
 import com.schibsted.gocd.s3poller.message.PackageMaterialProperties;
 import com.schibsted.gocd.s3poller.message.PackageMaterialProperty;
+import com.schibsted.gocd.s3poller.message.ValidationError;
 import com.schibsted.gocd.s3poller.message.ValidationResultMessage;
 
+import java.util.regex.PatternSyntaxException;
+
 
 public class PackageRepositoryConfigurationProvider {
 
@@ -13,6 +16,48 @@ public class PackageRepositoryConfigurationProvider {
         repositoryConfigurationResponse.addPackageMaterialProperty(
             Constants.S3_BUCKET,
             new PackageMaterialProperty().withDisplayName("S3 Bucket").withDisplayOrder("0"));
+        repositoryConfigurationResponse.addPackageMaterialProperty(
+            Constants.SQS_QUEUE_URL,
+            new PackageMaterialProperty()
+                .withDisplayName("SQS queue URL receiving the bucket's S3 event notifications (optional)")
+                .withDisplayOrder("1")
+                .withRequired(false)
+                .withPartOfIdentity(false));
+        repositoryConfigurationResponse.addPackageMaterialProperty(
+            Constants.INVENTORY_LOCATION,
+            new PackageMaterialProperty()
+                .withDisplayName("S3 Inventory destination, s3://bucket/prefix or manifest.json (optional)")
+                .withDisplayOrder("2")
+                .withRequired(false)
+                .withPartOfIdentity(false));
+        repositoryConfigurationResponse.addPackageMaterialProperty(
+            Constants.S3_MAX_CONNECTIONS,
+            new PackageMaterialProperty()
+                .withDisplayName("Maximum open connections to S3 (optional, default " + ClientOptions.DEFAULT_MAX_CONNECTIONS + ")")
+                .withDisplayOrder("3")
+                .withRequired(false)
+                .withPartOfIdentity(false));
+        repositoryConfigurationResponse.addPackageMaterialProperty(
+            Constants.S3_CONNECTION_TIMEOUT,
+            new PackageMaterialProperty()
+                .withDisplayName("S3 connection timeout in milliseconds (optional, default " + ClientOptions.DEFAULT_CONNECTION_TIMEOUT_MILLIS + ")")
+                .withDisplayOrder("4")
+                .withRequired(false)
+                .withPartOfIdentity(false));
+        repositoryConfigurationResponse.addPackageMaterialProperty(
+            Constants.S3_SOCKET_TIMEOUT,
+            new PackageMaterialProperty()
+                .withDisplayName("S3 socket timeout in milliseconds (optional, default " + ClientOptions.DEFAULT_SOCKET_TIMEOUT_MILLIS + ")")
+                .withDisplayOrder("5")
+                .withRequired(false)
+                .withPartOfIdentity(false));
+        repositoryConfigurationResponse.addPackageMaterialProperty(
+            Constants.S3_TCP_KEEP_ALIVE,
+            new PackageMaterialProperty()
+                .withDisplayName("TCP keep-alive on S3 connections, true or false (optional, default true)")
+                .withDisplayOrder("6")
+                .withRequired(false)
+                .withPartOfIdentity(false));
         return repositoryConfigurationResponse;
     }
 
@@ -21,15 +66,116 @@ public class PackageRepositoryConfigurationProvider {
         packageConfigurationResponse.addPackageMaterialProperty(
                 Constants.S3_PATH,
                 new PackageMaterialProperty().withDisplayName("S3 Path").withDisplayOrder("0"));
+        packageConfigurationResponse.addPackageMaterialProperty(
+                Constants.KEY_ORDER,
+                new PackageMaterialProperty()
+                    .withDisplayName("Key order (LAST_MODIFIED, or LEXICAL when new keys always sort last)")
+                    .withDisplayOrder("1")
+                    .withRequired(false)
+                    .withPartOfIdentity(false));
+        packageConfigurationResponse.addPackageMaterialProperty(
+                Constants.DEPTH,
+                new PackageMaterialProperty()
+                    .withDisplayName("Folder depth (1 for only the objects directly in the path, blank for all)")
+                    .withDisplayOrder("2")
+                    .withRequired(false)
+                    .withPartOfIdentity(true));
+        packageConfigurationResponse.addPackageMaterialProperty(
+                Constants.INCLUDE,
+                new PackageMaterialProperty()
+                    .withDisplayName("Include keys (globs like *.tar.gz, *.rpm, or regex:<expression>)")
+                    .withDisplayOrder("3")
+                    .withRequired(false)
+                    .withPartOfIdentity(true));
+        packageConfigurationResponse.addPackageMaterialProperty(
+                Constants.EXCLUDE,
+                new PackageMaterialProperty()
+                    .withDisplayName("Exclude keys (globs like *.sha1, _SUCCESS, or regex:<expression>)")
+                    .withDisplayOrder("4")
+                    .withRequired(false)
+                    .withPartOfIdentity(true));
+        packageConfigurationResponse.addPackageMaterialProperty(
+                Constants.REVISION_SOURCE,
+                new PackageMaterialProperty()
+                    .withDisplayName("Revision from (METADATA, ETAG, or KEY with a revision pattern)")
+                    .withDisplayOrder("5")
+                    .withRequired(false)
+                    .withPartOfIdentity(false));
+        packageConfigurationResponse.addPackageMaterialProperty(
+                Constants.REVISION_PATTERN,
+                new PackageMaterialProperty()
+                    .withDisplayName("Revision pattern (e.g. app-(?<version>[^-]+)-(?<sha>[0-9a-f]+)\\.tgz)")
+                    .withDisplayOrder("6")
+                    .withRequired(false)
+                    .withPartOfIdentity(false));
         return packageConfigurationResponse;
     }
 
     public ValidationResultMessage validateRepositoryConfiguration(PackageMaterialProperties configurationProvidedByUser) {
-        return new ValidationResultMessage();
+        ValidationResultMessage validationResultMessage = new ValidationResultMessage();
+        String queueUrl = PackageOptions.valueOf(configurationProvidedByUser, Constants.SQS_QUEUE_URL, null);
+        if (queueUrl != null && !queueUrl.startsWith("https://") && !queueUrl.startsWith("http://")) {
+            validationResultMessage.addError(ValidationError.create(Constants.SQS_QUEUE_URL, "SQS queue URL must be an http(s) URL"));
+        }
+        String inventoryLocation = PackageOptions.valueOf(configurationProvidedByUser, Constants.INVENTORY_LOCATION, null);
+        if (inventoryLocation != null && !inventoryLocation.startsWith(S3Location.URI_SCHEME)) {
+            validationResultMessage.addError(ValidationError.create(Constants.INVENTORY_LOCATION, "Inventory location must be an s3:// location"));
+        }
+        validatePositiveInt(configurationProvidedByUser, Constants.S3_MAX_CONNECTIONS, "Maximum connections", validationResultMessage);
+        validatePositiveInt(configurationProvidedByUser, Constants.S3_CONNECTION_TIMEOUT, "Connection timeout", validationResultMessage);
+        validatePositiveInt(configurationProvidedByUser, Constants.S3_SOCKET_TIMEOUT, "Socket timeout", validationResultMessage);
+        String keepAlive = PackageOptions.valueOf(configurationProvidedByUser, Constants.S3_TCP_KEEP_ALIVE, "true");
+        if (!"true".equalsIgnoreCase(keepAlive) && !"false".equalsIgnoreCase(keepAlive)) {
+            validationResultMessage.addError(ValidationError.create(Constants.S3_TCP_KEEP_ALIVE, "TCP keep-alive must be true or false"));
+        }
+        return validationResultMessage;
+    }
+
+    private static void validatePositiveInt(PackageMaterialProperties configuration, String key, String name,
+                                            ValidationResultMessage validationResultMessage) {
+        String value = PackageOptions.valueOf(configuration, key, null);
+        if (value == null) {
+            return;
+        }
+        try {
+            if (Integer.parseInt(value) > 0) {
+                return;
+            }
+        } catch (NumberFormatException ex) {
+            // reported below
+        }
+        validationResultMessage.addError(ValidationError.create(key, name + " must be a positive number"));
+    }
+
+    private static void validatePatterns(PackageMaterialProperties configuration, String key, String name,
+                                         ValidationResultMessage validationResultMessage) {
+        try {
+            KeyFilter.compile(PackageOptions.valueOf(configuration, key, null));
+        } catch (PatternSyntaxException ex) {
+            validationResultMessage.addError(ValidationError.create(key, name + " is not a valid pattern: " + ex.getDescription()));
+        }
     }
 
     public ValidationResultMessage validatePackageConfiguration(PackageMaterialProperties configurationProvidedByUser) {
-        return new ValidationResultMessage();
+        ValidationResultMessage validationResultMessage = new ValidationResultMessage();
+        String keyOrder = PackageOptions.valueOf(configurationProvidedByUser, Constants.KEY_ORDER, Constants.KEY_ORDER_LAST_MODIFIED);
+        if (!Constants.KEY_ORDER_LAST_MODIFIED.equalsIgnoreCase(keyOrder) && !Constants.KEY_ORDER_LEXICAL.equalsIgnoreCase(keyOrder)) {
+            validationResultMessage.addError(ValidationError.create(Constants.KEY_ORDER,
+                "Key order must be " + Constants.KEY_ORDER_LAST_MODIFIED + " or " + Constants.KEY_ORDER_LEXICAL));
+        }
+        validatePositiveInt(configurationProvidedByUser, Constants.DEPTH, "Folder depth", validationResultMessage);
+        validatePatterns(configurationProvidedByUser, Constants.INCLUDE, "Include keys", validationResultMessage);
+        validatePatterns(configurationProvidedByUser, Constants.EXCLUDE, "Exclude keys", validationResultMessage);
+        try {
+            RevisionSource.of(PackageOptions.valueOf(configurationProvidedByUser, Constants.REVISION_SOURCE, null),
+                PackageOptions.valueOf(configurationProvidedByUser, Constants.REVISION_PATTERN, null));
+        } catch (PatternSyntaxException ex) {
+            validationResultMessage.addError(ValidationError.create(Constants.REVISION_PATTERN,
+                "Revision pattern is not a valid pattern: " + ex.getDescription()));
+        } catch (IllegalArgumentException ex) {
+            validationResultMessage.addError(ValidationError.create(Constants.REVISION_SOURCE, ex.getMessage()));
+        }
+        return validationResultMessage;
     }
 
 }
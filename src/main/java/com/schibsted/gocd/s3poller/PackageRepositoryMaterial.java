@@ -1,7 +1,13 @@
 package com.schibsted.gocd.s3poller;
 
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
 import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.S3ClientOptions;
 import com.schibsted.gocd.s3poller.message.*;
+import com.schibsted.gocd.s3poller.metrics.CallStats;
+import com.schibsted.gocd.s3poller.metrics.PollMetrics;
+import com.schibsted.gocd.s3poller.metrics.PrometheusEndpoint;
 import com.thoughtworks.go.plugin.api.AbstractGoPlugin;
 import com.thoughtworks.go.plugin.api.GoPluginIdentifier;
 import com.thoughtworks.go.plugin.api.annotation.Extension;
@@ -10,8 +16,9 @@ import com.thoughtworks.go.plugin.api.request.GoPluginApiRequest;
 import com.thoughtworks.go.plugin.api.response.DefaultGoPluginApiResponse;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 
+import java.io.IOException;
 import java.util.Arrays;
-import java.util.LinkedHashMap;
+import java.util.HashMap;
 import java.util.Map;
 
 import static com.thoughtworks.go.plugin.api.response.DefaultGoPluginApiResponse.success;
@@ -32,42 +39,118 @@ public class PackageRepositoryMaterial extends AbstractGoPlugin {
     public static final String REQUEST_LATEST_PACKAGE_REVISION = "latest-revision";
     public static final String REQUEST_LATEST_PACKAGE_REVISION_SINCE = "latest-revision-since";
 
-    private Map<String, MessageHandler> handlerMap = new LinkedHashMap<String, MessageHandler>();
+    private final Map<String, Route> routes = new HashMap<String, Route>();
     private PackageRepositoryConfigurationProvider configurationProvider;
+    // The configurations never change, they are serialized once.
+    private final String repositoryConfigurationJson;
+    private final String packageConfigurationJson;
+    private final boolean logRequests = PluginSettings.booleanValue(PluginSettings.LOG_REQUESTS, false);
     private final PackageRepositoryPoller packageRepositoryPoller;
+    private final PollMetrics metrics;
     private final Logger log = Logger.getLoggerFor(this.getClass());
 
     public PackageRepositoryMaterial() {
+        this(createClients(), new PollMetrics());
+        metrics.registerMBean();
+        startMetricsEndpoint();
+    }
+
+    PackageRepositoryMaterial(AmazonS3Client client) {
+        this(S3ClientRegistry.fixed(client), new PollMetrics());
+    }
+
+    PackageRepositoryMaterial(S3ClientRegistry clients, PollMetrics metrics) {
+        this.metrics = metrics;
         configurationProvider = new PackageRepositoryConfigurationProvider();
-        packageRepositoryPoller = new PackageRepositoryPoller(configurationProvider, new AmazonS3Client());
-        handlerMap.put(REQUEST_REPOSITORY_CONFIGURATION, repositoryConfigurationsMessageHandler());
-        handlerMap.put(REQUEST_PACKAGE_CONFIGURATION, packageConfigurationMessageHandler());
-        handlerMap.put(REQUEST_VALIDATE_REPOSITORY_CONFIGURATION, validateRepositoryConfigurationMessageHandler());
-        handlerMap.put(REQUEST_VALIDATE_PACKAGE_CONFIGURATION, validatePackageConfigurationMessageHandler());
-        handlerMap.put(REQUEST_CHECK_REPOSITORY_CONNECTION, checkRepositoryConnectionMessageHandler());
-        handlerMap.put(REQUEST_CHECK_PACKAGE_CONNECTION, checkPackageConnectionMessageHandler());
-        handlerMap.put(REQUEST_LATEST_PACKAGE_REVISION, latestRevisionMessageHandler());
-        handlerMap.put(REQUEST_LATEST_PACKAGE_REVISION_SINCE, latestRevisionSinceMessageHandler());
+        packageRepositoryPoller = new PackageRepositoryPoller(configurationProvider, clients, metrics);
+        repositoryConfigurationJson = toJsonString(configurationProvider.repositoryConfiguration().getPropertyMap());
+        packageConfigurationJson = toJsonString(configurationProvider.packageConfiguration().getPropertyMap());
+        route(REQUEST_REPOSITORY_CONFIGURATION, repositoryConfigurationsMessageHandler());
+        route(REQUEST_PACKAGE_CONFIGURATION, packageConfigurationMessageHandler());
+        route(REQUEST_VALIDATE_REPOSITORY_CONFIGURATION, validateRepositoryConfigurationMessageHandler());
+        route(REQUEST_VALIDATE_PACKAGE_CONFIGURATION, validatePackageConfigurationMessageHandler());
+        route(REQUEST_CHECK_REPOSITORY_CONNECTION, checkRepositoryConnectionMessageHandler());
+        route(REQUEST_CHECK_PACKAGE_CONNECTION, checkPackageConnectionMessageHandler());
+        route(REQUEST_LATEST_PACKAGE_REVISION, latestRevisionMessageHandler());
+        route(REQUEST_LATEST_PACKAGE_REVISION_SINCE, latestRevisionSinceMessageHandler());
+    }
+
+    private void route(String requestName, MessageHandler handler) {
+        routes.put(requestName, new Route(requestName, handler, metrics.handle(requestName)));
     }
 
 
+    // An S3 compatible endpoint (e.g. a local stand-in) is addressed path style, as its host names are not per bucket.
+    // On AWS every bucket is served by a client of its own region, the default client only resolves regions.
+    private static S3ClientRegistry createClients() {
+        AWSCredentialsProvider credentialsProvider = new DefaultAWSCredentialsProviderChain();
+        S3RequestScheduler requests = S3RequestScheduler.fromSettings();
+        AmazonS3Client client = new AmazonS3Client(credentialsProvider,
+            ClientOptions.DEFAULTS.toClientConfiguration().withRetryPolicy(requests.retryPolicy()));
+        String endpoint = PluginSettings.stringValue(PluginSettings.S3_ENDPOINT, null);
+        if (endpoint != null) {
+            client.setEndpoint(endpoint);
+            client.setS3ClientOptions(new S3ClientOptions().withPathStyleAccess(true));
+            return S3ClientRegistry.fixed(client, requests);
+        }
+        return new S3ClientRegistry(client, credentialsProvider, requests);
+    }
+
+    private void startMetricsEndpoint() {
+        int port = PluginSettings.intValue(PluginSettings.METRICS_PORT, 0);
+        if (port <= 0) {
+            return;
+        }
+        String host = PluginSettings.stringValue(PluginSettings.METRICS_HOST, "127.0.0.1");
+        try {
+            new PrometheusEndpoint(metrics, host, port).start();
+            log.info("serving metrics on http://" + host + ":" + port + "/metrics");
+        } catch (IOException ex) {
+            log.warn("could not serve metrics on " + host + ":" + port + ": " + ex.getMessage());
+        }
+    }
+
+    // One lookup finds the handler and its stats. Every request is logged at debug level with lines built once per
+    // route; the request and response bodies are only added when s3poller.log.requests is set: the plugin API cannot
+    // tell whether debug logging is on, so those strings would otherwise be built for every request.
     @Override
     public GoPluginApiResponse handle(GoPluginApiRequest goPluginApiRequest) {
+        Route route = routes.get(goPluginApiRequest.requestName());
+        if (route == null) {
+            // Unknown request names are not recorded, so they cannot grow the set of series.
+            return DefaultGoPluginApiResponse.badRequest(String.format("Invalid request name %s", goPluginApiRequest.requestName()));
+        }
+        long started = System.nanoTime();
+        boolean success = false;
         try {
-            log.debug("Incoming request::: Name: " + goPluginApiRequest.requestName() + ", Body: " + goPluginApiRequest.requestBody());
-            if (handlerMap.containsKey(goPluginApiRequest.requestName())) {
-                GoPluginApiResponse response = handlerMap.get(goPluginApiRequest.requestName()).handle(goPluginApiRequest);
-                log.debug("Request handled::: Code: " + response.responseCode() + ", Body: " + response.responseBody());
-                return response;
+            if (logRequests) {
+                log.debug(route.incoming + ", Body: " + goPluginApiRequest.requestBody());
+            } else {
+                log.debug(route.incoming);
             }
-            return DefaultGoPluginApiResponse.badRequest(String.format("Invalid request name %s", goPluginApiRequest.requestName()));
+            GoPluginApiResponse response = route.handler.handle(goPluginApiRequest);
+            if (logRequests) {
+                log.debug(route.handled + response.responseCode() + ", Body: " + response.responseBody());
+            } else if (response.responseCode() == DefaultGoPluginApiResponse.SUCCESS_RESPONSE_CODE) {
+                log.debug(route.handledSuccessfully);
+            } else {
+                log.debug(route.handled + response.responseCode());
+            }
+            success = response.responseCode() < 400;
+            return response;
         } catch (Throwable e) {
             log.error(e.toString());
             log.error(Arrays.asList(e.getStackTrace()).toString());
             return DefaultGoPluginApiResponse.error(e.getMessage());
+        } finally {
+            route.stats.record(started, success);
         }
     }
 
+    PollMetrics getMetrics() {
+        return metrics;
+    }
+
     @Override
     public GoPluginIdentifier pluginIdentifier() {
         return new GoPluginIdentifier(EXTENSION, asList("1.0"));
@@ -77,7 +160,7 @@ public class PackageRepositoryMaterial extends AbstractGoPlugin {
         return new MessageHandler() {
             @Override
             public GoPluginApiResponse handle(GoPluginApiRequest request) {
-                return success(toJsonString(configurationProvider.packageConfiguration().getPropertyMap()));
+                return success(packageConfigurationJson);
             }
         };
 
@@ -87,7 +170,7 @@ public class PackageRepositoryMaterial extends AbstractGoPlugin {
         return new MessageHandler() {
             @Override
             public GoPluginApiResponse handle(GoPluginApiRequest request) {
-                return success(toJsonString(configurationProvider.repositoryConfiguration().getPropertyMap()));
+                return success(repositoryConfigurationJson);
             }
         };
     }
@@ -167,4 +250,20 @@ public class PackageRepositoryMaterial extends AbstractGoPlugin {
         };
     }
 
+    private static class Route {
+
+        private final MessageHandler handler;
+        private final CallStats stats;
+        private final String incoming;
+        private final String handled;
+        private final String handledSuccessfully;
+
+        private Route(String requestName, MessageHandler handler, CallStats stats) {
+            this.handler = handler;
+            this.stats = stats;
+            this.incoming = "Incoming request::: Name: " + requestName;
+            this.handled = "Request handled::: Name: " + requestName + ", Code: ";
+            this.handledSuccessfully = handled + DefaultGoPluginApiResponse.SUCCESS_RESPONSE_CODE;
+        }
+    }
 }
@@ -1,39 +1,129 @@
 package com.schibsted.gocd.s3poller;
 
+import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
 import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.s3.model.ObjectListing;
-import com.amazonaws.services.s3.model.ObjectMetadata;
-import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.schibsted.gocd.s3poller.events.S3EventSubscriptions;
+import com.schibsted.gocd.s3poller.inventory.InventoryLister;
+import com.schibsted.gocd.s3poller.inventory.InventoryScanner;
 import com.schibsted.gocd.s3poller.message.CheckConnectionResultMessage;
 import com.schibsted.gocd.s3poller.message.PackageMaterialProperties;
 import com.schibsted.gocd.s3poller.message.PackageRevisionMessage;
+import com.schibsted.gocd.s3poller.metrics.CallStats;
+import com.schibsted.gocd.s3poller.metrics.PollMetrics;
 import com.thoughtworks.go.plugin.api.logging.Logger;
 
-import java.io.IOException;
-import java.text.SimpleDateFormat;
-import java.util.List;
+import java.io.File;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
 
 import static java.util.Arrays.asList;
 
 public class PackageRepositoryPoller {
 
     private PackageRepositoryConfigurationProvider configurationProvider;
-    private AmazonS3Client client;
+    private S3ClientRegistry clients;
+    private ListingEngine listingEngine;
+    private LruCache<S3Location, LatestRevision> listingCache;
+    private LruCache<ObjectVersionKey, RevisionMetadata> metadataCache;
+    private ConcurrentMap<S3Location, Promise<LatestRevision>> inFlightPolls = new ConcurrentHashMap<S3Location, Promise<LatestRevision>>();
+    private BatchPlanner batches;
+    private PollPlanner planner;
+    private LruCache<S3Location, ListingResult> batchedListings;
+    private SingleFlight<S3Location, RoutedListingResult> inFlightBatches = new SingleFlight<S3Location, RoutedListingResult>();
+    private S3EventSubscriptions eventSubscriptions;
+    private InventoryLister inventoryLister;
+    private PrePollScheduler prePolls;
+    private RevisionIndex revisionIndex;
+    private PollMetrics metrics;
 
     private final Logger log = Logger.getLoggerFor(this.getClass());
 
     public PackageRepositoryPoller(PackageRepositoryConfigurationProvider configurationProvider, AmazonS3Client client) {
+        this(configurationProvider, S3ClientRegistry.fixed(client), new PollMetrics());
+    }
+
+    public PackageRepositoryPoller(PackageRepositoryConfigurationProvider configurationProvider, S3ClientRegistry clients,
+                                   PollMetrics metrics) {
         this.configurationProvider = configurationProvider;
-        this.client = client;
+        this.clients = clients;
+        this.metrics = metrics;
+        this.listingEngine = new ListingEngine(new ScheduledListingPageSource(
+            new InstrumentedListingPageSource(listingPageSource(clients), metrics), clients.getRequests()), Executors.newFixedThreadPool(
+            PluginSettings.intValue(PluginSettings.LISTING_THREADS, 8), new DaemonThreadFactory("s3poller-listing")));
+        this.listingCache = new LruCache<S3Location, LatestRevision>(
+            PluginSettings.intValue(PluginSettings.CACHE_MAX_ENTRIES, 5000),
+            PluginSettings.intValue(PluginSettings.CACHE_TTL_SECONDS, 30) * 1000L);
+        this.metadataCache = new LruCache<ObjectVersionKey, RevisionMetadata>(
+            PluginSettings.intValue(PluginSettings.METADATA_CACHE_MAX_ENTRIES, 10000), 0);
+        this.batches = new BatchPlanner(PluginSettings.intValue(PluginSettings.BATCH_MIN_PACKAGES, 2));
+        this.planner = new PollPlanner(PluginSettings.intValue(PluginSettings.PLANNER_VERIFY_POLLS, 0),
+            PluginSettings.intValue(PluginSettings.LEXICAL_VERIFY_POLLS, 5));
+        this.batchedListings = new LruCache<S3Location, ListingResult>(
+            PluginSettings.intValue(PluginSettings.CACHE_MAX_ENTRIES, 5000),
+            PluginSettings.intValue(PluginSettings.CACHE_TTL_SECONDS, 30) * 1000L);
+        metrics.cache(PollMetrics.LISTING_CACHE, listingCache);
+        metrics.cache(PollMetrics.METADATA_CACHE, metadataCache);
+        metrics.cache(PollMetrics.BATCHED_CACHE, batchedListings);
+        this.eventSubscriptions = new S3EventSubscriptions(listingEngine,
+            PluginSettings.intValue(PluginSettings.EVENTS_RECONCILE_SECONDS, 900));
+        this.inventoryLister = new InventoryLister(new InventoryScanner(clients), listingEngine,
+            PluginSettings.intValue(PluginSettings.INVENTORY_REFRESH_SECONDS, 3600) * 1000L,
+            PluginSettings.intValue(PluginSettings.CACHE_MAX_ENTRIES, 5000),
+            PluginSettings.intValue(PluginSettings.INVENTORY_MAX_INDEXED_KEYS, 1000000));
+        String indexFile = PluginSettings.stringValue(PluginSettings.INDEX_FILE, null);
+        if (indexFile != null) {
+            this.revisionIndex = RevisionIndex.load(new File(indexFile));
+            seedMetadataCache();
+            revisionIndex.startFlushing(PluginSettings.intValue(PluginSettings.INDEX_FLUSH_SECONDS, 10));
+        }
+        int prePollThreads = PluginSettings.intValue(PluginSettings.PREPOLL_THREADS, 0);
+        if (prePollThreads > 0) {
+            this.prePolls = new PrePollScheduler(prePollThreads,
+                PluginSettings.intValue(PluginSettings.PREPOLL_MIN_SECONDS, 15) * 1000L,
+                PluginSettings.intValue(PluginSettings.PREPOLL_MAX_SECONDS, 300) * 1000L,
+                PluginSettings.intValue(PluginSettings.PREPOLL_IDLE_SECONDS, 3600) * 1000L);
+        }
+    }
+
+    // The metadata of every indexed object is known, so it is not requested again after a restart.
+    private void seedMetadataCache() {
+        for (Map.Entry<S3Location, RevisionIndex.Entry> indexed : revisionIndex.entries().entrySet()) {
+            RevisionIndex.Entry entry = indexed.getValue();
+            if (entry.getETag() != null) {
+                metadataCache.put(new ObjectVersionKey(indexed.getKey().getBucketName(), entry.getKey(), entry.getETag()),
+                    entry.getMetadata());
+            }
+        }
+    }
+
+    private static ListingPageSource listingPageSource(S3ClientRegistry clients) {
+        if (PluginSettings.booleanValue(PluginSettings.STREAMING_LISTING, false)) {
+            return new StreamingListingPageSource(new DefaultAWSCredentialsProviderChain(), clients,
+                PluginSettings.stringValue(PluginSettings.S3_ENDPOINT, null));
+        }
+        return new SdkListingPageSource(clients);
     }
 
     public CheckConnectionResultMessage checkConnectionToRepository(PackageMaterialProperties repositoryConfiguration) {
         String bucketName = repositoryConfiguration.getProperty(Constants.S3_BUCKET).value();
         Boolean bucketExists = false;
+        clients.getRequests().acquire(bucketName, S3RequestScheduler.Priority.INTERACTIVE, "");
+        CallStats stats = metrics.s3("doesBucketExist", bucketName);
+        long started = System.nanoTime();
         try {
-            bucketExists = client.doesBucketExist(bucketName);
+            bucketExists = clients.configure(bucketName, RepositoryOptions.from(repositoryConfiguration).getClientOptions())
+                .doesBucketExist(bucketName);
+            stats.record(started, true);
+            clients.getRequests().release(bucketName, null);
         } catch (Exception ex) {
+            stats.record(started, false);
+            clients.getRequests().release(bucketName, ex);
             return new CheckConnectionResultMessage(
                 CheckConnectionResultMessage.STATUS.FAILURE,
                 asList("Could not find bucket. [" + ex.getMessage() + "]"));
@@ -47,10 +137,22 @@ public class PackageRepositoryPoller {
     public CheckConnectionResultMessage checkConnectionToPackage(PackageMaterialProperties packageConfiguration, PackageMaterialProperties repositoryConfiguration) {
         String bucketName = repositoryConfiguration.getProperty(Constants.S3_BUCKET).value();
         String path = packageConfiguration.getProperty(Constants.S3_PATH).value();
+        if (listingCache.get(S3Location.from(packageConfiguration, repositoryConfiguration)) != null) {
+            return new CheckConnectionResultMessage(CheckConnectionResultMessage.STATUS.SUCCESS, asList("Objects found on path"));
+        }
         ObjectListing listing;
+        clients.getRequests().acquire(bucketName, S3RequestScheduler.Priority.INTERACTIVE, path);
+        CallStats stats = metrics.s3("listObjects", bucketName);
+        long started = System.nanoTime();
         try {
-            listing = client.listObjects(bucketName, path);
+            listing = clients.configure(bucketName, RepositoryOptions.from(repositoryConfiguration).getClientOptions())
+                .listObjects(bucketName, path);
+            stats.record(started, true);
+            stats.addListed(listing.getObjectSummaries().size(), 1);
+            clients.getRequests().release(bucketName, null);
         } catch (Exception ex) {
+            stats.record(started, false);
+            clients.getRequests().release(bucketName, ex);
             return new CheckConnectionResultMessage(
                 CheckConnectionResultMessage.STATUS.FAILURE,
                 asList("Could not find path '" + path + "' in bucket '" + bucketName + "'. [" + ex.getMessage() + "]"));
@@ -64,59 +166,331 @@ public class PackageRepositoryPoller {
     }
 
     public PackageRevisionMessage getLatestRevision(PackageMaterialProperties packageConfiguration, PackageMaterialProperties repositoryConfiguration) {
-        String bucketName = repositoryConfiguration.getProperty(Constants.S3_BUCKET).value();
-        String path = packageConfiguration.getProperty(Constants.S3_PATH).value();
-        ObjectListing listing;
+        LatestRevision latest = latestRevision(S3Location.from(packageConfiguration, repositoryConfiguration),
+            PackageOptions.from(packageConfiguration), RepositoryOptions.from(repositoryConfiguration));
+        return latest == null ? new PackageRevisionMessage() : latest.getRevision();
+    }
+
+    private LatestRevision latestRevision(final S3Location location, final PackageOptions packageOptions,
+                                          final RepositoryOptions repositoryOptions) {
+        clients.configure(location.getBucketName(), repositoryOptions.getClientOptions());
+        if (repositoryOptions.isEventMode() && packageOptions.selectsAllKeys()) {
+            S3ObjectSummary indexed = eventSubscriptions.latest(location.withoutOptions(), repositoryOptions.getSqsQueueUrl());
+            if (indexed != null) {
+                String lastKey = eventSubscriptions.lastKey(location.withoutOptions());
+                return new LatestRevision(indexed, lastKey, toRevision(location.getBucketName(), indexed, lastKey,
+                    metadataOf(location.getBucketName(), indexed, packageOptions.getRevisionSource())));
+            }
+        }
+        LatestRevision cached = cachedRevision(location);
+        if (cached != null) {
+            return cached;
+        }
+        Callable<Promise<LatestRevision>> poll = poll(location, packageOptions, repositoryOptions);
+        RevisionIndex.Entry indexed = revisionIndex == null ? null : revisionIndex.get(location);
+        if (indexed != null && prePolls != null && (!packageOptions.isLexicalKeyOrder() || packageOptions.isShallow())
+            && !prePolls.tracks(location)) {
+            // Without key order only a full listing can verify the indexed revision, it is left to the pre-poller.
+            return track(location, fromIndex(location, indexed), poll);
+        }
+        return track(location, sharedPoll(location, packageOptions, repositoryOptions).get(), poll);
+    }
+
+    private LatestRevision fromIndex(S3Location location, RevisionIndex.Entry indexed) {
+        S3ObjectSummary latest = indexed.toSummary(location.getBucketName());
+        return new LatestRevision(latest, indexed.getLastKey(),
+            toRevision(location.getBucketName(), latest, indexed.getLastKey(), indexed.getMetadata()));
+    }
+
+    private Callable<Promise<LatestRevision>> poll(final S3Location location, final PackageOptions packageOptions,
+                                                   final RepositoryOptions repositoryOptions) {
+        return new Callable<Promise<LatestRevision>>() {
+            @Override
+            public Promise<LatestRevision> call() {
+                return sharedPoll(location, packageOptions, repositoryOptions);
+            }
+        };
+    }
+
+    // GoCD and the pre-poller share the poll of a path that is already in flight.
+    private Promise<LatestRevision> sharedPoll(final S3Location location, PackageOptions packageOptions,
+                                               RepositoryOptions repositoryOptions) {
+        final Promise<LatestRevision> shared = new Promise<LatestRevision>();
+        Promise<LatestRevision> inFlight = inFlightPolls.putIfAbsent(location, shared);
+        if (inFlight != null) {
+            return inFlight;
+        }
+        shared.whenDone(new Promise.Callback<LatestRevision>() {
+            @Override
+            public void completed(LatestRevision value) {
+                inFlightPolls.remove(location, shared);
+            }
+
+            @Override
+            public void failed(RuntimeException failure) {
+                inFlightPolls.remove(location, shared);
+            }
+        });
+        pollAsync(location, packageOptions, repositoryOptions).forwardTo(shared);
+        return shared;
+    }
+
+    // A warm pre-polled revision is preferred, it is refreshed ahead of GoCD's own polls.
+    private LatestRevision cachedRevision(S3Location location) {
+        LatestRevision warm = prePolls == null ? null : prePolls.warm(location);
+        if (warm != null) {
+            return warm;
+        }
+        return listingCache.get(location);
+    }
+
+    private LatestRevision track(S3Location location, LatestRevision latest, Callable<Promise<LatestRevision>> poll) {
+        if (prePolls != null && latest != null) {
+            prePolls.track(location, latest, poll);
+        }
+        return latest;
+    }
+
+    // The listing and the metadata request that follows it run as a continuation on the thread that completes the
+    // listing, the caller only waits when it asks for the result.
+    private Promise<LatestRevision> pollAsync(final S3Location location, final PackageOptions packageOptions,
+                                              final RepositoryOptions repositoryOptions) {
+        final CallStats stats = metrics.poll(location.getBucketName(), location.getPrefix());
+        final long startedNanos = System.nanoTime();
+        final long started = System.currentTimeMillis();
+        final Promise<LatestRevision> polled = new Promise<LatestRevision>();
+        RevisionIndex.Entry cursor = cursorOf(location, packageOptions, repositoryOptions);
+        final PollPlanner.Strategy strategy = strategyOf(location, cursor, packageOptions, repositoryOptions);
+        listing(location, strategy, cursor, packageOptions, repositoryOptions).whenDone(new Promise.Callback<ListingResult>() {
+            @Override
+            public void completed(ListingResult result) {
+                LatestRevision latest;
+                try {
+                    latest = latestOf(location, strategy, result, packageOptions, repositoryOptions, started, stats);
+                } catch (RuntimeException ex) {
+                    stats.record(startedNanos, false);
+                    polled.fail(ex);
+                    return;
+                }
+                stats.record(startedNanos, latest != null);
+                polled.complete(latest);
+            }
+
+            @Override
+            public void failed(RuntimeException failure) {
+                log.error("error getting object list", failure);
+                stats.record(startedNanos, false);
+                polled.complete(null);
+            }
+        });
+        return polled;
+    }
+
+    // The indexed cursor of a LEXICAL package, or the one the planner learned for a package whose keys turned out to
+    // sort in upload order.
+    private RevisionIndex.Entry cursorOf(S3Location location, PackageOptions packageOptions, RepositoryOptions repositoryOptions) {
+        if (packageOptions.isLexicalKeyOrder()) {
+            RevisionIndex.Entry indexed = revisionIndex == null ? null : revisionIndex.get(location);
+            return indexed != null && indexed.getLastKey() != null ? indexed : null;
+        }
+        if (packageOptions.selectsAllKeys() && !repositoryOptions.hasInventory() && !repositoryOptions.isEventMode()) {
+            return planner.cursorOf(location);
+        }
+        return null;
+    }
+
+    private PollPlanner.Strategy strategyOf(S3Location location, RevisionIndex.Entry cursor, PackageOptions packageOptions,
+                                            RepositoryOptions repositoryOptions) {
+        if (packageOptions.isShallow()) {
+            return PollPlanner.Strategy.SHALLOW;
+        } else if (packageOptions.isLexicalKeyOrder() && planner.isDueForCompleteListing(location)) {
+            // A key that sorts before the indexed cursor after all is only found by a complete listing.
+            return PollPlanner.Strategy.FULL;
+        } else if (cursor != null) {
+            return PollPlanner.Strategy.CURSOR;
+        } else if (packageOptions.isLexicalKeyOrder() && packageOptions.selectsAllKeys()) {
+            return planner.fitsOnePage(location) ? PollPlanner.Strategy.FULL : PollPlanner.Strategy.PROBE;
+        } else if (repositoryOptions.hasInventory()) {
+            return PollPlanner.Strategy.INVENTORY;
+        } else if (!repositoryOptions.isEventMode() && packageOptions.selectsAllKeys() && batches.plan(location.withoutOptions()) != null) {
+            return PollPlanner.Strategy.BATCHED;
+        }
+        return PollPlanner.Strategy.FULL;
+    }
+
+    // Only complete listings finish on the listing pool, the other strategies are done by the time they return.
+    private Promise<ListingResult> listing(S3Location location, PollPlanner.Strategy strategy, RevisionIndex.Entry cursor,
+                                           PackageOptions packageOptions, RepositoryOptions repositoryOptions) {
+        KeyFilter filter = packageOptions.getKeyFilter();
         try {
-            listing = client.listObjects(bucketName, path);
-        } catch (Exception ex) {
-            log.error("error getting object list", ex);
-            return new PackageRevisionMessage();
+            switch (strategy) {
+                case SHALLOW:
+                    return Promise.of(listingEngine.listShallow(location.getBucketName(), location.getPrefix(),
+                        packageOptions.getDepth(), filter));
+                case CURSOR:
+                    return Promise.of(listAfterIndexed(location, cursor, filter));
+                case PROBE:
+                    return Promise.of(listingEngine.listGreatest(location.getBucketName(), location.getPrefix()));
+                case INVENTORY:
+                    return Promise.of(inventoryLister.list(location, repositoryOptions.getInventoryLocation(), filter));
+                case BATCHED:
+                    ListingResult batched = batchedListing(location);
+                    if (batched != null) {
+                        return Promise.of(batched);
+                    }
+                    // The parent stopped being batched meanwhile.
+                    return listingEngine.listAsync(location.getBucketName(), location.getPrefix(), filter);
+                default:
+                    return listingEngine.listAsync(location.getBucketName(), location.getPrefix(), filter);
+            }
+        } catch (RuntimeException ex) {
+            return Promise.failed(ex);
+        }
+    }
+
+    private LatestRevision latestOf(S3Location location, PollPlanner.Strategy strategy, ListingResult result,
+                                    PackageOptions packageOptions, RepositoryOptions repositoryOptions, long started,
+                                    CallStats stats) {
+        stats.addListed(result.getKeyCount(), result.getPageCount());
+        stats.setStrategy(strategy.name());
+        planner.observe(location, strategy, result);
+        if (repositoryOptions.isEventMode() && packageOptions.selectsAllKeys()) {
+            eventSubscriptions.reconcile(location.withoutOptions(), result, started);
         }
-        List<S3ObjectSummary> s3Objects = listing.getObjectSummaries();
-        if (s3Objects.isEmpty()) {
+        if (result.isEmpty()) {
             log.error("empty object summaries");
-            return new PackageRevisionMessage();
+            return null;
         }
-        S3ObjectSummary latest = getLatest(s3Objects,null);
+        return cache(location, result, packageOptions.getRevisionSource());
+    }
 
-        while(listing.isTruncated()){
-            listing = client.listNextBatchOfObjects(listing);
-            latest = getLatest(s3Objects, latest);
+    // Sibling packages share one listing of their parent, the results of the others are kept until they poll. The
+    // listings hold every key, they are shared by the packages on a path whatever their revision source.
+    private ListingResult batchedListing(S3Location packageLocation) {
+        S3Location location = packageLocation.withoutOptions();
+        ListingResult listed = batchedListings.get(location);
+        if (listed == null) {
+            final BatchPlanner.Batch batch = batches.plan(location);
+            if (batch == null) {
+                return null;
+            }
+            listed = inFlightBatches.execute(batch.getParent(), new Callable<RoutedListingResult>() {
+                @Override
+                public RoutedListingResult call() {
+                    S3Location parent = batch.getParent();
+                    RoutedListingResult routed = listingEngine.listRouted(parent.getBucketName(), parent.getPrefix(),
+                        batch.getPrefixes());
+                    batches.learn(batch, routed.getKeyCount(), routed.getRoutedKeyCount());
+                    for (Map.Entry<String, ListingResult> result : routed.getResults().entrySet()) {
+                        batchedListings.put(new S3Location(parent.getBucketName(), result.getKey()), result.getValue());
+                    }
+                    return routed;
+                }
+            }).resultOf(location.getPrefix());
         }
+        batchedListings.invalidate(location);
+        return listed;
+    }
 
-        String filename = latest.getKey().substring(path.length());
-        ObjectMetadata obj = client.getObjectMetadata(bucketName, latest.getKey());
+    // With lexically ordered keys only the keys after the indexed cursor can be newer.
+    private ListingResult listAfterIndexed(S3Location location, RevisionIndex.Entry indexed, KeyFilter filter) {
+        ListingResult result = indexed.toListingResult(location.getBucketName());
+        result.merge(listingEngine.listAfter(location.getBucketName(), location.getPrefix(), indexed.getLastKey(),
+            new ListingResult(filter.selector(location.getPrefix()))));
+        return result;
+    }
 
-        String version = obj.getUserMetaDataOf("version");
-        String sha = obj.getUserMetaDataOf("sha");
-        String buildUrl = obj.getUserMetaDataOf("build");
+    private LatestRevision cache(S3Location location, ListingResult result, RevisionSource revisionSource) {
+        S3ObjectSummary latestObject = result.getLatest();
+        RevisionMetadata metadata = metadataOf(location.getBucketName(), latestObject, revisionSource);
+        LatestRevision latest = new LatestRevision(latestObject, result.getLastKey(),
+            toRevision(location.getBucketName(), latestObject, result.getLastKey(), metadata));
+        listingCache.put(location, latest);
+        log.debug("cached latest object of " + location + " (" + listingCache.stats() + ")");
+        if (revisionIndex != null) {
+            revisionIndex.put(location, new RevisionIndex.Entry(latestObject.getKey(), latestObject.getETag(),
+                latestObject.getLastModified().getTime(), result.getLastKey(), metadata));
+        }
+        return latest;
+    }
 
+    private PackageRevisionMessage toRevision(String bucketName, S3ObjectSummary latest, String marker, RevisionMetadata metadata) {
         // String revision, Date timestamp, String user, String revisionComment, String trackbackUrl
-        return new PackageRevisionMessage(
-            version,
+        PackageRevisionMessage revision = new PackageRevisionMessage(
+            metadata.getVersion(),
             latest.getLastModified(),
             "S3",
             "Object at " + latest.getKey() + " with date " + latest.getLastModified().toString() + " located at " +
-            client.getUrl(bucketName, latest.getKey()).toString() + " for SHA " + sha ,
-            buildUrl
+            urlOf(bucketName, latest.getKey()).toString() + " for SHA " + metadata.getSha() ,
+            metadata.getBuildUrl()
         );
+        new ListingCursor(latest.getKey(), latest.getETag(), latest.getLastModified().getTime(), marker).writeTo(revision);
+        return revision;
     }
 
-    private S3ObjectSummary getLatest(List<S3ObjectSummary> s3Objects, S3ObjectSummary latest ) {
-        if(latest == null){
-            latest = s3Objects.get(0);
+    private RevisionMetadata metadataOf(String bucketName, S3ObjectSummary latest, RevisionSource revisionSource) {
+        RevisionMetadata fromListing = revisionSource.fromListing(latest.getKey(), latest.getETag());
+        if (fromListing != null) {
+            return fromListing;
         }
-        for (S3ObjectSummary s3Object : s3Objects) {
-            if (s3Object.getLastModified().after(latest.getLastModified())) {
-                latest = s3Object;
-            }
+        if (latest.getETag() == null) {
+            return fetchMetadata(bucketName, latest.getKey());
+        }
+        ObjectVersionKey key = new ObjectVersionKey(bucketName, latest.getKey(), latest.getETag());
+        RevisionMetadata metadata = metadataCache.get(key);
+        if (metadata == null) {
+            metadata = fetchMetadata(bucketName, latest.getKey());
+            metadataCache.put(key, metadata);
+        }
+        return metadata;
+    }
+
+    private RevisionMetadata fetchMetadata(String bucketName, String key) {
+        clients.getRequests().acquire(bucketName, S3RequestScheduler.Priority.POLL, key);
+        CallStats stats = metrics.s3("getObjectMetadata", bucketName);
+        long started = System.nanoTime();
+        Exception failure = null;
+        try {
+            return RevisionMetadata.from(clients.clientFor(bucketName).getObjectMetadata(bucketName, key));
+        } catch (RuntimeException ex) {
+            failure = ex;
+            throw ex;
+        } finally {
+            stats.record(started, failure == null);
+            clients.getRequests().release(bucketName, failure);
+        }
+    }
+
+    private URL urlOf(String bucketName, String key) {
+        CallStats stats = metrics.s3("getUrl", bucketName);
+        long started = System.nanoTime();
+        boolean success = false;
+        try {
+            URL url = clients.clientFor(bucketName).getUrl(bucketName, key);
+            success = true;
+            return url;
+        } finally {
+            stats.record(started, success);
         }
-        return latest;
     }
 
     public PackageRevisionMessage getLatestRevisionSince(PackageMaterialProperties packageConfiguration, PackageMaterialProperties repositoryConfiguration, PackageRevisionMessage previousPackageRevision) {
-        PackageRevisionMessage prm = getLatestRevision(packageConfiguration, repositoryConfiguration);
+        S3Location location = S3Location.from(packageConfiguration, repositoryConfiguration);
+        ListingCursor cursor = ListingCursor.fromRevision(previousPackageRevision);
+        RepositoryOptions repositoryOptions = RepositoryOptions.from(repositoryConfiguration);
+        PackageOptions packageOptions = PackageOptions.from(packageConfiguration);
+        PackageRevisionMessage prm;
+        if (cursor != null && packageOptions.isLexicalKeyOrder() && !packageOptions.isShallow() && !repositoryOptions.isEventMode()
+            && !planner.isDueForCompleteListing(location)) {
+            clients.configure(location.getBucketName(), repositoryOptions.getClientOptions());
+            LatestRevision cached = cachedRevision(location);
+            if (cached == null) {
+                return getLatestRevisionAfter(location, cursor, packageOptions, poll(location, packageOptions, repositoryOptions));
+            }
+            prm = cached.getRevision();
+        } else {
+            prm = getLatestRevision(packageConfiguration, repositoryConfiguration);
+        }
 
         if(prm == null){
             log.info("latest revision returned null.");
@@ -139,4 +513,29 @@ public class PackageRepositoryPoller {
         return null;
 
     }
+
+    // With lexically ordered keys every object uploaded after the previous revision sorts after its marker,
+    // so only the tail of the prefix needs to be listed.
+    private PackageRevisionMessage getLatestRevisionAfter(S3Location location, ListingCursor cursor, PackageOptions packageOptions,
+                                                          Callable<Promise<LatestRevision>> poll) {
+        CallStats stats = metrics.poll(location.getBucketName(), location.getPrefix());
+        long started = System.nanoTime();
+        ListingResult result;
+        try {
+            result = listingEngine.listAfter(location.getBucketName(), location.getPrefix(), cursor.getMarker(),
+                new ListingResult(packageOptions.getKeyFilter().selector(location.getPrefix())));
+        } catch (Exception ex) {
+            stats.record(started, false);
+            log.error("error getting object list after " + cursor.getMarker(), ex);
+            return null;
+        }
+        stats.record(started, true);
+        stats.addListed(result.getKeyCount(), result.getPageCount());
+        stats.setStrategy(PollPlanner.Strategy.CURSOR.name());
+        planner.observe(location, PollPlanner.Strategy.CURSOR, result);
+        if (result.isEmpty() || result.getLatest().getLastModified().getTime() <= cursor.getLastModified()) {
+            return null;
+        }
+        return track(location, cache(location, result, packageOptions.getRevisionSource()), poll).getRevision();
+    }
 }
@@ -0,0 +1,56 @@
+package com.schibsted.gocd.s3poller;
+
+// Plugin wide tuning, read from system properties of the GoCD server (e.g. -Ds3poller.listing.threads=16).
+public class PluginSettings {
+
+    public static final String LISTING_THREADS = "s3poller.listing.threads";
+    public static final String CACHE_TTL_SECONDS = "s3poller.cache.ttl.seconds";
+    public static final String CACHE_MAX_ENTRIES = "s3poller.cache.maxEntries";
+    public static final String METADATA_CACHE_MAX_ENTRIES = "s3poller.metadataCache.maxEntries";
+    public static final String EVENTS_RECONCILE_SECONDS = "s3poller.events.reconcileSeconds";
+    public static final String INVENTORY_REFRESH_SECONDS = "s3poller.inventory.refreshSeconds";
+    public static final String INVENTORY_MAX_INDEXED_KEYS = "s3poller.inventory.maxIndexedKeys";
+    public static final String STREAMING_LISTING = "s3poller.listing.streaming";
+    public static final String S3_ENDPOINT = "s3poller.s3.endpoint";
+    public static final String REQUESTS_PER_SECOND = "s3poller.s3.requestsPerSecond";
+    public static final String METRICS_PORT = "s3poller.metrics.port";
+    public static final String METRICS_HOST = "s3poller.metrics.host";
+    public static final String INDEX_FILE = "s3poller.index.file";
+    public static final String INDEX_FLUSH_SECONDS = "s3poller.index.flushSeconds";
+    public static final String PREPOLL_THREADS = "s3poller.prepoll.threads";
+    public static final String PREPOLL_MIN_SECONDS = "s3poller.prepoll.minSeconds";
+    public static final String PREPOLL_MAX_SECONDS = "s3poller.prepoll.maxSeconds";
+    public static final String PREPOLL_IDLE_SECONDS = "s3poller.prepoll.idleSeconds";
+    public static final String BATCH_MIN_PACKAGES = "s3poller.batch.minPackages";
+    public static final String PLANNER_VERIFY_POLLS = "s3poller.planner.verifyPolls";
+    public static final String LEXICAL_VERIFY_POLLS = "s3poller.lexical.verifyPolls";
+    public static final String LOG_REQUESTS = "s3poller.log.requests";
+
+    public static int intValue(String name, int defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            return defaultValue;
+        }
+    }
+
+    public static String stringValue(String name, String defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return value.trim();
+    }
+
+    public static boolean booleanValue(String name, boolean defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return Boolean.parseBoolean(value.trim());
+    }
+}
@@ -0,0 +1,228 @@
+package com.schibsted.gocd.s3poller;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Keeps what the polls of each package cost and chooses how to poll it next. A package whose newest object was also its
+// greatest key in the last few complete listings, whose complete listing takes more than one page, and whose newest
+// keys were seen to change only in zero-padded numbers, is polled with a cursor: only the keys after the greatest one
+// are listed. A new key sorting before the cursor is missed until the next complete listing, which every
+// verifyPolls-th poll is; when a listing shows the keys are not ordered after all the package goes back to complete
+// listings for good. Learned cursors are off unless verifyPolls is set, the statistics are kept and reported either
+// way. The cursor of a LEXICAL package is verified by a complete listing every lexicalVerifyPolls-th poll.
+public class PollPlanner {
+
+    public enum Strategy {
+        SHALLOW, CURSOR, PROBE, INVENTORY, BATCHED, FULL;
+
+        boolean isComplete() {
+            return this == FULL || this == BATCHED;
+        }
+    }
+
+    static final int MIN_SORTED_LISTINGS = 3;
+    // Numbers this long are taken for timestamps, which keep their width.
+    static final int TIMESTAMP_DIGITS = 8;
+
+    enum KeyOrder {PADDED, AMBIGUOUS, UNORDERED}
+
+    private final int verifyPolls;
+    private final int lexicalVerifyPolls;
+    private final ConcurrentMap<S3Location, PackageStats> packages = new ConcurrentHashMap<S3Location, PackageStats>();
+
+    private final Logger log = Logger.getLoggerFor(this.getClass());
+
+    // 0 verify polls never polls with a learned cursor.
+    public PollPlanner(int verifyPolls) {
+        this(verifyPolls, verifyPolls);
+    }
+
+    // 0 lexical verify polls trusts the key order of LEXICAL packages for good.
+    public PollPlanner(int verifyPolls, int lexicalVerifyPolls) {
+        this.verifyPolls = verifyPolls;
+        this.lexicalVerifyPolls = lexicalVerifyPolls;
+    }
+
+    // The cursor to poll the package with, null when it has to be listed completely.
+    public RevisionIndex.Entry cursorOf(S3Location location) {
+        PackageStats stats = packages.get(location);
+        if (stats == null || verifyPolls <= 0) {
+            return null;
+        }
+        synchronized (stats) {
+            if (stats.unsorted || stats.sortedListings < MIN_SORTED_LISTINGS || stats.completePages < 2
+                || stats.paddedChanges == 0 || stats.unorderedKeys
+                || stats.cursorPolls >= verifyPolls - 1) {
+                return null;
+            }
+            return stats.cursor;
+        }
+    }
+
+    // Whether a LEXICAL package polled with a cursor since its last complete listing as often as it may.
+    public boolean isDueForCompleteListing(S3Location location) {
+        PackageStats stats = packages.get(location);
+        if (stats == null || lexicalVerifyPolls <= 0) {
+            return false;
+        }
+        synchronized (stats) {
+            return stats.cursorPolls >= lexicalVerifyPolls - 1;
+        }
+    }
+
+    // A path whose last complete listing took a single page is cheapest to list again, whatever its key order.
+    public boolean fitsOnePage(S3Location location) {
+        PackageStats stats = packages.get(location);
+        if (stats == null) {
+            return false;
+        }
+        synchronized (stats) {
+            return stats.completePages == 1;
+        }
+    }
+
+    public void observe(S3Location location, Strategy strategy, ListingResult result) {
+        PackageStats stats = statsOf(location);
+        Strategy previous;
+        synchronized (stats) {
+            previous = stats.strategy;
+            stats.strategy = strategy;
+            stats.polls++;
+            stats.pages += result.getPageCount();
+            if (result.isEmpty()) {
+                return;
+            }
+            S3ObjectSummary latest = result.getLatest();
+            if (stats.cursor != null && (!latest.getKey().equals(stats.cursor.getKey())
+                || latest.getLastModified().getTime() != stats.cursor.getLastModified())) {
+                stats.changes++;
+            }
+            if (stats.cursor != null && !latest.getKey().equals(stats.cursor.getKey())) {
+                KeyOrder order = orderOf(stats.cursor.getKey(), latest.getKey());
+                if (order == KeyOrder.PADDED) {
+                    stats.paddedChanges++;
+                } else if (order == KeyOrder.UNORDERED && !stats.unorderedKeys) {
+                    stats.unorderedKeys = true;
+                    log.info("the keys of " + location + " do not keep their shape (" + stats.cursor.getKey() + ", " +
+                        latest.getKey() + "), listing it completely");
+                }
+            }
+            String lastKey = result.getLastKey();
+            if (strategy.isComplete() || strategy == Strategy.PROBE && result.getPageCount() == 1) {
+                // A greatest key search that stopped after its first page listed the whole path as well.
+                stats.keys = result.getKeyCount();
+                stats.completePages = result.getPageCount();
+            }
+            if (strategy.isComplete()) {
+                stats.cursorPolls = 0;
+                if (latest.getKey().equals(lastKey)) {
+                    stats.sortedListings++;
+                } else {
+                    if (stats.sortedListings >= MIN_SORTED_LISTINGS && !stats.unsorted) {
+                        log.info("the newest object of " + location + " is no longer its greatest key, listing it completely again");
+                    }
+                    stats.unsorted = stats.unsorted || stats.sortedListings >= MIN_SORTED_LISTINGS;
+                    stats.sortedListings = 0;
+                }
+            } else {
+                if (strategy == Strategy.CURSOR) {
+                    stats.cursorPolls++;
+                }
+                if (stats.cursor != null && stats.cursor.getLastKey() != null
+                    && (lastKey == null || stats.cursor.getLastKey().compareTo(lastKey) > 0)) {
+                    lastKey = stats.cursor.getLastKey();
+                }
+            }
+            stats.cursor = new RevisionIndex.Entry(latest.getKey(), latest.getETag(), latest.getLastModified().getTime(),
+                lastKey, null);
+        }
+        if (previous != strategy) {
+            log.info("polling " + location + " with " + strategy + " (" + stats + ")");
+        }
+    }
+
+    // Whether a later key of the same shape is bound to sort after both: the keys differ only in numbers of the same
+    // width, and one of those is zero-padded or long enough to be a timestamp. Numbers without a leading zero may be
+    // unpadded (build-9, build-10), so they prove nothing.
+    static KeyOrder orderOf(String before, String after) {
+        if (before.length() != after.length()) {
+            return KeyOrder.UNORDERED;
+        }
+        KeyOrder order = KeyOrder.AMBIGUOUS;
+        int i = 0;
+        while (i < before.length()) {
+            boolean digit = Character.isDigit(before.charAt(i));
+            if (digit != Character.isDigit(after.charAt(i))) {
+                return KeyOrder.UNORDERED;
+            }
+            if (!digit) {
+                if (before.charAt(i) != after.charAt(i)) {
+                    return KeyOrder.UNORDERED;
+                }
+                i++;
+                continue;
+            }
+            int end = digitsEnd(before, i);
+            if (end != digitsEnd(after, i)) {
+                return KeyOrder.UNORDERED;
+            }
+            if (!before.regionMatches(i, after, i, end - i)
+                && (before.charAt(i) == '0' || after.charAt(i) == '0' || end - i >= TIMESTAMP_DIGITS)) {
+                order = KeyOrder.PADDED;
+            }
+            i = end;
+        }
+        return order;
+    }
+
+    private static int digitsEnd(String key, int start) {
+        int end = start;
+        while (end < key.length() && Character.isDigit(key.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    public String report(S3Location location) {
+        PackageStats stats = packages.get(location);
+        return stats == null ? null : stats.toString();
+    }
+
+    private PackageStats statsOf(S3Location location) {
+        PackageStats stats = packages.get(location);
+        if (stats == null) {
+            PackageStats created = new PackageStats();
+            stats = packages.putIfAbsent(location, created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+        return stats;
+    }
+
+    private static class PackageStats {
+
+        private Strategy strategy;
+        private long polls;
+        private long pages;
+        private long changes;
+        private long keys;
+        private int completePages;
+        private int cursorPolls;
+        private int sortedListings;
+        private boolean unsorted;
+        private int paddedChanges;
+        private boolean unorderedKeys;
+        private RevisionIndex.Entry cursor;
+
+        @Override
+        public synchronized String toString() {
+            return String.format(Locale.US, "polls=%d pages/poll=%.1f changes=%d keys=%d", polls,
+                polls == 0 ? 0.0 : (double) pages / polls, changes, keys);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.schibsted.gocd.s3poller;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Keeps the latest revision of every path GoCD asks for warm, polling S3 ahead of GoCD. A path that changed is polled
+// again after the minimum interval, one that did not waits half as long again each time, up to the maximum interval.
+// Paths GoCD stopped asking for are dropped after the idle time. The threads only start polls, which finish on the
+// listing pool, so a few of them keep many paths warm.
+public class PrePollScheduler {
+
+    private static final double JITTER = 0.2;
+
+    private final ScheduledExecutorService executor;
+    private final long minIntervalMillis;
+    private final long maxIntervalMillis;
+    private final long idleMillis;
+    private final ConcurrentMap<S3Location, Material> materials = new ConcurrentHashMap<S3Location, Material>();
+    private final Random random = new Random();
+
+    private final Logger log = Logger.getLoggerFor(this.getClass());
+
+    public PrePollScheduler(int threads, long minIntervalMillis, long maxIntervalMillis, long idleMillis) {
+        this.executor = new ScheduledThreadPoolExecutor(threads, new DaemonThreadFactory("s3poller-prepoll"));
+        this.minIntervalMillis = minIntervalMillis;
+        this.maxIntervalMillis = Math.max(minIntervalMillis, maxIntervalMillis);
+        this.idleMillis = idleMillis;
+    }
+
+    // The warm revision of the path, null when it is not tracked yet or its last poll is too old to trust.
+    public LatestRevision warm(S3Location location) {
+        Material material = materials.get(location);
+        if (material == null) {
+            return null;
+        }
+        material.lastRequested = currentTimeMillis();
+        if (material.latest == null || material.lastRequested - material.polledAt > maxIntervalMillis + minIntervalMillis) {
+            return null;
+        }
+        return material.latest;
+    }
+
+    // Starts keeping the path warm with the result of a live poll. The poll is replaced on every call, so it follows
+    // changes to the package and repository configuration.
+    public void track(S3Location location, LatestRevision latest, Callable<Promise<LatestRevision>> poll) {
+        Material material = materials.get(location);
+        if (material != null) {
+            material.poll = poll;
+            return;
+        }
+        material = new Material(location, poll);
+        material.latest = latest;
+        material.polledAt = currentTimeMillis();
+        material.lastRequested = material.polledAt;
+        if (materials.putIfAbsent(location, material) == null) {
+            schedule(material);
+        }
+    }
+
+    public boolean tracks(S3Location location) {
+        return materials.containsKey(location);
+    }
+
+    public int size() {
+        return materials.size();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void schedule(Material material) {
+        if (executor.isShutdown()) {
+            return;
+        }
+        executor.schedule(material, jittered(material.intervalMillis), TimeUnit.MILLISECONDS);
+    }
+
+    long jittered(long intervalMillis) {
+        double factor;
+        synchronized (random) {
+            factor = 1 - JITTER + 2 * JITTER * random.nextDouble();
+        }
+        return (long) (intervalMillis * factor);
+    }
+
+    long nextInterval(long intervalMillis, boolean changed) {
+        if (changed) {
+            return minIntervalMillis;
+        }
+        return Math.min(maxIntervalMillis, intervalMillis + intervalMillis / 2);
+    }
+
+    static boolean changed(LatestRevision before, LatestRevision after) {
+        if (before == null || after == null) {
+            return before != after;
+        }
+        String beforeKey = before.getLatest().getKey();
+        String beforeETag = before.getLatest().getETag();
+        return !beforeKey.equals(after.getLatest().getKey())
+            || (beforeETag == null ? after.getLatest().getETag() != null : !beforeETag.equals(after.getLatest().getETag()))
+            || before.getLatest().getLastModified().getTime() != after.getLatest().getLastModified().getTime();
+    }
+
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private class Material implements Runnable, Promise.Callback<LatestRevision> {
+
+        private final S3Location location;
+        private volatile Callable<Promise<LatestRevision>> poll;
+        private volatile LatestRevision latest;
+        private volatile long polledAt;
+        private volatile long lastRequested;
+        private volatile long intervalMillis = minIntervalMillis;
+
+        private Material(S3Location location, Callable<Promise<LatestRevision>> poll) {
+            this.location = location;
+            this.poll = poll;
+        }
+
+        @Override
+        public void run() {
+            if (currentTimeMillis() - lastRequested > idleMillis) {
+                materials.remove(location, this);
+                log.debug("stopped pre-polling idle " + location);
+                return;
+            }
+            // The poll only starts here, the material is rescheduled by whichever thread finishes it.
+            try {
+                poll.call().whenDone(this);
+            } catch (Exception ex) {
+                retryLater(ex);
+            }
+        }
+
+        @Override
+        public void completed(LatestRevision polled) {
+            if (polled != null) {
+                intervalMillis = nextInterval(intervalMillis, changed(latest, polled));
+                latest = polled;
+                polledAt = currentTimeMillis();
+            }
+            schedule(this);
+        }
+
+        @Override
+        public void failed(RuntimeException failure) {
+            retryLater(failure);
+        }
+
+        private void retryLater(Exception ex) {
+            // The previous revision is served until it is too old, then GoCD polls live again.
+            log.warn("pre-poll of " + location + " failed: " + ex.getMessage());
+            schedule(this);
+        }
+    }
+}
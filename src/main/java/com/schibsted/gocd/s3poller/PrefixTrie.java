@@ -0,0 +1,75 @@
+package com.schibsted.gocd.s3poller;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Values by prefix. Finds the value of the longest prefix a key starts with, or of all of them, in a single walk over
+// the key.
+public class PrefixTrie<V> {
+
+    private final Node<V> root = new Node<V>();
+    private int size;
+
+    public void put(String prefix, V value) {
+        Node<V> node = root;
+        for (int i = 0; i < prefix.length(); i++) {
+            Character c = prefix.charAt(i);
+            Node<V> child = node.children.get(c);
+            if (child == null) {
+                child = new Node<V>();
+                node.children.put(c, child);
+            }
+            node = child;
+        }
+        if (node.value == null) {
+            size++;
+        }
+        node.value = value;
+    }
+
+    public V longestMatch(String key) {
+        Node<V> node = root;
+        V longest = root.value;
+        for (int i = 0; i < key.length() && !node.children.isEmpty(); i++) {
+            node = node.children.get(key.charAt(i));
+            if (node == null) {
+                break;
+            }
+            if (node.value != null) {
+                longest = node.value;
+            }
+        }
+        return longest;
+    }
+
+    // The values of every prefix the key starts with, the shortest first.
+    public List<V> matches(String key) {
+        List<V> matches = new ArrayList<V>(2);
+        Node<V> node = root;
+        if (root.value != null) {
+            matches.add(root.value);
+        }
+        for (int i = 0; i < key.length() && !node.children.isEmpty(); i++) {
+            node = node.children.get(key.charAt(i));
+            if (node == null) {
+                break;
+            }
+            if (node.value != null) {
+                matches.add(node.value);
+            }
+        }
+        return matches;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static class Node<V> {
+
+        private final Map<Character, Node<V>> children = new HashMap<Character, Node<V>>(4);
+        private V value;
+    }
+}
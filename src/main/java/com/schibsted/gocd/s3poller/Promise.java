@@ -0,0 +1,109 @@
+package com.schibsted.gocd.s3poller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+// A value produced later, by whichever thread completes it. Callbacks run on that thread, or at once on the caller's
+// when the promise is already done, so continuations never hold a thread while they wait.
+public class Promise<T> {
+
+    public interface Callback<T> {
+        void completed(T value);
+
+        void failed(RuntimeException failure);
+    }
+
+    private final CountDownLatch done = new CountDownLatch(1);
+    private List<Callback<T>> callbacks = new ArrayList<Callback<T>>(2);
+    private T value;
+    private RuntimeException failure;
+
+    public static <T> Promise<T> of(T value) {
+        Promise<T> promise = new Promise<T>();
+        promise.complete(value);
+        return promise;
+    }
+
+    public static <T> Promise<T> failed(RuntimeException failure) {
+        Promise<T> promise = new Promise<T>();
+        promise.fail(failure);
+        return promise;
+    }
+
+    public void complete(T value) {
+        finish(value, null);
+    }
+
+    public void fail(RuntimeException failure) {
+        finish(null, failure);
+    }
+
+    // The first outcome wins, later ones are ignored.
+    private void finish(T value, RuntimeException failure) {
+        List<Callback<T>> waiting;
+        synchronized (this) {
+            if (callbacks == null) {
+                return;
+            }
+            this.value = value;
+            this.failure = failure;
+            waiting = callbacks;
+            callbacks = null;
+        }
+        done.countDown();
+        for (Callback<T> callback : waiting) {
+            notify(callback);
+        }
+    }
+
+    public void whenDone(Callback<T> callback) {
+        synchronized (this) {
+            if (callbacks != null) {
+                callbacks.add(callback);
+                return;
+            }
+        }
+        notify(callback);
+    }
+
+    // Completes the other promise with the outcome of this one.
+    public void forwardTo(final Promise<T> other) {
+        whenDone(new Callback<T>() {
+            @Override
+            public void completed(T value) {
+                other.complete(value);
+            }
+
+            @Override
+            public void failed(RuntimeException failure) {
+                other.fail(failure);
+            }
+        });
+    }
+
+    private void notify(Callback<T> callback) {
+        if (failure != null) {
+            callback.failed(failure);
+        } else {
+            callback.completed(value);
+        }
+    }
+
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    public T get() {
+        try {
+            done.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for S3", ex);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return value;
+    }
+}
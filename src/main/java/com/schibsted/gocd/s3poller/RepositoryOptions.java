@@ -0,0 +1,65 @@
+package com.schibsted.gocd.s3poller;
+
+import com.schibsted.gocd.s3poller.message.PackageMaterialProperties;
+
+public class RepositoryOptions {
+
+    private final String sqsQueueUrl;
+    private final String inventoryLocation;
+    private final ClientOptions clientOptions;
+
+    private RepositoryOptions(String sqsQueueUrl, String inventoryLocation, ClientOptions clientOptions) {
+        this.sqsQueueUrl = sqsQueueUrl;
+        this.inventoryLocation = inventoryLocation;
+        this.clientOptions = clientOptions;
+    }
+
+    public static RepositoryOptions from(PackageMaterialProperties repositoryConfiguration) {
+        return new RepositoryOptions(
+            PackageOptions.valueOf(repositoryConfiguration, Constants.SQS_QUEUE_URL, null),
+            PackageOptions.valueOf(repositoryConfiguration, Constants.INVENTORY_LOCATION, null),
+            clientOptionsOf(repositoryConfiguration));
+    }
+
+    private static ClientOptions clientOptionsOf(PackageMaterialProperties repositoryConfiguration) {
+        ClientOptions options = new ClientOptions(
+            intValueOf(repositoryConfiguration, Constants.S3_MAX_CONNECTIONS, ClientOptions.DEFAULT_MAX_CONNECTIONS),
+            intValueOf(repositoryConfiguration, Constants.S3_CONNECTION_TIMEOUT, ClientOptions.DEFAULT_CONNECTION_TIMEOUT_MILLIS),
+            intValueOf(repositoryConfiguration, Constants.S3_SOCKET_TIMEOUT, ClientOptions.DEFAULT_SOCKET_TIMEOUT_MILLIS),
+            !"false".equalsIgnoreCase(PackageOptions.valueOf(repositoryConfiguration, Constants.S3_TCP_KEEP_ALIVE, "true")));
+        // Most repositories leave the options out, they share the default clients.
+        return ClientOptions.DEFAULTS.equals(options) ? ClientOptions.DEFAULTS : options;
+    }
+
+    static int intValueOf(PackageMaterialProperties configuration, String key, int defaultValue) {
+        String value = PackageOptions.valueOf(configuration, key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            return defaultValue;
+        }
+    }
+
+    public boolean isEventMode() {
+        return sqsQueueUrl != null;
+    }
+
+    public String getSqsQueueUrl() {
+        return sqsQueueUrl;
+    }
+
+    public boolean hasInventory() {
+        return inventoryLocation != null;
+    }
+
+    public String getInventoryLocation() {
+        return inventoryLocation;
+    }
+
+    public ClientOptions getClientOptions() {
+        return clientOptions;
+    }
+}
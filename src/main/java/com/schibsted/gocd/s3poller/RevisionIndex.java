@@ -0,0 +1,309 @@
+package com.schibsted.gocd.s3poller;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+// The latest object, its metadata and the listing cursor of every polled path, kept on disk so a restarted server
+// starts from what it knew instead of listing every path from scratch.
+//
+// File layout: magic, format version, entry count, the entries, and a CRC32 of everything before it. The file is
+// replaced as a whole: written to a temporary file, synced and renamed over the previous one, so a crash leaves
+// either the old or the new file. A file with another version or a bad checksum is ignored. Version 1 files did not
+// record the package options, their entries are read as those of packages with the default options.
+public class RevisionIndex {
+
+    static final int MAGIC = 0x53335249; // "S3RI"
+    static final int VERSION = 2;
+
+    private final File file;
+    private final ConcurrentMap<S3Location, Entry> entries = new ConcurrentHashMap<S3Location, Entry>();
+    private volatile boolean dirty;
+
+    private final Logger log = Logger.getLoggerFor(this.getClass());
+
+    public RevisionIndex(File file) {
+        this.file = file;
+    }
+
+    public static RevisionIndex load(File file) {
+        RevisionIndex index = new RevisionIndex(file);
+        if (file.exists()) {
+            try {
+                index.read();
+                index.log.info("read " + index.size() + " revisions from " + file);
+            } catch (IOException ex) {
+                index.entries.clear();
+                index.log.warn("ignoring revision index " + file + ": " + ex.getMessage());
+            }
+        }
+        return index;
+    }
+
+    public Entry get(S3Location location) {
+        return entries.get(location);
+    }
+
+    public void put(S3Location location, Entry entry) {
+        if (!entry.equals(entries.put(location, entry))) {
+            dirty = true;
+        }
+    }
+
+    public Map<S3Location, Entry> entries() {
+        return entries;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void startFlushing(long intervalSeconds) {
+        ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("s3poller-index"));
+        flusher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flushQuietly();
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flushQuietly();
+            }
+        }, "s3poller-index-shutdown"));
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException ex) {
+            log.warn("could not write revision index " + file + ": " + ex.getMessage());
+        }
+    }
+
+    public synchronized void flush() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        byte[] content;
+        try {
+            content = write();
+        } catch (IOException ex) {
+            dirty = true;
+            throw ex;
+        }
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            dirty = true;
+            throw new IOException("Could not create " + parent);
+        }
+        File temporary = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(temporary);
+        try {
+            out.write(content);
+            out.flush();
+            out.getFD().sync();
+        } catch (IOException ex) {
+            dirty = true;
+            throw ex;
+        } finally {
+            out.close();
+        }
+        // Renaming over an existing file fails on Windows, elsewhere it atomically replaces it.
+        if (!temporary.renameTo(file) && !(file.delete() && temporary.renameTo(file))) {
+            dirty = true;
+            throw new IOException("Could not rename " + temporary + " to " + file);
+        }
+    }
+
+    private byte[] write() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        Map<S3Location, Entry> snapshot = new HashMap<S3Location, Entry>(entries);
+        out.writeInt(snapshot.size());
+        for (Map.Entry<S3Location, Entry> entry : snapshot.entrySet()) {
+            writeString(out, entry.getKey().getBucketName());
+            writeString(out, entry.getKey().getPrefix());
+            writeString(out, entry.getKey().getOptions());
+            entry.getValue().writeTo(out);
+        }
+        out.flush();
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private void read() throws IOException {
+        byte[] content = readFully(file);
+        if (content.length < 20) {
+            throw new IOException("truncated file");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length - 8);
+        if (new DataInputStream(new ByteArrayInputStream(content, content.length - 8, 8)).readLong() != crc.getValue()) {
+            throw new IOException("checksum mismatch");
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(content, 0, content.length - 8));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not a revision index");
+        }
+        int version = in.readInt();
+        if (version != 1 && version != VERSION) {
+            throw new IOException("unsupported version " + version);
+        }
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            S3Location location = new S3Location(readString(in), readString(in), version > 1 ? readString(in) : "");
+            entries.put(location, Entry.readFrom(in));
+        }
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    public static class Entry {
+
+        private final String key;
+        private final String eTag;
+        private final long lastModified;
+        private final String lastKey;
+        private final RevisionMetadata metadata;
+
+        public Entry(String key, String eTag, long lastModified, String lastKey, RevisionMetadata metadata) {
+            this.key = key;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.lastKey = lastKey;
+            this.metadata = metadata;
+        }
+
+        public S3ObjectSummary toSummary(String bucketName) {
+            S3ObjectSummary summary = new S3ObjectSummary();
+            summary.setBucketName(bucketName);
+            summary.setKey(key);
+            summary.setETag(eTag);
+            summary.setLastModified(new Date(lastModified));
+            return summary;
+        }
+
+        public ListingResult toListingResult(String bucketName) {
+            ListingResult result = new ListingResult();
+            result.add(bucketName, key, eTag, lastModified);
+            if (lastKey != null) {
+                result.addPage(0, lastKey);
+            }
+            return result;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public String getLastKey() {
+            return lastKey;
+        }
+
+        public RevisionMetadata getMetadata() {
+            return metadata;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            writeString(out, key);
+            writeString(out, eTag);
+            out.writeLong(lastModified);
+            writeString(out, lastKey);
+            writeString(out, metadata.getVersion());
+            writeString(out, metadata.getSha());
+            writeString(out, metadata.getBuildUrl());
+        }
+
+        static Entry readFrom(DataInputStream in) throws IOException {
+            String key = readString(in);
+            String eTag = readString(in);
+            long lastModified = in.readLong();
+            String lastKey = readString(in);
+            return new Entry(key, eTag, lastModified, lastKey,
+                new RevisionMetadata(readString(in), readString(in), readString(in)));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Entry that = (Entry) o;
+
+            if (lastModified != that.lastModified) return false;
+            if (key != null ? !key.equals(that.key) : that.key != null) return false;
+            if (eTag != null ? !eTag.equals(that.eTag) : that.eTag != null) return false;
+            if (lastKey != null ? !lastKey.equals(that.lastKey) : that.lastKey != null) return false;
+            if (metadata != null ? !metadata.equals(that.metadata) : that.metadata != null) return false;
+
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = key != null ? key.hashCode() : 0;
+            result = 31 * result + (eTag != null ? eTag.hashCode() : 0);
+            result = 31 * result + (int) (lastModified ^ (lastModified >>> 32));
+            result = 31 * result + (lastKey != null ? lastKey.hashCode() : 0);
+            result = 31 * result + (metadata != null ? metadata.hashCode() : 0);
+            return result;
+        }
+    }
+}
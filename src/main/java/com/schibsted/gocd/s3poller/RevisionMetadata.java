@@ -0,0 +1,57 @@
+package com.schibsted.gocd.s3poller;
+
+import com.amazonaws.services.s3.model.ObjectMetadata;
+
+public class RevisionMetadata {
+
+    private final String version;
+    private final String sha;
+    private final String buildUrl;
+
+    public RevisionMetadata(String version, String sha, String buildUrl) {
+        this.version = version;
+        this.sha = sha;
+        this.buildUrl = buildUrl;
+    }
+
+    public static RevisionMetadata from(ObjectMetadata metadata) {
+        return new RevisionMetadata(
+            metadata.getUserMetaDataOf("version"),
+            metadata.getUserMetaDataOf("sha"),
+            metadata.getUserMetaDataOf("build"));
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public String getSha() {
+        return sha;
+    }
+
+    public String getBuildUrl() {
+        return buildUrl;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        RevisionMetadata that = (RevisionMetadata) o;
+
+        if (version != null ? !version.equals(that.version) : that.version != null) return false;
+        if (sha != null ? !sha.equals(that.sha) : that.sha != null) return false;
+        if (buildUrl != null ? !buildUrl.equals(that.buildUrl) : that.buildUrl != null) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = version != null ? version.hashCode() : 0;
+        result = 31 * result + (sha != null ? sha.hashCode() : 0);
+        result = 31 * result + (buildUrl != null ? buildUrl.hashCode() : 0);
+        return result;
+    }
+}
@@ -0,0 +1,116 @@
+package com.schibsted.gocd.s3poller;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+// Where the revision of a package's latest object comes from: its user metadata, which costs a HEAD request, or,
+// from the listing alone, its ETag or the named groups "version", "sha" and "build" of a pattern over its key.
+public class RevisionSource {
+
+    public static final RevisionSource METADATA = new RevisionSource(Constants.REVISION_SOURCE_METADATA, null, null);
+
+    private static final String[] GROUPS = {"version", "sha", "build"};
+    private static final LruCache<String, RevisionSource> COMPILED = new LruCache<String, RevisionSource>(1000, 0);
+
+    private final String source;
+    private final Pattern keyPattern;
+    private final int[] groups;
+
+    private RevisionSource(String source, Pattern keyPattern, int[] groups) {
+        this.source = source;
+        this.keyPattern = keyPattern;
+        this.groups = groups;
+    }
+
+    // Throws IllegalArgumentException for an unknown source or an invalid key pattern.
+    public static RevisionSource of(String source, String keyPattern) {
+        if (source == null || Constants.REVISION_SOURCE_METADATA.equalsIgnoreCase(source)) {
+            return METADATA;
+        }
+        String cacheKey = source + "\n" + keyPattern;
+        RevisionSource revisionSource = COMPILED.get(cacheKey);
+        if (revisionSource == null) {
+            if (Constants.REVISION_SOURCE_ETAG.equalsIgnoreCase(source)) {
+                revisionSource = new RevisionSource(Constants.REVISION_SOURCE_ETAG, null, null);
+            } else if (Constants.REVISION_SOURCE_KEY.equalsIgnoreCase(source)) {
+                if (keyPattern == null) {
+                    throw new IllegalArgumentException("A " + Constants.REVISION_SOURCE_KEY + " revision needs a key pattern");
+                }
+                Map<String, Integer> named = new HashMap<String, Integer>();
+                Pattern pattern = compileNamed(keyPattern, named);
+                if (!named.containsKey("version")) {
+                    throw new IllegalArgumentException("The key pattern needs a (?<version>...) group");
+                }
+                int[] groups = new int[GROUPS.length];
+                for (int i = 0; i < GROUPS.length; i++) {
+                    groups[i] = named.containsKey(GROUPS[i]) ? named.get(GROUPS[i]) : -1;
+                }
+                revisionSource = new RevisionSource(Constants.REVISION_SOURCE_KEY, pattern, groups);
+            } else {
+                throw new IllegalArgumentException("Unknown revision source " + source);
+            }
+            COMPILED.put(cacheKey, revisionSource);
+        }
+        return revisionSource;
+    }
+
+    // Named groups are not supported by the regular expressions of Java 6: their names are taken out, noting the
+    // number of each group.
+    static Pattern compileNamed(String regex, Map<String, Integer> named) {
+        StringBuilder plain = new StringBuilder(regex.length());
+        int group = 0;
+        boolean inClass = false;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\' && i + 1 < regex.length()) {
+                plain.append(c).append(regex.charAt(++i));
+                continue;
+            }
+            if (inClass) {
+                inClass = c != ']';
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == '(' && regex.startsWith("(?<", i) && i + 3 < regex.length()
+                && regex.charAt(i + 3) != '=' && regex.charAt(i + 3) != '!') {
+                int end = regex.indexOf('>', i);
+                if (end < 0) {
+                    throw new PatternSyntaxException("Unclosed group name", regex, i);
+                }
+                named.put(regex.substring(i + 3, end), ++group);
+                plain.append('(');
+                i = end;
+                continue;
+            } else if (c == '(' && !regex.startsWith("(?", i)) {
+                group++;
+            }
+            plain.append(c);
+        }
+        return Pattern.compile(plain.toString());
+    }
+
+    // The revision known from the listing, null when it has to be read from the object's metadata.
+    public RevisionMetadata fromListing(String key, String eTag) {
+        if (Constants.REVISION_SOURCE_ETAG.equals(source)) {
+            return eTag == null ? null : new RevisionMetadata(unquoted(eTag), null, null);
+        }
+        if (keyPattern == null) {
+            return null;
+        }
+        Matcher matcher = keyPattern.matcher(key);
+        if (!matcher.find()) {
+            return null;
+        }
+        return new RevisionMetadata(group(matcher, groups[0]), group(matcher, groups[1]), group(matcher, groups[2]));
+    }
+
+    private static String group(Matcher matcher, int group) {
+        return group < 0 ? null : matcher.group(group);
+    }
+
+    private static String unquoted(String eTag) {
+        return eTag.length() > 1 && eTag.startsWith("\"") && eTag.endsWith("\"") ? eTag.substring(1, eTag.length() - 1) : eTag;
+    }
+}
@@ -0,0 +1,86 @@
+package com.schibsted.gocd.s3poller;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Listing of a parent prefix that adds every key to the result of each package prefix the key starts with, so one
+// listing pass yields the latest object of all packages under the parent.
+public class RoutedListingResult extends ListingResult {
+
+    private final PrefixTrie<Route> routes = new PrefixTrie<Route>();
+    private final Map<String, ListingResult> results = new HashMap<String, ListingResult>();
+    private long listedKeys;
+    private long routedKeys;
+
+    public RoutedListingResult(Collection<String> prefixes) {
+        // A prefix sorts before every longer prefix starting with it, so enclosing routes are in the trie first.
+        List<String> sorted = new ArrayList<String>(prefixes);
+        Collections.sort(sorted);
+        for (String prefix : sorted) {
+            if (!results.containsKey(prefix)) {
+                Route route = new Route(new ListingResult(), routes.longestMatch(prefix));
+                routes.put(prefix, route);
+                results.put(prefix, route.result);
+            }
+        }
+    }
+
+    @Override
+    public void add(String bucketName, String key, String eTag, long lastModified) {
+        route(bucketName, key, eTag, lastModified);
+    }
+
+    // Streamed pages offer only keys newer than the latest so far, which depends on the package of the key.
+    @Override
+    public boolean isNewer(long lastModified) {
+        return true;
+    }
+
+    @Override
+    public void offerLatest(String bucketName, String key, String eTag, long lastModified) {
+        route(bucketName, key, eTag, lastModified);
+    }
+
+    private void route(String bucketName, String key, String eTag, long lastModified) {
+        listedKeys++;
+        Route route = routes.longestMatch(key);
+        if (route != null) {
+            routedKeys++;
+        }
+        for (; route != null; route = route.enclosing) {
+            route.result.add(bucketName, key, eTag, lastModified);
+        }
+    }
+
+    public ListingResult resultOf(String prefix) {
+        return results.get(prefix);
+    }
+
+    public Map<String, ListingResult> getResults() {
+        return results;
+    }
+
+    @Override
+    public long getKeyCount() {
+        return listedKeys;
+    }
+
+    public long getRoutedKeyCount() {
+        return routedKeys;
+    }
+
+    private static class Route {
+
+        private final ListingResult result;
+        private final Route enclosing;
+
+        private Route(ListingResult result, Route enclosing) {
+            this.result = result;
+            this.enclosing = enclosing;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.schibsted.gocd.s3poller;
+
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.regions.Region;
+import com.amazonaws.regions.Regions;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Hands out an S3 client per bucket: one pooled client per region and set of client options, so requests go straight
+// to the bucket's regional endpoint instead of being redirected there.
+public class S3ClientRegistry {
+
+    private final AmazonS3Client defaultClient;
+    private final AWSCredentialsProvider credentialsProvider;
+    private final BucketRegions bucketRegions;
+    private final S3RequestScheduler requests;
+    private final boolean regional;
+    private final ConcurrentMap<String, BucketClient> bucketClients = new ConcurrentHashMap<String, BucketClient>();
+    private final Map<String, AmazonS3Client> regionalClients = new HashMap<String, AmazonS3Client>();
+
+    private final Logger log = Logger.getLoggerFor(this.getClass());
+
+    public S3ClientRegistry(AmazonS3Client defaultClient, AWSCredentialsProvider credentialsProvider) {
+        this(defaultClient, credentialsProvider, S3RequestScheduler.fromSettings());
+    }
+
+    public S3ClientRegistry(AmazonS3Client defaultClient, AWSCredentialsProvider credentialsProvider,
+                            S3RequestScheduler requests) {
+        this(defaultClient, credentialsProvider, requests, true);
+    }
+
+    private S3ClientRegistry(AmazonS3Client defaultClient, AWSCredentialsProvider credentialsProvider,
+                             S3RequestScheduler requests, boolean regional) {
+        this.defaultClient = defaultClient;
+        this.credentialsProvider = credentialsProvider;
+        this.bucketRegions = new BucketRegions(defaultClient);
+        this.requests = requests;
+        this.regional = regional;
+    }
+
+    // Every bucket is served by the given client, e.g. one pointing at an S3 compatible endpoint.
+    public static S3ClientRegistry fixed(AmazonS3Client client) {
+        return fixed(client, S3RequestScheduler.fromSettings());
+    }
+
+    public static S3ClientRegistry fixed(AmazonS3Client client, S3RequestScheduler requests) {
+        return new S3ClientRegistry(client, null, requests, false);
+    }
+
+    public BucketRegions getBucketRegions() {
+        return bucketRegions;
+    }
+
+    public S3RequestScheduler getRequests() {
+        return requests;
+    }
+
+    public AmazonS3Client getDefaultClient() {
+        return defaultClient;
+    }
+
+    // Applies the options of the bucket's repository configuration, cheap when they did not change.
+    public AmazonS3Client configure(String bucketName, ClientOptions options) {
+        BucketClient bucketClient = bucketClients.get(bucketName);
+        if (bucketClient != null && bucketClient.options.equals(options)) {
+            return bucketClient.client;
+        }
+        AmazonS3Client client = resolve(bucketName, options);
+        bucketClients.put(bucketName, new BucketClient(options, client));
+        return client;
+    }
+
+    public ClientOptions optionsOf(String bucketName) {
+        BucketClient bucketClient = bucketClients.get(bucketName);
+        return bucketClient != null ? bucketClient.options : ClientOptions.DEFAULTS;
+    }
+
+    public AmazonS3Client clientFor(String bucketName) {
+        BucketClient bucketClient = bucketClients.get(bucketName);
+        if (bucketClient != null) {
+            return bucketClient.client;
+        }
+        return configure(bucketName, ClientOptions.DEFAULTS);
+    }
+
+    private AmazonS3Client resolve(String bucketName, ClientOptions options) {
+        if (!regional) {
+            return defaultClient;
+        }
+        String region;
+        try {
+            region = bucketRegions.regionOf(bucketName);
+        } catch (Exception ex) {
+            // Without s3:GetBucketLocation the default client still works, following redirects.
+            log.warn("could not resolve the region of bucket " + bucketName + ": " + ex.getMessage());
+            return defaultClient;
+        }
+        return regionalClient(region, options);
+    }
+
+    private synchronized AmazonS3Client regionalClient(String region, ClientOptions options) {
+        String key = region + " " + options;
+        AmazonS3Client client = regionalClients.get(key);
+        if (client == null) {
+            client = createClient(region, options);
+            regionalClients.put(key, client);
+            log.info("created S3 client for " + region + " (" + options + ")");
+        }
+        return client;
+    }
+
+    protected AmazonS3Client createClient(String region, ClientOptions options) {
+        AmazonS3Client client = new AmazonS3Client(credentialsProvider,
+            options.toClientConfiguration().withRetryPolicy(requests.retryPolicy()));
+        try {
+            client.setRegion(Region.getRegion(Regions.fromName(region)));
+        } catch (IllegalArgumentException ex) {
+            // A region newer than the SDK.
+            client.setEndpoint(BucketRegions.endpointOf(region));
+        }
+        return client;
+    }
+
+    synchronized int regionalClientCount() {
+        return regionalClients.size();
+    }
+
+    private static class BucketClient {
+
+        private final ClientOptions options;
+        private final AmazonS3Client client;
+
+        private BucketClient(ClientOptions options, AmazonS3Client client) {
+            this.options = options;
+            this.client = client;
+        }
+    }
+}
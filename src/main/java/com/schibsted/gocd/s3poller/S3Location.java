@@ -0,0 +1,87 @@
+package com.schibsted.gocd.s3poller;
+
+import com.schibsted.gocd.s3poller.message.PackageMaterialProperties;
+
+// A bucket and path, and for a package the options that change which object under it is the latest (see
+// PackageOptions.getIdentity), so packages on the same path with different options are cached and polled apart.
+public class S3Location {
+
+    public static final String URI_SCHEME = "s3://";
+
+    private final String bucketName;
+    private final String prefix;
+    private final String options;
+
+    public S3Location(String bucketName, String prefix) {
+        this(bucketName, prefix, "");
+    }
+
+    public S3Location(String bucketName, String prefix, String options) {
+        this.bucketName = bucketName;
+        this.prefix = prefix;
+        this.options = options == null ? "" : options;
+    }
+
+    public static S3Location from(PackageMaterialProperties packageConfiguration, PackageMaterialProperties repositoryConfiguration) {
+        return new S3Location(
+            repositoryConfiguration.getProperty(Constants.S3_BUCKET).value(),
+            packageConfiguration.getProperty(Constants.S3_PATH).value(),
+            PackageOptions.from(packageConfiguration).getIdentity());
+    }
+
+    public static S3Location fromUri(String uri) {
+        if (uri == null || !uri.startsWith(URI_SCHEME)) {
+            throw new IllegalArgumentException("Not an s3:// location: " + uri);
+        }
+        String path = uri.substring(URI_SCHEME.length());
+        int slash = path.indexOf('/');
+        if (slash < 0) {
+            return new S3Location(path, "");
+        }
+        return new S3Location(path.substring(0, slash), path.substring(slash + 1));
+    }
+
+    public String getBucketName() {
+        return bucketName;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public String getOptions() {
+        return options;
+    }
+
+    // The bucket and path alone, for what does not depend on the package options (listings, event notifications).
+    public S3Location withoutOptions() {
+        return options.isEmpty() ? this : new S3Location(bucketName, prefix);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        S3Location that = (S3Location) o;
+
+        if (bucketName != null ? !bucketName.equals(that.bucketName) : that.bucketName != null) return false;
+        if (prefix != null ? !prefix.equals(that.prefix) : that.prefix != null) return false;
+        if (!options.equals(that.options)) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = bucketName != null ? bucketName.hashCode() : 0;
+        result = 31 * result + (prefix != null ? prefix.hashCode() : 0);
+        result = 31 * result + options.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return URI_SCHEME + bucketName + "/" + prefix + (options.isEmpty() ? "" : " (" + options + ")");
+    }
+}
@@ -0,0 +1,280 @@
+package com.schibsted.gocd.s3poller;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.amazonaws.retry.RetryPolicy;
+import com.amazonaws.retry.RetryUtils;
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Paces the S3 requests of each bucket with a token bucket. Waiting interactive requests (connection checks) go first,
+// polls take turns per flow (listing prefix), so one large package cannot starve the others. A throttling response
+// halves the bucket's rate and pauses it for a jittered, growing backoff; every successful request wins back 1% of the
+// configured rate.
+public class S3RequestScheduler {
+
+    public enum Priority {INTERACTIVE, POLL}
+
+    private static final long BASE_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final double MIN_RATE = 1;
+
+    private final double requestsPerSecond;
+    private final ConcurrentMap<String, BucketQueue> queues = new ConcurrentHashMap<String, BucketQueue>();
+    private final ThreadLocal<String> currentBucket = new ThreadLocal<String>();
+    private final Random random = new Random();
+    private final AtomicLong throttled = new AtomicLong();
+
+    private final Logger log = Logger.getLoggerFor(this.getClass());
+
+    // 0 requests per second leaves the rate unlimited, throttling responses still pause the bucket.
+    public S3RequestScheduler(double requestsPerSecond) {
+        this.requestsPerSecond = requestsPerSecond;
+    }
+
+    public static S3RequestScheduler fromSettings() {
+        return new S3RequestScheduler(PluginSettings.intValue(PluginSettings.REQUESTS_PER_SECOND, 500));
+    }
+
+    // Blocks until the bucket may take another request. Every acquire must be followed by a release.
+    public void acquire(String bucketName, Priority priority, String flow) {
+        try {
+            queueOf(bucketName).acquire(priority, flow);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new AmazonClientException("Interrupted waiting to send a request to bucket " + bucketName, ex);
+        }
+        currentBucket.set(bucketName);
+    }
+
+    public void release(String bucketName, Exception failure) {
+        currentBucket.remove();
+        if (failure == null) {
+            queueOf(bucketName).succeeded();
+        } else if (isThrottling(failure)) {
+            throttled(bucketName);
+        }
+    }
+
+    // Lets the retries of the SDK, which happen within a single acquire, report throttling as well.
+    public RetryPolicy retryPolicy() {
+        return new RetryPolicy(new RetryPolicy.RetryCondition() {
+            @Override
+            public boolean shouldRetry(AmazonWebServiceRequest request, AmazonClientException exception, int retriesAttempted) {
+                String bucketName = currentBucket.get();
+                if (bucketName != null && isThrottling(exception)) {
+                    throttled(bucketName);
+                }
+                return PredefinedRetryPolicies.DEFAULT_RETRY_CONDITION.shouldRetry(request, exception, retriesAttempted);
+            }
+        }, PredefinedRetryPolicies.DEFAULT_BACKOFF_STRATEGY, PredefinedRetryPolicies.DEFAULT_MAX_ERROR_RETRY, true);
+    }
+
+    public long getThrottled() {
+        return throttled.get();
+    }
+
+    double rateOf(String bucketName) {
+        return queueOf(bucketName).currentRate();
+    }
+
+    int queued(String bucketName) {
+        return queueOf(bucketName).queued();
+    }
+
+    static boolean isThrottling(Throwable failure) {
+        if (!(failure instanceof AmazonServiceException)) {
+            return false;
+        }
+        AmazonServiceException ex = (AmazonServiceException) failure;
+        return ex.getStatusCode() == 503 || ex.getStatusCode() == 429 || "SlowDown".equals(ex.getErrorCode())
+            || RetryUtils.isThrottlingException(ex);
+    }
+
+    private void throttled(String bucketName) {
+        throttled.incrementAndGet();
+        long backoffNanos = queueOf(bucketName).throttled();
+        log.warn("S3 is throttling bucket " + bucketName + ", pausing it for " +
+            TimeUnit.NANOSECONDS.toMillis(backoffNanos) + "ms");
+    }
+
+    private BucketQueue queueOf(String bucketName) {
+        BucketQueue queue = queues.get(bucketName);
+        if (queue == null) {
+            BucketQueue created = new BucketQueue();
+            queue = queues.putIfAbsent(bucketName, created);
+            if (queue == null) {
+                queue = created;
+            }
+        }
+        return queue;
+    }
+
+    long jitteredBackoffNanos(int consecutiveThrottles) {
+        long backoff = Math.min(MAX_BACKOFF_NANOS, BASE_BACKOFF_NANOS << Math.min(consecutiveThrottles, 20));
+        double factor;
+        synchronized (random) {
+            factor = 0.5 + 0.5 * random.nextDouble();
+        }
+        return (long) (backoff * factor);
+    }
+
+    protected long nanoTime() {
+        return System.nanoTime();
+    }
+
+    private class BucketQueue {
+
+        private final LinkedList<Object> interactive = new LinkedList<Object>();
+        private final LinkedHashMap<String, LinkedList<Object>> flows = new LinkedHashMap<String, LinkedList<Object>>();
+        private double rate = requestsPerSecond;
+        private double tokens = Math.max(requestsPerSecond, 1);
+        private long refilledAt = nanoTime();
+        private long pausedUntil = refilledAt;
+        private int consecutiveThrottles;
+
+        synchronized void acquire(Priority priority, String flow) throws InterruptedException {
+            Object waiter = new Object();
+            enqueue(priority, flow, waiter);
+            try {
+                while (true) {
+                    long now = nanoTime();
+                    refill(now);
+                    if (next() == waiter) {
+                        long waitNanos = Math.max(pausedUntil - now, nanosUntilToken());
+                        if (waitNanos <= 0) {
+                            dequeueNext();
+                            if (isLimited()) {
+                                tokens -= 1;
+                            }
+                            notifyAll();
+                            return;
+                        }
+                        TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+                    } else {
+                        wait();
+                    }
+                }
+            } catch (InterruptedException ex) {
+                remove(waiter);
+                notifyAll();
+                throw ex;
+            }
+        }
+
+        synchronized void succeeded() {
+            consecutiveThrottles = 0;
+            if (isLimited() && rate < requestsPerSecond) {
+                rate = Math.min(requestsPerSecond, rate + requestsPerSecond / 100);
+            }
+        }
+
+        synchronized long throttled() {
+            long backoffNanos = jitteredBackoffNanos(consecutiveThrottles++);
+            pausedUntil = Math.max(pausedUntil, nanoTime() + backoffNanos);
+            if (isLimited()) {
+                rate = Math.max(MIN_RATE, rate / 2);
+                tokens = Math.min(tokens, 0);
+            }
+            notifyAll();
+            return backoffNanos;
+        }
+
+        synchronized double currentRate() {
+            return rate;
+        }
+
+        synchronized int queued() {
+            int queued = interactive.size();
+            for (LinkedList<Object> waiters : flows.values()) {
+                queued += waiters.size();
+            }
+            return queued;
+        }
+
+        private boolean isLimited() {
+            return requestsPerSecond > 0;
+        }
+
+        // No tokens accrue while paused, the pause must not end in a burst.
+        private void refill(long now) {
+            if (isLimited()) {
+                long from = Math.max(refilledAt, Math.min(pausedUntil, now));
+                tokens = Math.min(requestsPerSecond, tokens + (now - from) * rate / 1e9);
+            }
+            refilledAt = now;
+        }
+
+        private long nanosUntilToken() {
+            if (!isLimited() || tokens >= 1) {
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) * 1e9 / rate);
+        }
+
+        private void enqueue(Priority priority, String flow, Object waiter) {
+            if (priority == Priority.INTERACTIVE) {
+                interactive.add(waiter);
+                return;
+            }
+            LinkedList<Object> waiters = flows.get(flow);
+            if (waiters == null) {
+                waiters = new LinkedList<Object>();
+                flows.put(flow, waiters);
+            }
+            waiters.add(waiter);
+        }
+
+        private Object next() {
+            if (!interactive.isEmpty()) {
+                return interactive.getFirst();
+            }
+            if (flows.isEmpty()) {
+                return null;
+            }
+            return flows.values().iterator().next().getFirst();
+        }
+
+        // The flow that was served moves to the back of the line.
+        private void dequeueNext() {
+            if (!interactive.isEmpty()) {
+                interactive.removeFirst();
+                return;
+            }
+            Iterator<Map.Entry<String, LinkedList<Object>>> first = flows.entrySet().iterator();
+            Map.Entry<String, LinkedList<Object>> flow = first.next();
+            first.remove();
+            flow.getValue().removeFirst();
+            if (!flow.getValue().isEmpty()) {
+                flows.put(flow.getKey(), flow.getValue());
+            }
+        }
+
+        private void remove(Object waiter) {
+            if (interactive.remove(waiter)) {
+                return;
+            }
+            Iterator<LinkedList<Object>> waiters = flows.values().iterator();
+            while (waiters.hasNext()) {
+                LinkedList<Object> flow = waiters.next();
+                if (flow.remove(waiter)) {
+                    if (flow.isEmpty()) {
+                        waiters.remove();
+                    }
+                    return;
+                }
+            }
+        }
+    }
+}
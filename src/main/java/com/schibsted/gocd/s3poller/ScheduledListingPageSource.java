@@ -0,0 +1,44 @@
+package com.schibsted.gocd.s3poller;
+
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+
+// Sends every listing page of the wrapped source through the request scheduler, as a poll of its prefix.
+public class ScheduledListingPageSource implements ListingPageSource {
+
+    private final ListingPageSource source;
+    private final S3RequestScheduler requests;
+
+    public ScheduledListingPageSource(ListingPageSource source, S3RequestScheduler requests) {
+        this.source = source;
+        this.requests = requests;
+    }
+
+    @Override
+    public ListingPage list(ListObjectsRequest request, ListingResult result) {
+        requests.acquire(request.getBucketName(), S3RequestScheduler.Priority.POLL, request.getPrefix());
+        Exception failure = null;
+        try {
+            return source.list(request, result);
+        } catch (RuntimeException ex) {
+            failure = ex;
+            throw ex;
+        } finally {
+            requests.release(request.getBucketName(), failure);
+        }
+    }
+
+    @Override
+    public ListingPage next(ListingPage previous, ListingResult result) {
+        ListObjectsRequest request = previous.getRequest();
+        requests.acquire(request.getBucketName(), S3RequestScheduler.Priority.POLL, request.getPrefix());
+        Exception failure = null;
+        try {
+            return source.next(previous, result);
+        } catch (RuntimeException ex) {
+            failure = ex;
+            throw ex;
+        } finally {
+            requests.release(request.getBucketName(), failure);
+        }
+    }
+}
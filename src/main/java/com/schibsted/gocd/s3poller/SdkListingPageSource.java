@@ -0,0 +1,40 @@
+package com.schibsted.gocd.s3poller;
+
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+
+public class SdkListingPageSource implements ListingPageSource {
+
+    private final S3ClientRegistry clients;
+
+    public SdkListingPageSource(AmazonS3Client client) {
+        this(S3ClientRegistry.fixed(client));
+    }
+
+    public SdkListingPageSource(S3ClientRegistry clients) {
+        this.clients = clients;
+    }
+
+    @Override
+    public ListingPage list(ListObjectsRequest request, ListingResult result) {
+        AmazonS3Client client = clients.clientFor(request.getBucketName());
+        ObjectListing listing;
+        if (request.getMarker() == null && request.getDelimiter() == null && request.getMaxKeys() == null) {
+            listing = client.listObjects(request.getBucketName(), request.getPrefix());
+        } else {
+            listing = client.listObjects(request);
+        }
+        return page(request, listing, result);
+    }
+
+    @Override
+    public ListingPage next(ListingPage previous, ListingResult result) {
+        return page(previous.getRequest(), clients.clientFor(previous.getRequest().getBucketName()).listNextBatchOfObjects(previous.getListing()), result);
+    }
+
+    private static ListingPage page(ListObjectsRequest request, ObjectListing listing, ListingResult result) {
+        result.add(listing.getObjectSummaries());
+        return new ListingPage(request, listing.isTruncated(), listing.getNextMarker(), listing.getCommonPrefixes(), listing);
+    }
+}
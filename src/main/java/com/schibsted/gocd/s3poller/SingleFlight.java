@@ -0,0 +1,34 @@
+package com.schibsted.gocd.s3poller;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Concurrent calls for the same key wait for the call already in flight and share its result.
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, FutureTask<V>> inFlight = new ConcurrentHashMap<K, FutureTask<V>>();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public V execute(K key, Callable<V> callable) {
+        FutureTask<V> task = new FutureTask<V>(callable);
+        FutureTask<V> running = inFlight.putIfAbsent(key, task);
+        if (running == null) {
+            try {
+                task.run();
+            } finally {
+                inFlight.remove(key, task);
+            }
+            running = task;
+        } else {
+            coalesced.incrementAndGet();
+        }
+        return Futures.get(running);
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+}
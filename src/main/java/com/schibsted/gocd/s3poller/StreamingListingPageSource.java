@@ -0,0 +1,168 @@
+package com.schibsted.gocd.s3poller;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.http.HttpMethodName;
+import com.amazonaws.services.s3.internal.AWSS3V4Signer;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.util.SdkHttpUtils;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Lists with signed GET Bucket requests of its own and parses the response while it streams in, instead of having the
+// SDK build an S3ObjectSummary (with Owner, storage class and Date) for every key of every page. Responses are read to
+// the end and closed rather than disconnected, so HttpURLConnection keeps the connection alive for the next page.
+public class StreamingListingPageSource implements ListingPageSource {
+
+    private static final Pattern ERROR_CODE = Pattern.compile("<Code>([^<]*)</Code>");
+
+    private final AWSCredentialsProvider credentials;
+    private final S3ClientRegistry clients;
+    private final String endpointOverride;
+
+    private final ThreadLocal<SAXParser> parsers = new ThreadLocal<SAXParser>() {
+        @Override
+        protected SAXParser initialValue() {
+            try {
+                SAXParserFactory factory = SAXParserFactory.newInstance();
+                factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+                factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+                return factory.newSAXParser();
+            } catch (ParserConfigurationException ex) {
+                throw new IllegalStateException(ex);
+            } catch (SAXException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    };
+    private final ThreadLocal<ListBucketResultHandler> handlers = new ThreadLocal<ListBucketResultHandler>() {
+        @Override
+        protected ListBucketResultHandler initialValue() {
+            return new ListBucketResultHandler();
+        }
+    };
+
+    // endpointOverride (e.g. http://localhost:9000) sends every bucket to one S3 compatible endpoint in us-east-1.
+    // The timeouts are those of the client options the bucket's repository configured on clients.
+    public StreamingListingPageSource(AWSCredentialsProvider credentials, S3ClientRegistry clients, String endpointOverride) {
+        this.credentials = credentials;
+        this.clients = clients;
+        this.endpointOverride = endpointOverride;
+    }
+
+    @Override
+    public ListingPage list(ListObjectsRequest request, ListingResult result) {
+        return fetch(request, result);
+    }
+
+    @Override
+    public ListingPage next(ListingPage previous, ListingResult result) {
+        return fetch(previous.nextRequest(), result);
+    }
+
+    private ListingPage fetch(ListObjectsRequest request, ListingResult result) {
+        try {
+            HttpURLConnection connection = open(request);
+            int status = connection.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw error(request, status, connection.getErrorStream());
+            }
+            ListBucketResultHandler handler = handlers.get();
+            handler.reset(request.getBucketName(), result);
+            InputStream in = connection.getInputStream();
+            try {
+                SAXParser parser = parsers.get();
+                parser.reset();
+                parser.parse(in, handler);
+            } finally {
+                in.close();
+            }
+            return new ListingPage(request, handler.isTruncated(), handler.getNextMarker(), handler.getCommonPrefixes(), null);
+        } catch (IOException ex) {
+            throw new AmazonClientException("Unable to list s3://" + request.getBucketName() + "/" + request.getPrefix(), ex);
+        } catch (SAXException ex) {
+            throw new AmazonClientException("Unable to parse listing of s3://" + request.getBucketName() + "/" + request.getPrefix(), ex);
+        }
+    }
+
+    private HttpURLConnection open(ListObjectsRequest request) throws IOException {
+        String region = endpointOverride == null ? clients.getBucketRegions().regionOf(request.getBucketName()) : BucketRegions.US_STANDARD;
+        String endpoint = endpointOverride == null ? "https://" + BucketRegions.endpointOf(region) : endpointOverride;
+
+        DefaultRequest<Void> signable = new DefaultRequest<Void>("Amazon S3");
+        signable.setHttpMethod(HttpMethodName.GET);
+        signable.setEndpoint(URI.create(endpoint));
+        signable.setResourcePath("/" + request.getBucketName() + "/");
+        addParameter(signable, "delimiter", request.getDelimiter());
+        addParameter(signable, "marker", request.getMarker());
+        addParameter(signable, "max-keys", request.getMaxKeys() == null ? null : request.getMaxKeys().toString());
+        addParameter(signable, "prefix", request.getPrefix());
+
+        AWSS3V4Signer signer = new AWSS3V4Signer();
+        signer.setServiceName("s3");
+        signer.setRegionName(region);
+        signer.sign(signable, credentials.getCredentials());
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(endpoint + "/" + request.getBucketName() + "/" + query(signable)).openConnection();
+        ClientOptions options = clients.optionsOf(request.getBucketName());
+        connection.setConnectTimeout(options.getConnectionTimeoutMillis());
+        connection.setReadTimeout(options.getSocketTimeoutMillis());
+        for (Map.Entry<String, String> header : signable.getHeaders().entrySet()) {
+            if (!"Host".equalsIgnoreCase(header.getKey())) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+        }
+        return connection;
+    }
+
+    private static void addParameter(DefaultRequest<Void> signable, String name, String value) {
+        if (value != null) {
+            signable.addParameter(name, value);
+        }
+    }
+
+    private static String query(DefaultRequest<Void> signable) {
+        StringBuilder query = new StringBuilder();
+        for (Map.Entry<String, List<String>> parameter : signable.getParameters().entrySet()) {
+            for (String value : parameter.getValue()) {
+                query.append(query.length() == 0 ? '?' : '&')
+                    .append(SdkHttpUtils.urlEncode(parameter.getKey(), false))
+                    .append('=')
+                    .append(SdkHttpUtils.urlEncode(value, false));
+            }
+        }
+        return query.toString();
+    }
+
+    private static AmazonS3Exception error(ListObjectsRequest request, int status, InputStream errorStream) {
+        String body = "";
+        if (errorStream != null) {
+            Scanner scanner = new Scanner(errorStream, "UTF-8").useDelimiter("\\A");
+            body = scanner.hasNext() ? scanner.next() : "";
+            scanner.close();
+        }
+        AmazonS3Exception exception = new AmazonS3Exception("Listing s3://" + request.getBucketName() + "/" + request.getPrefix() +
+            " failed with status " + status);
+        exception.setStatusCode(status);
+        Matcher code = ERROR_CODE.matcher(body);
+        if (code.find()) {
+            exception.setErrorCode(code.group(1));
+        }
+        return exception;
+    }
+}
@@ -0,0 +1,120 @@
+package com.schibsted.gocd.s3poller.events;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.schibsted.gocd.s3poller.ListingResult;
+import com.schibsted.gocd.s3poller.PrefixTrie;
+import com.schibsted.gocd.s3poller.S3Location;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Latest object per registered bucket and path, kept up to date from S3 event notifications. The paths of each bucket
+// are kept in a prefix trie, so an event walks its key once instead of being matched against every path. Paths are
+// registered rarely, the tries are rebuilt then and replaced as a whole.
+public class S3EventIndex {
+
+    private final ConcurrentMap<S3Location, Entry> entries = new ConcurrentHashMap<S3Location, Entry>();
+    private volatile Map<String, PrefixTrie<Entry>> paths = Collections.emptyMap();
+
+    public synchronized boolean register(S3Location location) {
+        if (entries.putIfAbsent(location, new Entry()) != null) {
+            return false;
+        }
+        Map<String, PrefixTrie<Entry>> rebuilt = new HashMap<String, PrefixTrie<Entry>>();
+        for (Map.Entry<S3Location, Entry> entry : entries.entrySet()) {
+            PrefixTrie<Entry> bucketPaths = rebuilt.get(entry.getKey().getBucketName());
+            if (bucketPaths == null) {
+                bucketPaths = new PrefixTrie<Entry>();
+                rebuilt.put(entry.getKey().getBucketName(), bucketPaths);
+            }
+            bucketPaths.put(entry.getKey().getPrefix(), entry.getValue());
+        }
+        paths = rebuilt;
+        return true;
+    }
+
+    public List<S3Location> locations() {
+        return new ArrayList<S3Location>(entries.keySet());
+    }
+
+    public S3ObjectSummary latest(S3Location location) {
+        Entry entry = entries.get(location);
+        return entry == null ? null : entry.latest();
+    }
+
+    public String lastKey(S3Location location) {
+        Entry entry = entries.get(location);
+        return entry == null ? null : entry.lastKey();
+    }
+
+    // A full listing replaces whatever the events said, which also covers missed and deleted objects. Only events
+    // for objects modified after the listing started are kept, the listing may have passed their keys already.
+    public void reconcile(S3Location location, ListingResult result, long listingStarted) {
+        Entry entry = entries.get(location);
+        if (entry != null) {
+            entry.reset(result.getLatest(), result.getLastKey(), listingStarted);
+        }
+    }
+
+    public void objectCreated(S3ObjectSummary object) {
+        for (Entry entry : matching(object)) {
+            entry.update(object);
+        }
+    }
+
+    public void objectRemoved(S3ObjectSummary object) {
+        for (Entry entry : matching(object)) {
+            entry.invalidateIfLatest(object.getKey());
+        }
+    }
+
+    // Nested paths all match an object under the innermost one.
+    private List<Entry> matching(S3ObjectSummary object) {
+        PrefixTrie<Entry> bucketPaths = paths.get(object.getBucketName());
+        return bucketPaths == null ? Collections.<Entry>emptyList() : bucketPaths.matches(object.getKey());
+    }
+
+    private static class Entry {
+        private S3ObjectSummary latest;
+        private String lastKey;
+        private boolean reconciled;
+
+        synchronized S3ObjectSummary latest() {
+            return reconciled ? latest : null;
+        }
+
+        synchronized String lastKey() {
+            return lastKey;
+        }
+
+        synchronized void reset(S3ObjectSummary listed, String listedLastKey, long listingStarted) {
+            S3ObjectSummary fromEvents = latest;
+            latest = listed;
+            lastKey = listedLastKey;
+            if (fromEvents != null && fromEvents.getLastModified().getTime() >= listingStarted) {
+                update(fromEvents);
+            }
+            reconciled = latest != null;
+        }
+
+        synchronized void update(S3ObjectSummary object) {
+            if (latest == null || object.getLastModified().after(latest.getLastModified())) {
+                latest = object;
+            }
+            if (lastKey == null || object.getKey().compareTo(lastKey) > 0) {
+                lastKey = object.getKey();
+            }
+        }
+
+        synchronized void invalidateIfLatest(String key) {
+            if (latest != null && latest.getKey().equals(key)) {
+                reconciled = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.schibsted.gocd.s3poller.events;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+// Parses S3 event notifications, either delivered to SQS directly or wrapped in an SNS envelope.
+public class S3EventNotification {
+
+    public static final String OBJECT_CREATED = "ObjectCreated";
+    public static final String OBJECT_REMOVED = "ObjectRemoved";
+
+    private final String eventName;
+    private final S3ObjectSummary object;
+
+    public S3EventNotification(String eventName, S3ObjectSummary object) {
+        this.eventName = eventName;
+        this.object = object;
+    }
+
+    public static List<S3EventNotification> parse(String body) {
+        List<S3EventNotification> notifications = new ArrayList<S3EventNotification>();
+        JsonElement root = new JsonParser().parse(body);
+        if (!root.isJsonObject()) {
+            return notifications;
+        }
+        JsonObject message = root.getAsJsonObject();
+        if (message.has("Message") && message.get("Message").isJsonPrimitive()) {
+            return parse(message.get("Message").getAsString());
+        }
+        if (!message.has("Records") || !message.get("Records").isJsonArray()) {
+            return notifications;
+        }
+        JsonArray records = message.getAsJsonArray("Records");
+        for (JsonElement record : records) {
+            S3EventNotification notification = parseRecord(record.getAsJsonObject());
+            if (notification != null) {
+                notifications.add(notification);
+            }
+        }
+        return notifications;
+    }
+
+    private static S3EventNotification parseRecord(JsonObject record) {
+        if (!record.has("s3") || !record.has("eventName")) {
+            return null;
+        }
+        JsonObject s3 = record.getAsJsonObject("s3");
+        JsonObject object = s3.getAsJsonObject("object");
+        S3ObjectSummary summary = new S3ObjectSummary();
+        summary.setBucketName(s3.getAsJsonObject("bucket").get("name").getAsString());
+        summary.setKey(decodeKey(object.get("key").getAsString()));
+        if (object.has("eTag")) {
+            summary.setETag(object.get("eTag").getAsString());
+        }
+        if (object.has("size")) {
+            summary.setSize(object.get("size").getAsLong());
+        }
+        summary.setLastModified(parseEventTime(record.get("eventTime").getAsString()));
+        return new S3EventNotification(record.get("eventName").getAsString(), summary);
+    }
+
+    private static String decodeKey(String key) {
+        try {
+            return URLDecoder.decode(key, "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static Date parseEventTime(String eventTime) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        try {
+            return format.parse(eventTime);
+        } catch (ParseException ex) {
+            throw new IllegalArgumentException("Invalid eventTime " + eventTime, ex);
+        }
+    }
+
+    public boolean isObjectCreated() {
+        return eventName.startsWith(OBJECT_CREATED);
+    }
+
+    public boolean isObjectRemoved() {
+        return eventName.startsWith(OBJECT_REMOVED);
+    }
+
+    public String getEventName() {
+        return eventName;
+    }
+
+    public S3ObjectSummary getObject() {
+        return object;
+    }
+}
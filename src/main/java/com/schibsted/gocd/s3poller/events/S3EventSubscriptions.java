@@ -0,0 +1,97 @@
+package com.schibsted.gocd.s3poller.events;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.AmazonSQSClient;
+import com.schibsted.gocd.s3poller.DaemonThreadFactory;
+import com.schibsted.gocd.s3poller.ListingEngine;
+import com.schibsted.gocd.s3poller.ListingResult;
+import com.schibsted.gocd.s3poller.S3Location;
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Event mode: one consumer thread per SQS queue, plus a periodic full listing of every indexed path.
+public class S3EventSubscriptions {
+
+    private final S3EventIndex index = new S3EventIndex();
+    private final ConcurrentMap<String, SqsEventConsumer> consumers = new ConcurrentHashMap<String, SqsEventConsumer>();
+    private final ListingEngine listingEngine;
+    private final long reconcileSeconds;
+    private ScheduledExecutorService reconciler;
+
+    private final Logger log = Logger.getLoggerFor(this.getClass());
+
+    public S3EventSubscriptions(ListingEngine listingEngine, long reconcileSeconds) {
+        this.listingEngine = listingEngine;
+        this.reconcileSeconds = reconcileSeconds;
+    }
+
+    // Null until the path has been listed once, or when the latest object was removed since.
+    public S3ObjectSummary latest(S3Location location, String queueUrl) {
+        subscribe(queueUrl);
+        index.register(location);
+        return index.latest(location);
+    }
+
+    public String lastKey(S3Location location) {
+        return index.lastKey(location);
+    }
+
+    public void reconcile(S3Location location, ListingResult result, long listingStarted) {
+        index.reconcile(location, result, listingStarted);
+    }
+
+    S3EventIndex getIndex() {
+        return index;
+    }
+
+    private void subscribe(String queueUrl) {
+        if (consumers.containsKey(queueUrl)) {
+            return;
+        }
+        SqsEventConsumer consumer = new SqsEventConsumer(createSqsClient(queueUrl), queueUrl, index);
+        if (consumers.putIfAbsent(queueUrl, consumer) == null) {
+            new DaemonThreadFactory("s3poller-events").newThread(consumer).start();
+            startReconciliation();
+            log.info("consuming S3 events from " + queueUrl);
+        }
+    }
+
+    // The endpoint is taken from the queue URL itself, which also makes a local SQS compatible stand-in work.
+    protected AmazonSQS createSqsClient(String queueUrl) {
+        AmazonSQSClient sqs = new AmazonSQSClient();
+        URI uri = URI.create(queueUrl);
+        sqs.setEndpoint(uri.getScheme() + "://" + uri.getAuthority());
+        return sqs;
+    }
+
+    private synchronized void startReconciliation() {
+        if (reconciler != null) {
+            return;
+        }
+        reconciler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("s3poller-reconcile"));
+        reconciler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                reconcileAll();
+            }
+        }, reconcileSeconds, reconcileSeconds, TimeUnit.SECONDS);
+    }
+
+    void reconcileAll() {
+        for (S3Location location : index.locations()) {
+            long started = System.currentTimeMillis();
+            try {
+                index.reconcile(location, listingEngine.list(location.getBucketName(), location.getPrefix()), started);
+            } catch (Exception ex) {
+                log.warn("error reconciling " + location, ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.schibsted.gocd.s3poller.events;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.DeleteMessageRequest;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.util.List;
+
+// Long-polls an SQS queue subscribed to S3 event notifications and feeds the events into the index. A message that
+// cannot be read is left on the queue: it is received again after its visibility timeout until the queue's redrive
+// policy moves it to a dead-letter queue.
+public class SqsEventConsumer implements Runnable {
+
+    private static final int WAIT_TIME_SECONDS = 20;
+    private static final int MAX_MESSAGES = 10;
+    private static final long ERROR_BACKOFF_MILLIS = 5000;
+
+    private final AmazonSQS sqs;
+    private final String queueUrl;
+    private final S3EventIndex index;
+    private volatile boolean running = true;
+
+    private final Logger log = Logger.getLoggerFor(this.getClass());
+
+    public SqsEventConsumer(AmazonSQS sqs, String queueUrl, S3EventIndex index) {
+        this.sqs = sqs;
+        this.queueUrl = queueUrl;
+        this.index = index;
+    }
+
+    @Override
+    public void run() {
+        while (running && !Thread.currentThread().isInterrupted()) {
+            try {
+                poll(WAIT_TIME_SECONDS);
+            } catch (Exception ex) {
+                log.warn("error receiving S3 events from " + queueUrl, ex);
+                sleep(ERROR_BACKOFF_MILLIS);
+            }
+        }
+    }
+
+    public int poll(int waitTimeSeconds) {
+        List<Message> messages = sqs.receiveMessage(new ReceiveMessageRequest(queueUrl)
+            .withMaxNumberOfMessages(MAX_MESSAGES)
+            .withWaitTimeSeconds(waitTimeSeconds)).getMessages();
+        for (Message message : messages) {
+            try {
+                for (S3EventNotification notification : S3EventNotification.parse(message.getBody())) {
+                    if (notification.isObjectCreated()) {
+                        index.objectCreated(notification.getObject());
+                    } else if (notification.isObjectRemoved()) {
+                        index.objectRemoved(notification.getObject());
+                    }
+                }
+            } catch (RuntimeException ex) {
+                log.warn("leaving unreadable S3 event " + message.getMessageId() + " on " + queueUrl, ex);
+                continue;
+            }
+            sqs.deleteMessage(new DeleteMessageRequest(queueUrl, message.getReceiptHandle()));
+        }
+        return messages.size();
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.schibsted.gocd.s3poller.inventory;
+
+import com.schibsted.gocd.s3poller.KeyFilter;
+import com.schibsted.gocd.s3poller.KeyTrie;
+import com.schibsted.gocd.s3poller.ListingEngine;
+import com.schibsted.gocd.s3poller.ListingResult;
+import com.schibsted.gocd.s3poller.LruCache;
+import com.schibsted.gocd.s3poller.S3Location;
+import com.schibsted.gocd.s3poller.SingleFlight;
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Baseline from the latest inventory snapshot, then a listing of only the keys after the newest inventoried key.
+// Up to maxIndexedKeys, all keys of the snapshot are read once into a trie shared by the paths of the bucket, and the
+// keys listed after it are added to the trie, so each poll only lists what is new since the previous one.
+public class InventoryLister {
+
+    private final InventoryScanner scanner;
+    private final ListingEngine listingEngine;
+    private final int maxIndexedKeys;
+    private final LruCache<S3Location, String> manifests;
+    private final LruCache<String, ListingResult> baselines;
+    private final ConcurrentMap<S3Location, Snapshot> snapshots = new ConcurrentHashMap<S3Location, Snapshot>();
+    private final SingleFlight<String, KeyTrie> snapshotReads = new SingleFlight<String, KeyTrie>();
+
+    private final Logger log = Logger.getLoggerFor(this.getClass());
+
+    public InventoryLister(InventoryScanner scanner, ListingEngine listingEngine, long refreshMillis, int maxBaselines) {
+        this(scanner, listingEngine, refreshMillis, maxBaselines, 0);
+    }
+
+    public InventoryLister(InventoryScanner scanner, ListingEngine listingEngine, long refreshMillis, int maxBaselines,
+                           int maxIndexedKeys) {
+        this.scanner = scanner;
+        this.listingEngine = listingEngine;
+        this.maxIndexedKeys = maxIndexedKeys;
+        this.manifests = new LruCache<S3Location, String>(maxBaselines, refreshMillis);
+        this.baselines = new LruCache<String, ListingResult>(maxBaselines, 0);
+    }
+
+    public ListingResult list(S3Location location, String inventoryLocation) {
+        return list(location, inventoryLocation, KeyFilter.ALL);
+    }
+
+    // The trie only knows the newest key under a path, a filtered path reads its own baseline.
+    public ListingResult list(S3Location location, String inventoryLocation, KeyFilter filter) {
+        S3Location inventory = S3Location.fromUri(inventoryLocation);
+        String manifestKey = manifestKey(inventory);
+        KeyTrie keys = maxIndexedKeys > 0 && !filter.isFiltering() ? snapshot(location, inventory, manifestKey) : null;
+        if (keys != null) {
+            return listIndexed(location, keys);
+        }
+        ListingResult baseline = baseline(location, inventory, manifestKey, filter);
+        ListingResult result = new ListingResult();
+        result.merge(baseline);
+        if (baseline.getLastKey() == null) {
+            result.merge(listingEngine.list(location.getBucketName(), location.getPrefix(), filter));
+        } else {
+            result.merge(listingEngine.listAfter(location.getBucketName(), location.getPrefix(), baseline.getLastKey(),
+                new ListingResult(filter.selector(location.getPrefix()))));
+        }
+        return result;
+    }
+
+    // A path without inventoried keys is listed from its start, and indexed from then on.
+    private ListingResult listIndexed(S3Location location, KeyTrie keys) {
+        ListingResult listed = listingEngine.listAfter(location.getBucketName(), location.getPrefix(),
+            keys.greatestKeyUnder(location.getPrefix()), keys.indexing());
+        ListingResult result = keys.latestUnder(location.getBucketName(), location.getPrefix());
+        result.merge(listed);
+        return result;
+    }
+
+    private String manifestKey(S3Location inventory) {
+        String manifestKey = manifests.get(inventory);
+        if (manifestKey == null) {
+            manifestKey = scanner.resolveManifestKey(inventory.getBucketName(), inventory.getPrefix());
+            manifests.put(inventory, manifestKey);
+        }
+        return manifestKey;
+    }
+
+    // Null when the snapshot has more keys than the trie may hold. A new manifest replaces the previous snapshot.
+    private KeyTrie snapshot(final S3Location location, final S3Location inventory, final String manifestKey) {
+        Snapshot snapshot = snapshots.get(inventory);
+        KeyTrie keys;
+        if (snapshot != null && snapshot.manifestKey.equals(manifestKey)) {
+            keys = snapshot.keys;
+        } else {
+            keys = snapshotReads.execute(inventory.getBucketName() + "/" + manifestKey, new Callable<KeyTrie>() {
+                @Override
+                public KeyTrie call() {
+                    KeyTrie read = new KeyTrie(maxIndexedKeys);
+                    scanner.scan(inventory.getBucketName(), manifest(location, inventory, manifestKey), "", read.indexing());
+                    if (read.isFull()) {
+                        read.clear();
+                        log.info("inventory " + manifestKey + " has more than " + maxIndexedKeys +
+                            " keys, reading it per path instead");
+                    } else {
+                        log.info("read " + read.size() + " inventoried keys of " + location.getBucketName() + " from " + manifestKey);
+                    }
+                    snapshots.put(inventory, new Snapshot(manifestKey, read));
+                    return read;
+                }
+            });
+        }
+        return keys.isFull() ? null : keys;
+    }
+
+    private ListingResult baseline(S3Location location, S3Location inventory, String manifestKey, KeyFilter filter) {
+        String baselineKey = inventory.getBucketName() + "/" + manifestKey + "#" + location.getPrefix() + "#" + filter;
+        ListingResult baseline = baselines.get(baselineKey);
+        if (baseline == null) {
+            InventoryManifest manifest = manifest(location, inventory, manifestKey);
+            baseline = scanner.scan(inventory.getBucketName(), manifest, location.getPrefix(),
+                new ListingResult(filter.selector(location.getPrefix())));
+            baselines.put(baselineKey, baseline);
+            log.info("read " + baseline.getKeyCount() + " inventoried keys under " + location + " from " + manifestKey);
+        }
+        return baseline;
+    }
+
+    private InventoryManifest manifest(S3Location location, S3Location inventory, String manifestKey) {
+        InventoryManifest manifest = scanner.readManifest(inventory.getBucketName(), manifestKey);
+        if (!location.getBucketName().equals(manifest.getSourceBucket())) {
+            throw new IllegalStateException("Inventory " + manifestKey + " is for bucket " + manifest.getSourceBucket() +
+                ", not " + location.getBucketName());
+        }
+        return manifest;
+    }
+
+    private static class Snapshot {
+
+        private final String manifestKey;
+        private final KeyTrie keys;
+
+        private Snapshot(String manifestKey, KeyTrie keys) {
+            this.manifestKey = manifestKey;
+            this.keys = keys;
+        }
+    }
+}
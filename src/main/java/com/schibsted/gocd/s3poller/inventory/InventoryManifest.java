@@ -0,0 +1,78 @@
+package com.schibsted.gocd.s3poller.inventory;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class InventoryManifest {
+
+    @SerializedName("sourceBucket")
+    private String sourceBucket;
+
+    @SerializedName("destinationBucket")
+    private String destinationBucket;
+
+    @SerializedName("fileFormat")
+    private String fileFormat;
+
+    @SerializedName("fileSchema")
+    private String fileSchema;
+
+    @SerializedName("creationTimestamp")
+    private String creationTimestamp;
+
+    @SerializedName("files")
+    private List<DataFile> files = new ArrayList<DataFile>();
+
+    public String getSourceBucket() {
+        return sourceBucket;
+    }
+
+    public String getDestinationBucket() {
+        return destinationBucket;
+    }
+
+    public String getFileFormat() {
+        return fileFormat;
+    }
+
+    public String getFileSchema() {
+        return fileSchema;
+    }
+
+    public String getCreationTimestamp() {
+        return creationTimestamp;
+    }
+
+    public List<DataFile> getFiles() {
+        return files;
+    }
+
+    public int columnOf(String field) {
+        String[] columns = fileSchema.split(",");
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].trim().equals(field)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public static class DataFile {
+
+        @SerializedName("key")
+        private String key;
+
+        public DataFile() {
+        }
+
+        public DataFile(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.schibsted.gocd.s3poller.inventory;
+
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.S3Object;
+import com.schibsted.gocd.s3poller.Iso8601;
+import com.schibsted.gocd.s3poller.JsonUtil;
+import com.schibsted.gocd.s3poller.ListingResult;
+import com.schibsted.gocd.s3poller.S3ClientRegistry;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+// Reads S3 Inventory reports (CSV, gzip compressed) as a stream, keeping only the newest object under a prefix.
+public class InventoryScanner {
+
+    public static final String MANIFEST = "manifest.json";
+    private static final Pattern SNAPSHOT_FOLDER = Pattern.compile("(^|.*/)\\d{4}-\\d{2}-\\d{2}T\\d{2}-\\d{2}Z/$");
+    private static final String UTF_8 = "UTF-8";
+
+    private final S3ClientRegistry clients;
+
+    public InventoryScanner(AmazonS3Client client) {
+        this(S3ClientRegistry.fixed(client));
+    }
+
+    public InventoryScanner(S3ClientRegistry clients) {
+        this.clients = clients;
+    }
+
+    // Accepts either the key of a manifest.json or the inventory destination prefix holding dated snapshots.
+    public String resolveManifestKey(String bucketName, String location) {
+        if (location.endsWith(MANIFEST)) {
+            return location;
+        }
+        String prefix = location.isEmpty() || location.endsWith("/") ? location : location + "/";
+        String latestSnapshot = null;
+        AmazonS3Client client = clients.clientFor(bucketName);
+        ObjectListing listing = client.listObjects(new ListObjectsRequest()
+            .withBucketName(bucketName).withPrefix(prefix).withDelimiter("/"));
+        while (true) {
+            for (String folder : listing.getCommonPrefixes()) {
+                if (SNAPSHOT_FOLDER.matcher(folder).matches() && (latestSnapshot == null || folder.compareTo(latestSnapshot) > 0)) {
+                    latestSnapshot = folder;
+                }
+            }
+            if (!listing.isTruncated()) {
+                break;
+            }
+            listing = client.listNextBatchOfObjects(listing);
+        }
+        if (latestSnapshot == null) {
+            throw new IllegalStateException("No inventory snapshot found under s3://" + bucketName + "/" + prefix);
+        }
+        return latestSnapshot + MANIFEST;
+    }
+
+    public InventoryManifest readManifest(String bucketName, String manifestKey) {
+        S3Object manifest = clients.clientFor(bucketName).getObject(bucketName, manifestKey);
+        try {
+            return JsonUtil.fromJsonString(readFully(manifest.getObjectContent()), InventoryManifest.class);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not read inventory manifest s3://" + bucketName + "/" + manifestKey, ex);
+        } finally {
+            close(manifest.getObjectContent());
+        }
+    }
+
+    public ListingResult scan(String bucketName, InventoryManifest manifest, String prefix) {
+        return scan(bucketName, manifest, prefix, new ListingResult());
+    }
+
+    public ListingResult scan(String bucketName, InventoryManifest manifest, String prefix, ListingResult result) {
+        if (!"CSV".equalsIgnoreCase(manifest.getFileFormat())) {
+            throw new IllegalStateException("Unsupported inventory format " + manifest.getFileFormat() + ", only CSV is supported");
+        }
+        int keyColumn = manifest.columnOf("Key");
+        int lastModifiedColumn = manifest.columnOf("LastModifiedDate");
+        int eTagColumn = manifest.columnOf("ETag");
+        if (keyColumn < 0 || lastModifiedColumn < 0) {
+            throw new IllegalStateException("Inventory must include the Key and LastModifiedDate fields: " + manifest.getFileSchema());
+        }
+        for (InventoryManifest.DataFile dataFile : manifest.getFiles()) {
+            S3Object data = clients.clientFor(bucketName).getObject(bucketName, dataFile.getKey());
+            try {
+                scan(data.getObjectContent(), manifest.getSourceBucket(), prefix, keyColumn, lastModifiedColumn, eTagColumn, result);
+            } catch (IOException ex) {
+                throw new IllegalStateException("Could not read inventory file s3://" + bucketName + "/" + dataFile.getKey(), ex);
+            } finally {
+                close(data.getObjectContent());
+            }
+        }
+        return result;
+    }
+
+    void scan(InputStream gzippedCsv, String sourceBucket, String prefix, int keyColumn, int lastModifiedColumn, int eTagColumn,
+              ListingResult result) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(gzippedCsv), UTF_8));
+        List<String> fields = new ArrayList<String>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            parseCsvLine(line, fields);
+            if (fields.size() <= keyColumn || fields.size() <= lastModifiedColumn) {
+                continue;
+            }
+            String key = decodeKey(fields.get(keyColumn));
+            String lastModified = fields.get(lastModifiedColumn);
+            if (!key.startsWith(prefix) || key.endsWith("/") || lastModified.isEmpty()) {
+                continue;
+            }
+            String eTag = eTagColumn >= 0 && eTagColumn < fields.size() ? fields.get(eTagColumn) : null;
+            result.add(sourceBucket, key, eTag, Iso8601.parseMillis(lastModified));
+        }
+    }
+
+    static void parseCsvLine(String line, List<String> fields) {
+        fields.clear();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+    }
+
+    // Inventory reports URL encode the object keys.
+    private static String decodeKey(String key) throws UnsupportedEncodingException {
+        if (key.indexOf('%') < 0 && key.indexOf('+') < 0) {
+            return key;
+        }
+        return URLDecoder.decode(key, UTF_8);
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, UTF_8));
+        StringBuilder content = new StringBuilder();
+        char[] buffer = new char[4096];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            content.append(buffer, 0, read);
+        }
+        return content.toString();
+    }
+
+    private static void close(InputStream in) {
+        try {
+            if (in != null) {
+                in.close();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -19,6 +19,10 @@ public class CheckConnectionResultMessage {
         this.messages = messages;
     }
 
+    public STATUS getStatus() {
+        return status;
+    }
+
     public boolean success() {
         return STATUS.SUCCESS.equals(status);
     }
@@ -19,6 +19,17 @@ public class LatestPackageRevisionSinceMessage {
     @SerializedName("previous-revision")
     private PackageRevisionMessage previousRevision;
 
+    public LatestPackageRevisionSinceMessage() {
+    }
+
+    LatestPackageRevisionSinceMessage(Map<String, PackageMaterialProperty> repositoryConfiguration,
+                                      Map<String, PackageMaterialProperty> packageConfiguration,
+                                      PackageRevisionMessage previousRevision) {
+        this.repositoryConfiguration = repositoryConfiguration;
+        this.packageConfiguration = packageConfiguration;
+        this.previousRevision = previousRevision;
+    }
+
     public PackageMaterialProperties getRepositoryConfiguration() {
         return new PackageMaterialProperties(repositoryConfiguration);
     }
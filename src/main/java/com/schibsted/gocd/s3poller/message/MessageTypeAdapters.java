@@ -0,0 +1,460 @@
+package com.schibsted.gocd.s3poller.message;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Hand written Gson adapters for the plugin messages, so handling a request needs no reflection.
+// Field names and null handling are the same as the @Expose/@SerializedName annotations on the messages.
+public class MessageTypeAdapters {
+
+    public static final String DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'";
+
+    private static final String REPOSITORY_CONFIGURATION = "repository-configuration";
+    private static final String PACKAGE_CONFIGURATION = "package-configuration";
+    private static final String PREVIOUS_REVISION = "previous-revision";
+
+    // SimpleDateFormat is not thread safe, one per thread instead of one per call.
+    private static final ThreadLocal<SimpleDateFormat> DATE_FORMATS = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat(DATE_FORMAT);
+        }
+    };
+
+    public static GsonBuilder register(GsonBuilder builder) {
+        return builder
+            .registerTypeAdapter(Date.class, DATE)
+            .registerTypeAdapter(PackageMaterialProperty.class, PROPERTY)
+            .registerTypeAdapter(PackageRevisionMessage.class, REVISION)
+            .registerTypeAdapter(CheckConnectionResultMessage.class, CHECK_CONNECTION_RESULT)
+            .registerTypeAdapter(ValidationError.class, VALIDATION_ERROR)
+            .registerTypeAdapter(RepositoryConnectionMessage.class, new ConfigurationRequestAdapter<RepositoryConnectionMessage>() {
+                @Override
+                ConfigurationRequest toRequest(RepositoryConnectionMessage message) {
+                    return request(message.getRepositoryConfiguration(), null, null);
+                }
+
+                @Override
+                RepositoryConnectionMessage create(ConfigurationRequest request) {
+                    return new RepositoryConnectionMessage(request.repositoryConfiguration);
+                }
+            })
+            .registerTypeAdapter(ValidateRepositoryConfigurationMessage.class, new ConfigurationRequestAdapter<ValidateRepositoryConfigurationMessage>() {
+                @Override
+                ConfigurationRequest toRequest(ValidateRepositoryConfigurationMessage message) {
+                    return request(message.getRepositoryConfiguration(), null, null);
+                }
+
+                @Override
+                ValidateRepositoryConfigurationMessage create(ConfigurationRequest request) {
+                    return new ValidateRepositoryConfigurationMessage(request.repositoryConfiguration);
+                }
+            })
+            .registerTypeAdapter(ValidatePackageConfigurationMessage.class, new ConfigurationRequestAdapter<ValidatePackageConfigurationMessage>() {
+                @Override
+                ConfigurationRequest toRequest(ValidatePackageConfigurationMessage message) {
+                    return request(message.getRepositoryConfiguration(), message.getPackageConfiguration(), null);
+                }
+
+                @Override
+                ValidatePackageConfigurationMessage create(ConfigurationRequest request) {
+                    return new ValidatePackageConfigurationMessage(request.repositoryConfiguration, request.packageConfiguration);
+                }
+            })
+            .registerTypeAdapter(PackageConnectionMessage.class, new ConfigurationRequestAdapter<PackageConnectionMessage>() {
+                @Override
+                ConfigurationRequest toRequest(PackageConnectionMessage message) {
+                    return request(message.getRepositoryConfiguration(), message.getPackageConfiguration(), null);
+                }
+
+                @Override
+                PackageConnectionMessage create(ConfigurationRequest request) {
+                    return new PackageConnectionMessage(request.repositoryConfiguration, request.packageConfiguration);
+                }
+            })
+            .registerTypeAdapter(LatestPackageRevisionMessage.class, new ConfigurationRequestAdapter<LatestPackageRevisionMessage>() {
+                @Override
+                ConfigurationRequest toRequest(LatestPackageRevisionMessage message) {
+                    return request(message.getRepositoryConfiguration(), message.getPackageConfiguration(), null);
+                }
+
+                @Override
+                LatestPackageRevisionMessage create(ConfigurationRequest request) {
+                    return new LatestPackageRevisionMessage(request.repositoryConfiguration, request.packageConfiguration);
+                }
+            })
+            .registerTypeAdapter(LatestPackageRevisionSinceMessage.class, new ConfigurationRequestAdapter<LatestPackageRevisionSinceMessage>() {
+                @Override
+                ConfigurationRequest toRequest(LatestPackageRevisionSinceMessage message) {
+                    return request(message.getRepositoryConfiguration(), message.getPackageConfiguration(),
+                        message.getPreviousRevision());
+                }
+
+                @Override
+                LatestPackageRevisionSinceMessage create(ConfigurationRequest request) {
+                    return new LatestPackageRevisionSinceMessage(request.repositoryConfiguration, request.packageConfiguration,
+                        request.previousRevision);
+                }
+            });
+    }
+
+    static final TypeAdapter<Date> DATE = new TypeAdapter<Date>() {
+        @Override
+        public void write(JsonWriter out, Date date) throws IOException {
+            if (date == null) {
+                out.nullValue();
+            } else {
+                out.value(DATE_FORMATS.get().format(date));
+            }
+        }
+
+        @Override
+        public Date read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            String date = in.nextString();
+            try {
+                return DATE_FORMATS.get().parse(date);
+            } catch (ParseException ex) {
+                throw new JsonSyntaxException(date, ex);
+            }
+        }
+    };
+
+    static final TypeAdapter<PackageMaterialProperty> PROPERTY = new TypeAdapter<PackageMaterialProperty>() {
+        @Override
+        public void write(JsonWriter out, PackageMaterialProperty property) throws IOException {
+            if (property == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("value").value(property.value());
+            writeBoolean(out.name("secure"), property.secure());
+            writeBoolean(out.name("part-of-identity"), property.partOfIdentity());
+            writeBoolean(out.name("required"), property.required());
+            out.name("display-name").value(property.displayName());
+            out.name("display-order").value(property.displayOrder());
+            out.endObject();
+        }
+
+        @Override
+        public PackageMaterialProperty read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            PackageMaterialProperty property = new PackageMaterialProperty();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if ("value".equals(name)) {
+                    property.withValue(readString(in));
+                } else if ("secure".equals(name)) {
+                    property.withSecure(readBoolean(in));
+                } else if ("part-of-identity".equals(name)) {
+                    property.withPartOfIdentity(readBoolean(in));
+                } else if ("required".equals(name)) {
+                    property.withRequired(readBoolean(in));
+                } else if ("display-name".equals(name)) {
+                    property.withDisplayName(readString(in));
+                } else if ("display-order".equals(name)) {
+                    property.withDisplayOrder(readString(in));
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return property;
+        }
+    };
+
+    static final TypeAdapter<PackageRevisionMessage> REVISION = new TypeAdapter<PackageRevisionMessage>() {
+        @Override
+        public void write(JsonWriter out, PackageRevisionMessage revision) throws IOException {
+            if (revision == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("revision").value(revision.getRevision());
+            DATE.write(out.name("timestamp"), revision.getTimestamp());
+            out.name("user").value(revision.getUser());
+            out.name("revisionComment").value(revision.getRevisionComment());
+            out.name("trackbackUrl").value(revision.getTrackbackUrl());
+            Map<String, String> data = revision.data();
+            if (data != null) {
+                out.name("data").beginObject();
+                for (Map.Entry<String, String> entry : data.entrySet()) {
+                    out.name(entry.getKey()).value(entry.getValue());
+                }
+                out.endObject();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public PackageRevisionMessage read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            String revision = null;
+            Date timestamp = null;
+            String user = null;
+            String revisionComment = null;
+            String trackbackUrl = null;
+            Map<String, String> data = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if ("revision".equals(name)) {
+                    revision = readString(in);
+                } else if ("timestamp".equals(name)) {
+                    timestamp = DATE.read(in);
+                } else if ("user".equals(name)) {
+                    user = readString(in);
+                } else if ("revisionComment".equals(name)) {
+                    revisionComment = readString(in);
+                } else if ("trackbackUrl".equals(name)) {
+                    trackbackUrl = readString(in);
+                } else if ("data".equals(name) && in.peek() == JsonToken.BEGIN_OBJECT) {
+                    data = new LinkedHashMap<String, String>();
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        data.put(in.nextName(), readString(in));
+                    }
+                    in.endObject();
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            PackageRevisionMessage message = new PackageRevisionMessage(revision, timestamp, user, revisionComment, trackbackUrl);
+            if (data != null) {
+                message.getData().putAll(data);
+            }
+            return message;
+        }
+    };
+
+    static final TypeAdapter<CheckConnectionResultMessage> CHECK_CONNECTION_RESULT = new TypeAdapter<CheckConnectionResultMessage>() {
+        @Override
+        public void write(JsonWriter out, CheckConnectionResultMessage result) throws IOException {
+            if (result == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("status").value(result.getStatus() == null ? null : result.getStatus().name());
+            if (result.getMessages() != null) {
+                out.name("messages").beginArray();
+                for (String message : result.getMessages()) {
+                    out.value(message);
+                }
+                out.endArray();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public CheckConnectionResultMessage read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            CheckConnectionResultMessage.STATUS status = null;
+            List<String> messages = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if ("status".equals(name)) {
+                    String value = readString(in);
+                    status = value == null ? null : CheckConnectionResultMessage.STATUS.valueOf(value);
+                } else if ("messages".equals(name) && in.peek() == JsonToken.BEGIN_ARRAY) {
+                    messages = new ArrayList<String>();
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        messages.add(readString(in));
+                    }
+                    in.endArray();
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return new CheckConnectionResultMessage(status, messages);
+        }
+    };
+
+    static final TypeAdapter<ValidationError> VALIDATION_ERROR = new TypeAdapter<ValidationError>() {
+        @Override
+        public void write(JsonWriter out, ValidationError error) throws IOException {
+            if (error == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("key").value(error.getKey());
+            out.name("message").value(error.getMessage());
+            out.endObject();
+        }
+
+        @Override
+        public ValidationError read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            String key = null;
+            String message = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if ("key".equals(name)) {
+                    key = readString(in);
+                } else if ("message".equals(name)) {
+                    message = readString(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return new ValidationError(key, message);
+        }
+    };
+
+    // The request messages only differ in which of these fields GoCD sends.
+    static class ConfigurationRequest {
+        Map<String, PackageMaterialProperty> repositoryConfiguration;
+        Map<String, PackageMaterialProperty> packageConfiguration;
+        PackageRevisionMessage previousRevision;
+    }
+
+    private static ConfigurationRequest request(PackageMaterialProperties repositoryConfiguration,
+                                                PackageMaterialProperties packageConfiguration,
+                                                PackageRevisionMessage previousRevision) {
+        ConfigurationRequest request = new ConfigurationRequest();
+        request.repositoryConfiguration = repositoryConfiguration == null ? null : repositoryConfiguration.getPropertyMap();
+        request.packageConfiguration = packageConfiguration == null ? null : packageConfiguration.getPropertyMap();
+        request.previousRevision = previousRevision;
+        return request;
+    }
+
+    abstract static class ConfigurationRequestAdapter<T> extends TypeAdapter<T> {
+
+        abstract ConfigurationRequest toRequest(T message);
+
+        abstract T create(ConfigurationRequest request);
+
+        // Fields that are null are left out, like Gson does without serializeNulls.
+        @Override
+        public void write(JsonWriter out, T message) throws IOException {
+            if (message == null) {
+                out.nullValue();
+                return;
+            }
+            ConfigurationRequest request = toRequest(message);
+            out.beginObject();
+            if (request.repositoryConfiguration != null) {
+                writeProperties(out.name(REPOSITORY_CONFIGURATION), request.repositoryConfiguration);
+            }
+            if (request.packageConfiguration != null) {
+                writeProperties(out.name(PACKAGE_CONFIGURATION), request.packageConfiguration);
+            }
+            if (request.previousRevision != null) {
+                REVISION.write(out.name(PREVIOUS_REVISION), request.previousRevision);
+            }
+            out.endObject();
+        }
+
+        @Override
+        public T read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            ConfigurationRequest request = new ConfigurationRequest();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (REPOSITORY_CONFIGURATION.equals(name)) {
+                    request.repositoryConfiguration = readProperties(in);
+                } else if (PACKAGE_CONFIGURATION.equals(name)) {
+                    request.packageConfiguration = readProperties(in);
+                } else if (PREVIOUS_REVISION.equals(name)) {
+                    request.previousRevision = REVISION.read(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return create(request);
+        }
+    }
+
+    private static void writeProperties(JsonWriter out, Map<String, PackageMaterialProperty> properties) throws IOException {
+        out.beginObject();
+        for (Map.Entry<String, PackageMaterialProperty> property : properties.entrySet()) {
+            PROPERTY.write(out.name(property.getKey()), property.getValue());
+        }
+        out.endObject();
+    }
+
+    private static Map<String, PackageMaterialProperty> readProperties(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Map<String, PackageMaterialProperty> properties = new LinkedHashMap<String, PackageMaterialProperty>();
+        in.beginObject();
+        while (in.hasNext()) {
+            properties.put(in.nextName(), PROPERTY.read(in));
+        }
+        in.endObject();
+        return properties;
+    }
+
+    private static String readString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    private static Boolean readBoolean(JsonReader in) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        if (token == JsonToken.STRING) {
+            return Boolean.valueOf(in.nextString());
+        }
+        return in.nextBoolean();
+    }
+
+    private static void writeBoolean(JsonWriter out, Boolean value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+        } else {
+            out.value(value.booleanValue());
+        }
+    }
+}
@@ -15,6 +15,7 @@ public class PackageMaterialProperty {
     @SerializedName("part-of-identity")
     private Boolean partOfIdentity;
 
+    @Expose
     private Boolean required;
 
     @Expose
@@ -23,7 +23,8 @@ public class PackageRevisionMessage {
     @Expose
     private String trackbackUrl;
 
-    private Map<String, String> data = new HashMap<String, String>();
+    @Expose
+    private Map<String, String> data;
 
     public PackageRevisionMessage() {
     }
@@ -57,11 +58,14 @@ public class PackageRevisionMessage {
     }
 
     public Map<String, String> getData() {
+        if (data == null) {
+            data = new HashMap<String, String>();
+        }
         return data;
     }
 
     public void addData(String key, String value) {
-        data.put(key, value);
+        getData().put(key, value);
     }
 
     @Override
@@ -96,7 +100,12 @@ public class PackageRevisionMessage {
         return result;
     }
 
+    // The data map as is, without creating it.
+    Map<String, String> data() {
+        return data;
+    }
+
     public String getDataFor(String key) {
-        return data.get(key);
+        return data == null ? null : data.get(key);
     }
 }
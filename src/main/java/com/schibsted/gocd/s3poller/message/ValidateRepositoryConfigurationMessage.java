@@ -11,6 +11,12 @@ public class ValidateRepositoryConfigurationMessage {
     @SerializedName("repository-configuration")
     private Map<String, PackageMaterialProperty> repositoryConfigurationMap;
 
+    public ValidateRepositoryConfigurationMessage() {
+    }
+
+    ValidateRepositoryConfigurationMessage(Map<String, PackageMaterialProperty> repositoryConfiguration) {
+        this.repositoryConfigurationMap = repositoryConfiguration;
+    }
 
     public PackageMaterialProperties getRepositoryConfiguration() {
         return new PackageMaterialProperties(repositoryConfigurationMap);
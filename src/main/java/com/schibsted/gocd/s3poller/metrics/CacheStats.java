@@ -0,0 +1,13 @@
+package com.schibsted.gocd.s3poller.metrics;
+
+// Counters of a cache, read whenever the metrics are published.
+public interface CacheStats {
+
+    long getHits();
+
+    long getMisses();
+
+    long getEvictions();
+
+    int size();
+}
@@ -0,0 +1,65 @@
+package com.schibsted.gocd.s3poller.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Latency, errors and listing volume of one kind of call, e.g. listObjects on a bucket or polls of a package.
+public class CallStats {
+
+    private final String name;
+    private final String labels;
+    private final Histogram latency = new Histogram();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong keys = new AtomicLong();
+    private final AtomicLong pages = new AtomicLong();
+    private volatile String strategy;
+
+    CallStats(String name, String labels) {
+        this.name = name;
+        this.labels = labels;
+    }
+
+    public void record(long startNanos, boolean success) {
+        latency.record(System.nanoTime() - startNanos);
+        if (!success) {
+            errors.incrementAndGet();
+        }
+    }
+
+    public void addListed(long keys, long pages) {
+        this.keys.addAndGet(keys);
+        this.pages.addAndGet(pages);
+    }
+
+    // How the package was polled last, see PollPlanner.
+    public void setStrategy(String strategy) {
+        this.strategy = strategy;
+    }
+
+    public String getStrategy() {
+        return strategy;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getLabels() {
+        return labels;
+    }
+
+    public Histogram getLatency() {
+        return latency;
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public long getKeys() {
+        return keys.get();
+    }
+
+    public long getPages() {
+        return pages.get();
+    }
+}
@@ -0,0 +1,305 @@
+package com.schibsted.gocd.s3poller.metrics;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Timings and counters of the plugin: GoCD requests by name, S3 calls by operation and bucket, polls by package, and
+// the hits, misses, evictions and size of its caches.
+public class PollMetrics implements PollMetricsMBean {
+
+    public static final String OBJECT_NAME = "com.schibsted.gocd.s3poller:type=PollMetrics";
+
+    static final String HANDLE = "s3poller_handle_seconds";
+    static final String S3_REQUEST = "s3poller_s3_request_seconds";
+    static final String POLL = "s3poller_poll_seconds";
+
+    public static final String LISTING_CACHE = "listing";
+    public static final String METADATA_CACHE = "metadata";
+    public static final String BATCHED_CACHE = "batched";
+
+    private final ConcurrentMap<String, CallStats> stats = new ConcurrentHashMap<String, CallStats>();
+    private final ConcurrentMap<String, CacheStats> caches = new ConcurrentHashMap<String, CacheStats>();
+    private final Logger log = Logger.getLoggerFor(this.getClass());
+
+    public CallStats handle(String requestName) {
+        return stats(HANDLE, "request=\"" + escape(requestName) + "\"");
+    }
+
+    public CallStats s3(String operation, String bucketName) {
+        return stats(S3_REQUEST, "operation=\"" + operation + "\",bucket=\"" + escape(bucketName) + "\"");
+    }
+
+    public CallStats poll(String bucketName, String path) {
+        return stats(POLL, "bucket=\"" + escape(bucketName) + "\",path=\"" + escape(path) + "\"");
+    }
+
+    // A recreated poller replaces the caches of the previous one.
+    public void cache(String name, CacheStats cache) {
+        caches.put(name, cache);
+    }
+
+    private CallStats stats(String name, String labels) {
+        String series = name + "{" + labels + "}";
+        CallStats callStats = stats.get(series);
+        if (callStats == null) {
+            CallStats created = new CallStats(name, labels);
+            callStats = stats.putIfAbsent(series, created);
+            if (callStats == null) {
+                callStats = created;
+            }
+        }
+        return callStats;
+    }
+
+    public void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            // A reloaded plugin replaces the MBean of its previous instance.
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (Exception ex) {
+            log.warn("could not register " + OBJECT_NAME + ": " + ex.getMessage());
+        }
+    }
+
+    @Override
+    public long getHandledRequests() {
+        return sum(HANDLE, false);
+    }
+
+    @Override
+    public long getHandleErrors() {
+        return sum(HANDLE, true);
+    }
+
+    @Override
+    public long getS3Requests() {
+        return sum(S3_REQUEST, false);
+    }
+
+    @Override
+    public long getS3Errors() {
+        return sum(S3_REQUEST, true);
+    }
+
+    @Override
+    public long getKeysScanned() {
+        long keys = 0;
+        for (CallStats callStats : stats.values()) {
+            if (POLL.equals(callStats.getName())) {
+                keys += callStats.getKeys();
+            }
+        }
+        return keys;
+    }
+
+    @Override
+    public long getPagesFetched() {
+        long pages = 0;
+        for (CallStats callStats : stats.values()) {
+            if (POLL.equals(callStats.getName())) {
+                pages += callStats.getPages();
+            }
+        }
+        return pages;
+    }
+
+    @Override
+    public long getListingCacheHits() {
+        CacheStats cache = caches.get(LISTING_CACHE);
+        return cache == null ? 0 : cache.getHits();
+    }
+
+    @Override
+    public long getListingCacheMisses() {
+        CacheStats cache = caches.get(LISTING_CACHE);
+        return cache == null ? 0 : cache.getMisses();
+    }
+
+    @Override
+    public long getListingCacheEvictions() {
+        CacheStats cache = caches.get(LISTING_CACHE);
+        return cache == null ? 0 : cache.getEvictions();
+    }
+
+    @Override
+    public int getListingCacheSize() {
+        CacheStats cache = caches.get(LISTING_CACHE);
+        return cache == null ? 0 : cache.size();
+    }
+
+    @Override
+    public long getMetadataCacheHits() {
+        CacheStats cache = caches.get(METADATA_CACHE);
+        return cache == null ? 0 : cache.getHits();
+    }
+
+    @Override
+    public long getMetadataCacheMisses() {
+        CacheStats cache = caches.get(METADATA_CACHE);
+        return cache == null ? 0 : cache.getMisses();
+    }
+
+    @Override
+    public long getMetadataCacheEvictions() {
+        CacheStats cache = caches.get(METADATA_CACHE);
+        return cache == null ? 0 : cache.getEvictions();
+    }
+
+    @Override
+    public int getMetadataCacheSize() {
+        CacheStats cache = caches.get(METADATA_CACHE);
+        return cache == null ? 0 : cache.size();
+    }
+
+    private long sum(String name, boolean errors) {
+        long sum = 0;
+        for (CallStats callStats : stats.values()) {
+            if (name.equals(callStats.getName())) {
+                sum += errors ? callStats.getErrors() : callStats.getLatency().getCount();
+            }
+        }
+        return sum;
+    }
+
+    // The ten packages that took the most poll time in total.
+    @Override
+    public String[] getSlowestPackages() {
+        List<CallStats> polls = new ArrayList<CallStats>();
+        for (CallStats callStats : stats.values()) {
+            if (POLL.equals(callStats.getName())) {
+                polls.add(callStats);
+            }
+        }
+        Collections.sort(polls, new Comparator<CallStats>() {
+            @Override
+            public int compare(CallStats a, CallStats b) {
+                long difference = b.getLatency().getSumNanos() - a.getLatency().getSumNanos();
+                return difference < 0 ? -1 : difference > 0 ? 1 : 0;
+            }
+        });
+        String[] slowest = new String[Math.min(10, polls.size())];
+        for (int i = 0; i < slowest.length; i++) {
+            CallStats poll = polls.get(i);
+            slowest[i] = String.format(Locale.US, "%s total=%.3fs polls=%d p99<=%ss errors=%d keys=%d pages=%d strategy=%s",
+                poll.getLabels(), poll.getLatency().getSumNanos() / 1e9, poll.getLatency().getCount(),
+                format(poll.getLatency().quantile(0.99)), poll.getErrors(), poll.getKeys(), poll.getPages(),
+                poll.getStrategy());
+        }
+        return slowest;
+    }
+
+    // Prometheus text exposition format (0.0.4).
+    @Override
+    public String getPrometheusText() {
+        Map<String, CallStats> sorted = new TreeMap<String, CallStats>(stats);
+        StringBuilder text = new StringBuilder();
+        String currentName = null;
+        for (CallStats callStats : sorted.values()) {
+            String name = callStats.getName();
+            if (!name.equals(currentName)) {
+                currentName = name;
+                text.append("# TYPE ").append(name).append(" histogram\n");
+            }
+            Histogram latency = callStats.getLatency();
+            for (int i = 0; i <= Histogram.BOUNDS.length; i++) {
+                String bound = i < Histogram.BOUNDS.length ? format(Histogram.BOUNDS[i]) : "+Inf";
+                text.append(name).append("_bucket{").append(callStats.getLabels()).append(",le=\"").append(bound).append("\"} ")
+                    .append(latency.cumulativeCount(i)).append('\n');
+            }
+            text.append(name).append("_sum{").append(callStats.getLabels()).append("} ")
+                .append(format(latency.getSumNanos() / 1e9)).append('\n');
+            text.append(name).append("_count{").append(callStats.getLabels()).append("} ").append(latency.getCount()).append('\n');
+        }
+        counters(text, sorted, "errors_total", HANDLE, S3_REQUEST, POLL);
+        counters(text, sorted, "keys_scanned_total", POLL);
+        counters(text, sorted, "pages_total", POLL);
+        strategies(text, sorted);
+        caches(text);
+        return text.toString();
+    }
+
+    private void caches(StringBuilder text) {
+        Map<String, CacheStats> sorted = new TreeMap<String, CacheStats>(caches);
+        if (sorted.isEmpty()) {
+            return;
+        }
+        String[] metrics = {"s3poller_cache_hits_total", "s3poller_cache_misses_total", "s3poller_cache_evictions_total",
+            "s3poller_cache_size"};
+        for (String metric : metrics) {
+            text.append("# TYPE ").append(metric).append(metric.endsWith("_total") ? " counter\n" : " gauge\n");
+            for (Map.Entry<String, CacheStats> cache : sorted.entrySet()) {
+                CacheStats stats = cache.getValue();
+                long value = metric.contains("hits") ? stats.getHits() : metric.contains("misses") ? stats.getMisses()
+                    : metric.contains("evictions") ? stats.getEvictions() : stats.size();
+                text.append(metric).append("{cache=\"").append(escape(cache.getKey())).append("\"} ").append(value)
+                    .append('\n');
+            }
+        }
+    }
+
+    private static void strategies(StringBuilder text, Map<String, CallStats> sorted) {
+        boolean typed = false;
+        for (CallStats callStats : sorted.values()) {
+            if (!POLL.equals(callStats.getName()) || callStats.getStrategy() == null) {
+                continue;
+            }
+            if (!typed) {
+                text.append("# TYPE s3poller_poll_strategy gauge\n");
+                typed = true;
+            }
+            text.append("s3poller_poll_strategy{").append(callStats.getLabels()).append(",strategy=\"")
+                .append(callStats.getStrategy()).append("\"} 1\n");
+        }
+    }
+
+    private static void counters(StringBuilder text, Map<String, CallStats> sorted, String counter, String... names) {
+        for (String name : names) {
+            String metric = name.substring(0, name.length() - "seconds".length()) + counter;
+            boolean typed = false;
+            for (CallStats callStats : sorted.values()) {
+                if (!name.equals(callStats.getName())) {
+                    continue;
+                }
+                if (!typed) {
+                    text.append("# TYPE ").append(metric).append(" counter\n");
+                    typed = true;
+                }
+                long value = "errors_total".equals(counter) ? callStats.getErrors()
+                    : "keys_scanned_total".equals(counter) ? callStats.getKeys() : callStats.getPages();
+                text.append(metric).append('{').append(callStats.getLabels()).append("} ").append(value).append('\n');
+            }
+        }
+    }
+
+    private static String format(double value) {
+        if (Double.isInfinite(value)) {
+            return "+Inf";
+        }
+        String formatted = String.format(Locale.US, "%.6f", value);
+        formatted = formatted.replaceAll("0+$", "");
+        return formatted.endsWith(".") ? formatted + "0" : formatted;
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,36 @@
+package com.schibsted.gocd.s3poller.metrics;
+
+public interface PollMetricsMBean {
+
+    long getHandledRequests();
+
+    long getHandleErrors();
+
+    long getS3Requests();
+
+    long getS3Errors();
+
+    long getKeysScanned();
+
+    long getPagesFetched();
+
+    long getListingCacheHits();
+
+    long getListingCacheMisses();
+
+    long getListingCacheEvictions();
+
+    int getListingCacheSize();
+
+    long getMetadataCacheHits();
+
+    long getMetadataCacheMisses();
+
+    long getMetadataCacheEvictions();
+
+    int getMetadataCacheSize();
+
+    String[] getSlowestPackages();
+
+    String getPrometheusText();
+}
@@ -0,0 +1,66 @@
+package com.schibsted.gocd.s3poller;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BatchPlannerTest {
+
+    @Test
+    public void parentIsThePrefixUpToThePreviousSlashTest() {
+        assertEquals("releases/", BatchPlanner.parentOf("releases/serviceA/"));
+        assertEquals("releases/", BatchPlanner.parentOf("releases/serviceA"));
+        assertEquals("releases/serviceA/", BatchPlanner.parentOf("releases/serviceA/app-"));
+        assertNull(BatchPlanner.parentOf("releases/"));
+        assertNull(BatchPlanner.parentOf("releases"));
+        assertNull(BatchPlanner.parentOf(""));
+    }
+
+    @Test
+    public void batchesSiblingPackagesOfTheSameBucketTest() {
+        BatchPlanner planner = new BatchPlanner(2);
+
+        assertNull(planner.plan(new S3Location("bucket", "releases/a/")));
+        assertNull(planner.plan(new S3Location("other", "releases/b/")));
+        BatchPlanner.Batch batch = planner.plan(new S3Location("bucket", "releases/b/"));
+
+        assertNotNull(batch);
+        assertEquals(new S3Location("bucket", "releases/"), batch.getParent());
+        assertEquals(new HashSet<String>(Arrays.asList("releases/a/", "releases/b/")), new HashSet<String>(batch.getPrefixes()));
+    }
+
+    @Test
+    public void stopsBatchingParentsOfMostlyOtherKeysTest() {
+        BatchPlanner planner = new BatchPlanner(2);
+        planner.plan(new S3Location("bucket", "releases/a/"));
+        BatchPlanner.Batch batch = planner.plan(new S3Location("bucket", "releases/b/"));
+
+        planner.learn(batch, 1000, 600);
+        assertNotNull(planner.plan(new S3Location("bucket", "releases/b/")));
+        planner.learn(batch, 1000, 100);
+        assertNull(planner.plan(new S3Location("bucket", "releases/b/")));
+    }
+
+    @Test
+    public void routesKeysToEveryPackageTheyStartWithTest() {
+        RoutedListingResult result = new RoutedListingResult(Arrays.asList("releases/a", "releases/a/b/", "releases/c/"));
+
+        result.add("bucket", "releases/a/b/2", null, 20);
+        result.add("bucket", "releases/a/1", null, 10);
+        result.add("bucket", "releases/ab/3", null, 30);
+        result.add("bucket", "releases/d/4", null, 40);
+
+        assertEquals("releases/ab/3", result.resultOf("releases/a").getLatest().getKey());
+        assertEquals(3, result.resultOf("releases/a").getKeyCount());
+        assertEquals("releases/a/b/2", result.resultOf("releases/a/b/").getLatest().getKey());
+        assertTrue(result.resultOf("releases/c/").isEmpty());
+        assertEquals(4, result.getKeyCount());
+        assertEquals(3, result.getRoutedKeyCount());
+    }
+}
@@ -0,0 +1,26 @@
+package com.schibsted.gocd.s3poller;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+public class Iso8601Test {
+
+    @Test
+    public void parsesS3TimestampsTest() throws Exception {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        for (String timestamp : new String[]{"1970-01-01T00:00:00.000Z", "2000-02-29T23:59:59.999Z", "2015-07-01T10:00:00.120Z"}) {
+            assertEquals(timestamp, format.parse(timestamp).getTime(), Iso8601.parseMillis(timestamp));
+        }
+        assertEquals(1435744800000L, Iso8601.parseMillis("2015-07-01T10:00:00Z"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOffsetsTest() {
+        Iso8601.parseMillis("2015-07-01T10:00:00.000+02:00");
+    }
+}
@@ -1,12 +1,74 @@
 package com.schibsted.gocd.s3poller;
 
+import com.google.gson.GsonBuilder;
+import com.schibsted.gocd.s3poller.message.CheckConnectionResultMessage;
+import com.schibsted.gocd.s3poller.message.LatestPackageRevisionSinceMessage;
 import com.schibsted.gocd.s3poller.message.PackageRevisionMessage;
+import com.schibsted.gocd.s3poller.message.RepositoryConnectionMessage;
+import com.schibsted.gocd.s3poller.message.ValidationError;
 import junit.framework.TestCase;
 
+import java.util.Arrays;
+import java.util.Date;
+
 public class JsonUtilTest extends TestCase {
 
     public void testToJsonString() throws Exception {
         PackageRevisionMessage prm = new PackageRevisionMessage();
         assertEquals("{}", JsonUtil.toJsonString(prm));
     }
+
+    public void testRevisionDataRoundTrip() throws Exception {
+        PackageRevisionMessage prm = new PackageRevisionMessage();
+        prm.addData(Constants.DATA_MARKER, "path/key");
+        PackageRevisionMessage parsed = JsonUtil.fromJsonString(JsonUtil.toJsonString(prm), PackageRevisionMessage.class);
+        assertEquals("path/key", parsed.getDataFor(Constants.DATA_MARKER));
+    }
+
+    public void testMessagesAreWrittenAsByTheirAnnotations() throws Exception {
+        PackageRevisionMessage prm = new PackageRevisionMessage("1.0", new Date(1436000000000L), "S3", "comment", null);
+        prm.addData(Constants.DATA_LATEST_KEY, "path/key");
+
+        assertEquals(reflective(prm), JsonUtil.toJsonString(prm));
+        assertEquals(reflective(new PackageRepositoryConfigurationProvider().repositoryConfiguration().getPropertyMap()),
+            JsonUtil.toJsonString(new PackageRepositoryConfigurationProvider().repositoryConfiguration().getPropertyMap()));
+        CheckConnectionResultMessage result = new CheckConnectionResultMessage(CheckConnectionResultMessage.STATUS.SUCCESS,
+            Arrays.asList("Bucket found"));
+        assertEquals(reflective(result), JsonUtil.toJsonString(result));
+        assertEquals(reflective(Arrays.asList(ValidationError.create(Constants.S3_PATH, "missing"))),
+            JsonUtil.toJsonString(Arrays.asList(ValidationError.create(Constants.S3_PATH, "missing"))));
+    }
+
+    public void testReadLatestRevisionSinceRequest() throws Exception {
+        String json = "{\"repository-configuration\":{\"S3_BUCKET\":{\"value\":\"bucket\"}}," +
+            "\"package-configuration\":{\"S3_PATH\":{\"value\":\"path\"}}," +
+            "\"previous-revision\":{\"revision\":\"1.0\",\"timestamp\":\"" +
+            JsonUtil.toJsonString(new Date(1436000000000L)).replace("\"", "") + "\"," +
+            "\"data\":{\"MARKER\":\"path/key\"}},\"unknown\":[1,2]}";
+
+        LatestPackageRevisionSinceMessage message = JsonUtil.fromJsonString(json, LatestPackageRevisionSinceMessage.class);
+
+        assertEquals("bucket", message.getRepositoryConfiguration().getProperty(Constants.S3_BUCKET).value());
+        assertEquals("path", message.getPackageConfiguration().getProperty(Constants.S3_PATH).value());
+        assertEquals("1.0", message.getPreviousRevision().getRevision());
+        assertEquals(new Date(1436000000000L), message.getPreviousRevision().getTimestamp());
+        assertEquals("path/key", message.getPreviousRevision().getDataFor(Constants.DATA_MARKER));
+    }
+
+    public void testRequestsAreWrittenAsByTheirAnnotations() throws Exception {
+        String json = "{\"repository-configuration\":{\"S3_BUCKET\":{\"value\":\"bucket\"}}," +
+            "\"package-configuration\":{\"S3_PATH\":{\"value\":\"path\"}}," +
+            "\"previous-revision\":{\"revision\":\"1.0\",\"data\":{\"MARKER\":\"path/key\"}}}";
+        LatestPackageRevisionSinceMessage since = JsonUtil.fromJsonString(json, LatestPackageRevisionSinceMessage.class);
+        RepositoryConnectionMessage repository = JsonUtil.fromJsonString(json, RepositoryConnectionMessage.class);
+
+        assertEquals(reflective(since), JsonUtil.toJsonString(since));
+        assertEquals(reflective(repository), JsonUtil.toJsonString(repository));
+        assertEquals(json, JsonUtil.toJsonString(since));
+    }
+
+    private static String reflective(Object object) {
+        return new GsonBuilder().setDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").excludeFieldsWithoutExposeAnnotation()
+            .create().toJson(object);
+    }
 }
@@ -0,0 +1,67 @@
+package com.schibsted.gocd.s3poller;
+
+import org.junit.Test;
+
+import java.util.regex.PatternSyntaxException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class KeyFilterTest {
+
+    @Test
+    public void globsWithoutSlashMatchFileNamesInAnyFolderTest() {
+        KeyFilter.Selector selector = KeyFilter.of("*.tar.gz, *.rpm", "_SUCCESS").selector("releases/");
+
+        assertTrue(selector.accepts("releases/app-1.0.tar.gz"));
+        assertTrue(selector.accepts("releases/1.0/app.rpm"));
+        assertFalse(selector.accepts("releases/app-1.0.tar.gz.sha1"));
+        assertFalse(selector.accepts("releases/app-1.0.tgz"));
+        assertFalse(selector.accepts("releases/1.0/_SUCCESS"));
+    }
+
+    @Test
+    public void globsWithSlashMatchFromThePackagePathTest() {
+        KeyFilter.Selector selector = KeyFilter.of("builds/*/app-?.zip", "**/tmp/**").selector("releases/");
+
+        assertTrue(selector.accepts("releases/builds/1.0/app-1.zip"));
+        assertFalse(selector.accepts("releases/builds/1.0/x/app-1.zip"));
+        assertFalse(selector.accepts("releases/builds/1.0/app-10.zip"));
+        assertFalse(selector.accepts("other/builds/1.0/app-1.zip"));
+
+        KeyFilter.Selector excluding = KeyFilter.of(null, "**/tmp/**").selector("releases/");
+        assertTrue(excluding.accepts("releases/app.zip"));
+        assertFalse(excluding.accepts("releases/tmp/app.zip"));
+        assertFalse(excluding.accepts("releases/a/b/tmp/app.zip"));
+    }
+
+    @Test
+    public void regexIsMatchedAgainstTheKeyAfterThePathTest() {
+        KeyFilter filter = KeyFilter.of("regex:app-\\d+(\\.\\d+)*\\.(zip|jar)", null);
+
+        assertTrue(filter.selector("path/").accepts("path/app-1.2.zip"));
+        assertFalse(filter.selector("path/").accepts("path/sub/app-1.2.zip"));
+        assertSame(filter, KeyFilter.of("regex:app-\\d+(\\.\\d+)*\\.(zip|jar)", null));
+        assertNull(KeyFilter.ALL.selector("path/"));
+    }
+
+    @Test(expected = PatternSyntaxException.class)
+    public void invalidRegexIsRefusedTest() {
+        KeyFilter.compile("regex:app-(");
+    }
+
+    @Test
+    public void refusedKeysAreCountedButNeverLatestTest() {
+        ListingResult result = new ListingResult(KeyFilter.of(null, "*.sha1").selector("path/"));
+
+        result.add("bucket", "path/app-1.zip", null, 10);
+        result.add("bucket", "path/app-1.zip.sha1", null, 20);
+
+        assertEquals("path/app-1.zip", result.getLatest().getKey());
+        assertEquals("path/app-1.zip.sha1", result.getLastKey());
+        assertEquals(2, result.getKeyCount());
+    }
+}
@@ -0,0 +1,77 @@
+package com.schibsted.gocd.s3poller;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class KeyTrieTest {
+
+    @Test
+    public void findsLatestObjectUnderAnyPrefixTest() {
+        KeyTrie keys = new KeyTrie(100);
+        keys.put("releases/serviceA/1.0/app.zip", "a", 10);
+        keys.put("releases/serviceA/1.1/app.zip", "b", 30);
+        keys.put("releases/serviceB/1.0/app.zip", "c", 20);
+        keys.put("releases/service", "d", 5);
+
+        assertEquals("releases/serviceA/1.1/app.zip", keys.latestUnder("bucket", "").getLatest().getKey());
+        assertEquals("releases/serviceA/1.1/app.zip", keys.latestUnder("bucket", "releases/serviceA").getLatest().getKey());
+        assertEquals("b", keys.latestUnder("bucket", "releases/serviceA/1.").getLatest().getETag());
+        assertEquals("releases/serviceA/1.0/app.zip", keys.latestUnder("bucket", "releases/serviceA/1.0/").getLatest().getKey());
+        assertEquals("releases/serviceB/1.0/app.zip", keys.latestUnder("bucket", "releases/serviceB").getLatest().getKey());
+        assertEquals("releases/serviceA/1.1/app.zip", keys.latestUnder("bucket", "releases/service").getLatest().getKey());
+        assertTrue(keys.latestUnder("bucket", "releases/serviceC").isEmpty());
+        assertTrue(keys.latestUnder("bucket", "releases/serviceA/1.0/app.zip.sha1").isEmpty());
+        assertEquals(4, keys.size());
+    }
+
+    @Test
+    public void keepsTheGreatestKeyUnderPrefixTest() {
+        KeyTrie keys = new KeyTrie(100);
+        keys.put("path/b", null, 10);
+        keys.put("path/a/2", null, 20);
+        keys.put("path/b/1", null, 5);
+        keys.put("path/c", null, 1);
+        keys.put("other", null, 50);
+
+        assertEquals("path/c", keys.greatestKeyUnder("path/"));
+        assertEquals("path/b/1", keys.greatestKeyUnder("path/b"));
+        assertEquals("path/c", keys.latestUnder("bucket", "path/").getLastKey());
+        assertNull(keys.greatestKeyUnder("path/d"));
+    }
+
+    @Test
+    public void updatesIncrementallyFromListingsTest() {
+        KeyTrie keys = new KeyTrie(100);
+        keys.put("path/key-1", "a", 10);
+        ListingResult listed = keys.indexing();
+
+        // A streamed page offers only keys the result says are newer.
+        if (listed.isNewer(5)) {
+            listed.offerLatest("bucket", "path/key-0", "b", 5);
+        }
+        listed.add("bucket", "path/key-2", "c", 20);
+        keys.put("path/key-1", "d", 30);
+
+        assertEquals(3, keys.size());
+        assertEquals("path/key-2", listed.getLatest().getKey());
+        assertEquals("d", keys.latestUnder("bucket", "path/").getLatest().getETag());
+        assertEquals("path/key-2", keys.greatestKeyUnder("path/"));
+    }
+
+    @Test
+    public void refusesKeysOverTheLimitTest() {
+        KeyTrie keys = new KeyTrie(2);
+        assertTrue(keys.put("a", null, 1));
+        assertTrue(keys.put("b", null, 2));
+        assertTrue(keys.put("a", null, 3));
+        assertFalse(keys.isFull());
+
+        assertFalse(keys.put("c", null, 4));
+        assertTrue(keys.isFull());
+        assertFalse(keys.put("a", null, 5));
+    }
+}
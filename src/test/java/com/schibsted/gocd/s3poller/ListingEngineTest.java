@@ -0,0 +1,253 @@
+package com.schibsted.gocd.s3poller;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ListingEngineTest {
+
+    @Mock
+    AmazonS3Client client;
+
+    ExecutorService executor;
+    ListingEngine engine;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+        engine = new ListingEngine(client, executor);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void singlePageIsNotShardedTest() {
+        when(client.listObjects("bucket", "path/")).thenReturn(listing(false, summary("path/a", 10000)));
+
+        ListingResult result = engine.list("bucket", "path/");
+
+        assertEquals("path/a", result.getLatest().getKey());
+        verify(client, never()).listObjects(any(ListObjectsRequest.class));
+    }
+
+    @Test
+    public void truncatedListingIsShardedOnSubPrefixesTest() {
+        TreeSet<String> keys = new TreeSet<String>();
+        for (int i = 1; i <= 10; i++) {
+            keys.add(String.format("path/0/%04d", i));
+        }
+        for (int i = 1; i <= 1500; i++) {
+            keys.add(String.format("path/a/%04d", i));
+            keys.add(String.format("path/b/%04d", i));
+        }
+        keys.add("path/top");
+        AtomicInteger requests = serve(keys);
+
+        ListingResult result = engine.list("bucket", "path/");
+
+        assertEquals("path/top", result.getLastKey());
+        assertEquals(keys.size(), result.getKeyCount());
+        // The first page, the folders after it, the rest of path/a/ after the first page and path/b/ in two pages.
+        assertEquals(5, requests.get());
+        verify(client, never()).listObjects("bucket", "path/0/");
+    }
+
+    @Test
+    public void asyncListingFailsWhenAShardFailsTest() {
+        when(client.listObjects("bucket", "path/")).thenReturn(listing(true, summary("path/a/1", 10000)));
+        when(client.listObjects("bucket", "path/a/")).thenReturn(listing(false, summary("path/a/1", 10000)));
+        when(client.listObjects("bucket", "path/b/")).thenThrow(new AmazonClientException("connection reset"));
+        ObjectListing shards = listing(false);
+        shards.setCommonPrefixes(Arrays.asList("path/a/", "path/b/"));
+        when(client.listObjects(any(ListObjectsRequest.class))).thenReturn(shards);
+
+        Promise<ListingResult> listed = engine.listAsync("bucket", "path/", KeyFilter.ALL);
+
+        try {
+            listed.get();
+            fail("the failed shard was ignored");
+        } catch (AmazonClientException ex) {
+            assertEquals("connection reset", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void greatestKeyIsFoundWithLogarithmicProbesTest() {
+        final TreeSet<String> keys = new TreeSet<String>();
+        for (int build = 1; build <= 50000; build++) {
+            keys.add(String.format("path/build-%06d/app.zip", build));
+            keys.add(String.format("path/build-%06d/app.zip.sha1", build));
+        }
+        keys.add("path/archive");
+        keys.add("other/zzz");
+        AtomicInteger requests = serve(keys);
+
+        ListingResult result = engine.listGreatest("bucket", "path/");
+
+        // A plain listing takes 100 pages.
+        assertEquals("path/build-050000/app.zip.sha1", result.getLatest().getKey());
+        assertTrue("took " + requests.get() + " requests", requests.get() <= 25);
+        assertEquals(requests.get(), result.getPageCount());
+    }
+
+    @Test
+    public void greatestKeyOfASinglePageIsListedTest() {
+        TreeSet<String> keys = new TreeSet<String>();
+        for (int build = 1; build <= 10; build++) {
+            keys.add(String.format("path/build-%02d/app.zip", build));
+        }
+        AtomicInteger requests = serve(keys);
+
+        ListingResult result = engine.listGreatest("bucket", "path/");
+
+        assertEquals("path/build-10/app.zip", result.getLatest().getKey());
+        assertEquals(1, requests.get());
+        assertEquals(1, result.getPageCount());
+    }
+
+    @Test
+    public void greatestKeyOfEmptyPrefixIsEmptyTest() {
+        AtomicInteger requests = serve(new TreeSet<String>());
+
+        assertTrue(engine.listGreatest("bucket", "path/").isEmpty());
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void shallowListingSkipsDeeperFoldersTest() {
+        final TreeSet<String> keys = new TreeSet<String>(Arrays.asList(
+            "path/app-1.zip", "path/1.1/app.zip", "path/logs/2017/01/huge.log", "path/tmp/x/y/z"));
+        final TreeSet<String> listed = new TreeSet<String>();
+        when(client.listObjects(any(ListObjectsRequest.class))).thenAnswer(new Answer<ObjectListing>() {
+            @Override
+            public ObjectListing answer(InvocationOnMock invocation) throws Throwable {
+                ListObjectsRequest request = (ListObjectsRequest) invocation.getArguments()[0];
+                assertEquals("/", request.getDelimiter());
+                listed.add(request.getPrefix());
+                ObjectListing listing = listing(false);
+                TreeSet<String> folders = new TreeSet<String>();
+                for (String key : keys.tailSet(request.getPrefix())) {
+                    if (!key.startsWith(request.getPrefix())) {
+                        break;
+                    }
+                    int slash = key.indexOf('/', request.getPrefix().length());
+                    if (slash < 0) {
+                        listing.getObjectSummaries().add(summary(key, key.length() * 1000L));
+                    } else {
+                        folders.add(key.substring(0, slash + 1));
+                    }
+                }
+                listing.setCommonPrefixes(new ArrayList<String>(folders));
+                return listing;
+            }
+        });
+
+        assertEquals("path/app-1.zip", engine.listShallow("bucket", "path/", 1).getLatest().getKey());
+        ListingResult twoLevels = engine.listShallow("bucket", "path/", 2);
+
+        assertEquals("path/1.1/app.zip", twoLevels.getLatest().getKey());
+        assertEquals(2, twoLevels.getKeyCount());
+        assertEquals(new TreeSet<String>(Arrays.asList("path/", "path/1.1/", "path/logs/", "path/tmp/")), listed);
+        verify(client, never()).listObjects(anyString(), anyString());
+    }
+
+    // Answers listings from the keys, in pages of at most 1000 keys and common prefixes.
+    private AtomicInteger serve(final TreeSet<String> keys) {
+        final AtomicInteger requests = new AtomicInteger();
+        Answer<ObjectListing> answer = new Answer<ObjectListing>() {
+            @Override
+            public ObjectListing answer(InvocationOnMock invocation) throws Throwable {
+                requests.incrementAndGet();
+                Object argument = invocation.getArguments()[0];
+                ListObjectsRequest request;
+                if (argument instanceof ListObjectsRequest) {
+                    request = (ListObjectsRequest) argument;
+                } else if (argument instanceof ObjectListing) {
+                    ObjectListing previous = (ObjectListing) argument;
+                    request = new ListObjectsRequest(previous.getBucketName(), previous.getPrefix(), previous.getNextMarker(),
+                        previous.getDelimiter(), previous.getMaxKeys());
+                } else {
+                    request = new ListObjectsRequest().withPrefix((String) invocation.getArguments()[1]);
+                }
+                int maxKeys = request.getMaxKeys() == null ? 1000 : request.getMaxKeys();
+                ObjectListing listing = listing(false);
+                listing.setBucketName(request.getBucketName());
+                listing.setPrefix(request.getPrefix());
+                listing.setDelimiter(request.getDelimiter());
+                listing.setMaxKeys(maxKeys);
+                String key = request.getMarker() == null ? keys.ceiling(request.getPrefix()) : keys.higher(request.getMarker());
+                for (; key != null && key.startsWith(request.getPrefix()); key = keys.higher(key)) {
+                    int folder = request.getDelimiter() == null ? -1
+                        : key.indexOf(request.getDelimiter(), request.getPrefix().length());
+                    String commonPrefix = folder < 0 ? null : key.substring(0, folder + 1);
+                    List<String> commonPrefixes = listing.getCommonPrefixes();
+                    if (commonPrefix != null && !commonPrefixes.isEmpty()
+                        && commonPrefixes.get(commonPrefixes.size() - 1).equals(commonPrefix)) {
+                        continue;
+                    }
+                    if (listing.getObjectSummaries().size() + commonPrefixes.size() == maxKeys) {
+                        listing.setTruncated(true);
+                        listing.setNextMarker(keys.lower(key));
+                        break;
+                    }
+                    if (commonPrefix != null) {
+                        commonPrefixes.add(commonPrefix);
+                    } else {
+                        listing.getObjectSummaries().add(summary(key, 10000));
+                    }
+                }
+                return listing;
+            }
+        };
+        when(client.listObjects(any(ListObjectsRequest.class))).thenAnswer(answer);
+        when(client.listObjects(anyString(), anyString())).thenAnswer(answer);
+        when(client.listNextBatchOfObjects(any(ObjectListing.class))).thenAnswer(answer);
+        return requests;
+    }
+
+    private static ObjectListing listing(boolean truncated, S3ObjectSummary... summaries) {
+        ObjectListing listing = new ObjectListing();
+        listing.setTruncated(truncated);
+        listing.getObjectSummaries().addAll(Arrays.asList(summaries));
+        return listing;
+    }
+
+    private static S3ObjectSummary summary(String key, long lastModified) {
+        S3ObjectSummary summary = new S3ObjectSummary();
+        summary.setKey(key);
+        summary.setLastModified(new Date(lastModified));
+        return summary;
+    }
+}
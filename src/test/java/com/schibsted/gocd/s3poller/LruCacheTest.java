@@ -0,0 +1,47 @@
+package com.schibsted.gocd.s3poller;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LruCacheTest {
+
+    private long now = 0;
+
+    private LruCache<String, String> cache(int maxEntries, long ttlMillis) {
+        return new LruCache<String, String>(maxEntries, ttlMillis) {
+            @Override
+            protected long currentTimeMillis() {
+                return now;
+            }
+        };
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedTest() {
+        LruCache<String, String> cache = cache(2, 0);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.get("a");
+        cache.put("c", "3");
+
+        assertEquals("1", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void expiresAfterTtlTest() {
+        LruCache<String, String> cache = cache(10, 1000);
+        cache.put("a", "1");
+        now = 999;
+        assertEquals("1", cache.get("a"));
+        now = 1000;
+        assertNull(cache.get("a"));
+
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+}
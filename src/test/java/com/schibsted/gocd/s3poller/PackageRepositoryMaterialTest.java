@@ -0,0 +1,88 @@
+package com.schibsted.gocd.s3poller;
+
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.thoughtworks.go.plugin.api.request.DefaultGoPluginApiRequest;
+import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+
+import static com.schibsted.gocd.s3poller.JsonUtil.toJsonString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.mock;
+
+public class PackageRepositoryMaterialTest {
+
+    private static final int REQUESTS = 10000;
+    private static final long MAX_BYTES_PER_REQUEST = 512;
+
+    private final PackageRepositoryMaterial material = new PackageRepositoryMaterial(mock(AmazonS3Client.class));
+    private final PackageRepositoryConfigurationProvider configurationProvider = new PackageRepositoryConfigurationProvider();
+
+    @Test
+    public void servesTheConfigurationsTest() {
+        GoPluginApiResponse repository = material.handle(request(PackageRepositoryMaterial.REQUEST_REPOSITORY_CONFIGURATION));
+        GoPluginApiResponse pkg = material.handle(request(PackageRepositoryMaterial.REQUEST_PACKAGE_CONFIGURATION));
+
+        assertEquals(200, repository.responseCode());
+        assertEquals(toJsonString(configurationProvider.repositoryConfiguration().getPropertyMap()), repository.responseBody());
+        assertEquals(toJsonString(configurationProvider.packageConfiguration().getPropertyMap()), pkg.responseBody());
+        assertEquals(400, material.handle(request("no-such-request")).responseCode());
+        assertEquals(2, material.getMetrics().getHandledRequests());
+    }
+
+    // Configuration requests are served from the serialized configurations: a response object per request, no JSON
+    // and no log strings. Outside GoCD the plugin Logger prints to System.out, which is muted to measure the plugin.
+    @Test
+    public void configurationRequestsBarelyAllocateTest() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        DefaultGoPluginApiRequest repository = request(PackageRepositoryMaterial.REQUEST_REPOSITORY_CONFIGURATION);
+        DefaultGoPluginApiRequest pkg = request(PackageRepositoryMaterial.REQUEST_PACKAGE_CONFIGURATION);
+        long threadId = Thread.currentThread().getId();
+        PrintStream out = System.out;
+        long perRequest;
+        System.setOut(new MutedPrintStream());
+        try {
+            for (int i = 0; i < REQUESTS; i++) {
+                material.handle(repository);
+                material.handle(pkg);
+            }
+
+            long before = threads.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < REQUESTS; i++) {
+                material.handle(repository);
+                material.handle(pkg);
+            }
+            perRequest = (threads.getThreadAllocatedBytes(threadId) - before) / (2 * REQUESTS);
+        } finally {
+            System.setOut(out);
+        }
+
+        assertTrue(perRequest + " bytes per request", perRequest <= MAX_BYTES_PER_REQUEST);
+    }
+
+    private static class MutedPrintStream extends PrintStream {
+
+        private MutedPrintStream() {
+            super(new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+            });
+        }
+
+        @Override
+        public void println(String line) {
+        }
+    }
+
+    private static DefaultGoPluginApiRequest request(String requestName) {
+        return new DefaultGoPluginApiRequest(PackageRepositoryMaterial.EXTENSION, "1.0", requestName);
+    }
+}
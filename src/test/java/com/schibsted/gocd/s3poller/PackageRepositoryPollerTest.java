@@ -1,6 +1,8 @@
 package com.schibsted.gocd.s3poller;
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.Owner;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
 import com.schibsted.gocd.s3poller.message.*;
@@ -9,17 +11,26 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Answers;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 
 import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -175,6 +186,227 @@ public class PackageRepositoryPollerTest {
         assertNull(prm);
     }
 
+    @Test
+    public void getLatestRevisionStoresListingCursorTest() throws MalformedURLException {
+
+        when(client.listObjects(anyString(), anyString()).getObjectSummaries()).thenReturn(
+                getObjectsInBucket(new Date(10000), new Date(50000), new Date(30000))
+        );
+        when(client.getUrl(anyString(), anyString())).thenReturn(new URL("http://example.domain/path/to/file.zip"));
+        pmp.addPackageMaterialProperty(
+                Constants.S3_BUCKET,
+                new PackageMaterialProperty().withValue("bucket"));
+        pmp.addPackageMaterialProperty(
+                Constants.S3_PATH,
+                new PackageMaterialProperty().withValue("path"));
+        PackageRevisionMessage prm = prp.getLatestRevision(pmp, pmp);
+        assertEquals("path/key-1", prm.getDataFor(Constants.DATA_LATEST_KEY));
+        assertEquals("50000", prm.getDataFor(Constants.DATA_LAST_MODIFIED));
+        assertEquals("path/key-2", prm.getDataFor(Constants.DATA_MARKER));
+    }
+
+    @Test
+    public void getLatestRevisionSinceListsAfterCursorTest() throws MalformedURLException {
+
+        when(client.listObjects(any(ListObjectsRequest.class)).getObjectSummaries()).thenReturn(
+                getObjectsInBucket(new Date(60000))
+        );
+        when(client.getUrl(anyString(), anyString())).thenReturn(new URL("http://example.domain/path/to/file.zip"));
+        pmp.addPackageMaterialProperty(
+                Constants.S3_BUCKET,
+                new PackageMaterialProperty().withValue("bucket"));
+        pmp.addPackageMaterialProperty(
+                Constants.S3_PATH,
+                new PackageMaterialProperty().withValue("path"));
+        pmp.addPackageMaterialProperty(
+                Constants.KEY_ORDER,
+                new PackageMaterialProperty().withValue(Constants.KEY_ORDER_LEXICAL));
+        PackageRevisionMessage prevPrm = new PackageRevisionMessage("1", new Date(50000), "username", "comment", "url");
+        new ListingCursor("path/key-1", "etag", 50000, "path/key-2").writeTo(prevPrm);
+
+        PackageRevisionMessage prm = prp.getLatestRevisionSince(pmp, pmp, prevPrm);
+
+        ArgumentCaptor<ListObjectsRequest> request = ArgumentCaptor.forClass(ListObjectsRequest.class);
+        verify(client, atLeastOnce()).listObjects(request.capture());
+        assertEquals("path/key-2", request.getValue().getMarker());
+        verify(client, never()).listObjects(anyString(), anyString());
+        assertEquals(new Date(60000), prm.getTimestamp());
+    }
+
+    @Test
+    public void getLatestRevisionIsCachedTest() throws MalformedURLException {
+
+        when(client.listObjects(anyString(), anyString()).getObjectSummaries()).thenReturn(
+                getObjectsInBucket(new Date(10000), new Date(50000))
+        );
+        when(client.getUrl(anyString(), anyString())).thenReturn(new URL("http://example.domain/path/to/file.zip"));
+        pmp.addPackageMaterialProperty(
+                Constants.S3_BUCKET,
+                new PackageMaterialProperty().withValue("bucket"));
+        pmp.addPackageMaterialProperty(
+                Constants.S3_PATH,
+                new PackageMaterialProperty().withValue("path"));
+        PackageRevisionMessage first = prp.getLatestRevision(pmp, pmp);
+        PackageRevisionMessage second = prp.getLatestRevision(pmp, pmp);
+        assertTrue(prp.checkConnectionToPackage(pmp, pmp).success());
+
+        assertEquals(first, second);
+        verify(client, times(1)).listObjects("bucket", "path");
+        verify(client, times(1)).getObjectMetadata("bucket", "path/key-1");
+    }
+
+    @Test
+    public void getLatestRevisionReusesMetadataOfUnchangedObjectTest() throws MalformedURLException {
+
+        List<S3ObjectSummary> objects = getObjectsInBucket(new Date(10000), new Date(50000));
+        objects.get(1).setETag("etag");
+        when(client.listObjects(anyString(), anyString()).getObjectSummaries()).thenReturn(objects);
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.addUserMetadata("version", "1.0");
+        when(client.getObjectMetadata("bucket", "path/key-1")).thenReturn(metadata);
+        when(client.getUrl(anyString(), anyString())).thenReturn(new URL("http://example.domain/path/to/file.zip"));
+        System.setProperty(PluginSettings.CACHE_MAX_ENTRIES, "0");
+        try {
+            prp = new PackageRepositoryPoller(prcp, client);
+        } finally {
+            System.clearProperty(PluginSettings.CACHE_MAX_ENTRIES);
+        }
+        pmp.addPackageMaterialProperty(
+                Constants.S3_BUCKET,
+                new PackageMaterialProperty().withValue("bucket"));
+        pmp.addPackageMaterialProperty(
+                Constants.S3_PATH,
+                new PackageMaterialProperty().withValue("path"));
+        assertEquals("1.0", prp.getLatestRevision(pmp, pmp).getRevision());
+        assertEquals("1.0", prp.getLatestRevision(pmp, pmp).getRevision());
+
+        verify(client, times(1)).getObjectMetadata("bucket", "path/key-1");
+    }
+
+    @Test
+    public void getLatestRevisionStartsFromTheRevisionIndexTest() throws Exception {
+
+        List<S3ObjectSummary> objects = getObjectsInBucket(new Date(10000), new Date(50000));
+        objects.get(1).setETag("etag");
+        when(client.listObjects(anyString(), anyString()).getObjectSummaries()).thenReturn(objects);
+        when(client.getUrl(anyString(), anyString())).thenReturn(new URL("http://example.domain/path/to/file.zip"));
+        File file = File.createTempFile("revision-index", ".idx");
+        try {
+            RevisionIndex index = new RevisionIndex(file);
+            index.put(new S3Location("bucket", "path"),
+                new RevisionIndex.Entry("path/key-1", "etag", 50000, "path/key-1", new RevisionMetadata("1.0", null, null)));
+            index.flush();
+            System.setProperty(PluginSettings.INDEX_FILE, file.getPath());
+            try {
+                prp = new PackageRepositoryPoller(prcp, client);
+            } finally {
+                System.clearProperty(PluginSettings.INDEX_FILE);
+            }
+            pmp.addPackageMaterialProperty(
+                    Constants.S3_BUCKET,
+                    new PackageMaterialProperty().withValue("bucket"));
+            pmp.addPackageMaterialProperty(
+                    Constants.S3_PATH,
+                    new PackageMaterialProperty().withValue("path"));
+
+            assertEquals("1.0", prp.getLatestRevision(pmp, pmp).getRevision());
+            verify(client, never()).getObjectMetadata(anyString(), anyString());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void getLatestRevisionListsSiblingPackagesOnceTest() throws MalformedURLException {
+
+        List<S3ObjectSummary> objects = new ArrayList<S3ObjectSummary>();
+        objects.add(object("releases/a/1", new Date(10000)));
+        objects.add(object("releases/a/2", new Date(30000)));
+        objects.add(object("releases/b/1", new Date(50000)));
+        objects.add(object("releases/b/2", new Date(20000)));
+        when(client.listObjects(eq("bucket"), eq("releases/a/")).getObjectSummaries()).thenReturn(objects.subList(0, 2));
+        when(client.listObjects(eq("bucket"), eq("releases/")).getObjectSummaries()).thenReturn(objects);
+        when(client.getUrl(anyString(), anyString())).thenReturn(new URL("http://example.domain/path/to/file.zip"));
+        pmp.addPackageMaterialProperty(
+                Constants.S3_BUCKET,
+                new PackageMaterialProperty().withValue("bucket"));
+        PackageMaterialProperties a = new PackageMaterialProperties();
+        a.addPackageMaterialProperty(Constants.S3_PATH, new PackageMaterialProperty().withValue("releases/a/"));
+        PackageMaterialProperties b = new PackageMaterialProperties();
+        b.addPackageMaterialProperty(Constants.S3_PATH, new PackageMaterialProperty().withValue("releases/b/"));
+
+        assertTrue(prp.getLatestRevision(a, pmp).getRevisionComment().contains("releases/a/2"));
+        assertTrue(prp.getLatestRevision(b, pmp).getRevisionComment().contains("releases/b/1"));
+
+        verify(client, times(1)).listObjects("bucket", "releases/");
+        verify(client, never()).listObjects("bucket", "releases/b/");
+    }
+
+    @Test
+    public void getLatestRevisionFromKeyPatternSkipsMetadataTest() throws MalformedURLException {
+
+        when(client.listObjects(anyString(), anyString()).getObjectSummaries()).thenReturn(Arrays.asList(
+                object("path/app-1.0-abc1234.tgz", new Date(10000)), object("path/app-1.1-def5678.tgz", new Date(50000))));
+        when(client.getUrl(anyString(), anyString())).thenReturn(new URL("http://example.domain/path/to/file.zip"));
+        pmp.addPackageMaterialProperty(
+                Constants.S3_BUCKET,
+                new PackageMaterialProperty().withValue("bucket"));
+        pmp.addPackageMaterialProperty(
+                Constants.S3_PATH,
+                new PackageMaterialProperty().withValue("path"));
+        pmp.addPackageMaterialProperty(
+                Constants.REVISION_SOURCE,
+                new PackageMaterialProperty().withValue("KEY"));
+        pmp.addPackageMaterialProperty(
+                Constants.REVISION_PATTERN,
+                new PackageMaterialProperty().withValue("app-(?<version>[^-]+)-(?<sha>[0-9a-f]+)\\.tgz"));
+
+        PackageRevisionMessage prm = prp.getLatestRevision(pmp, pmp);
+
+        assertEquals("1.1", prm.getRevision());
+        assertTrue(prm.getRevisionComment().contains("for SHA def5678"));
+        verify(client, never()).getObjectMetadata(anyString(), anyString());
+    }
+
+    @Test
+    public void getLatestRevisionPollsPackagesWithOtherOptionsApartTest() throws MalformedURLException {
+
+        when(client.listObjects(anyString(), anyString()).getObjectSummaries()).thenReturn(Arrays.asList(
+                object("path/app-1.0-abc1234.tgz", new Date(10000)), object("path/app-1.1-def5678.tgz", new Date(50000))));
+        when(client.getUrl(anyString(), anyString())).thenReturn(new URL("http://example.domain/path/to/file.zip"));
+        pmp.addPackageMaterialProperty(
+                Constants.S3_BUCKET,
+                new PackageMaterialProperty().withValue("bucket"));
+        pmp.addPackageMaterialProperty(
+                Constants.S3_PATH,
+                new PackageMaterialProperty().withValue("path"));
+        PackageMaterialProperties keyed = new PackageMaterialProperties();
+        keyed.addPackageMaterialProperty(
+                Constants.S3_PATH,
+                new PackageMaterialProperty().withValue("path"));
+        keyed.addPackageMaterialProperty(
+                Constants.REVISION_SOURCE,
+                new PackageMaterialProperty().withValue("KEY"));
+        keyed.addPackageMaterialProperty(
+                Constants.REVISION_PATTERN,
+                new PackageMaterialProperty().withValue("app-(?<version>[^-]+)-(?<sha>[0-9a-f]+)\\.tgz"));
+
+        prp.getLatestRevision(pmp, pmp);
+        PackageRevisionMessage fromKey = prp.getLatestRevision(keyed, pmp);
+
+        assertEquals("1.1", fromKey.getRevision());
+        verify(client, times(2)).listObjects("bucket", "path");
+        verify(client, times(1)).getObjectMetadata("bucket", "path/app-1.1-def5678.tgz");
+    }
+
+    private S3ObjectSummary object(String key, Date lastModified) {
+        S3ObjectSummary s3Object = new S3ObjectSummary();
+        s3Object.setBucketName("bucket");
+        s3Object.setKey(key);
+        s3Object.setLastModified(lastModified);
+        return s3Object;
+    }
+
     private List<S3ObjectSummary> getObjectsInBucket(Integer count) {
         List<S3ObjectSummary> list = new ArrayList<S3ObjectSummary>();
         for (Integer i = 0; i < count; i++) {
@@ -187,7 +419,7 @@ public class PackageRepositoryPollerTest {
         List<S3ObjectSummary> list = new ArrayList<S3ObjectSummary>();
         for (Date date : dates) {
             S3ObjectSummary s3Object = new S3ObjectSummary();
-            s3Object.setKey("dummy-key");
+            s3Object.setKey("path/key-" + list.size());
             s3Object.setLastModified(date);
             s3Object.setOwner(new Owner("123", "username"));
             list.add(s3Object);
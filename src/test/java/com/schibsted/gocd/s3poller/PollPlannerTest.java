@@ -0,0 +1,128 @@
+package com.schibsted.gocd.s3poller;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PollPlannerTest {
+
+    private final S3Location location = new S3Location("bucket", "builds/");
+
+    @Test
+    public void learnsACursorForKeysSortedInUploadOrderTest() {
+        PollPlanner planner = new PollPlanner(5);
+
+        for (int build = 1; build <= PollPlanner.MIN_SORTED_LISTINGS; build++) {
+            assertNull(planner.cursorOf(location));
+            planner.observe(location, PollPlanner.Strategy.FULL, listing(3, key(build), build, key(build)));
+        }
+        RevisionIndex.Entry cursor = planner.cursorOf(location);
+
+        assertNotNull(cursor);
+        assertEquals(key(3), cursor.getKey());
+        assertEquals(key(3), cursor.getLastKey());
+    }
+
+    @Test
+    public void singlePageListingsStayCompleteTest() {
+        PollPlanner planner = new PollPlanner(5);
+
+        for (int build = 1; build <= 10; build++) {
+            planner.observe(location, PollPlanner.Strategy.FULL, listing(1, key(build), build, key(build)));
+        }
+
+        assertNull(planner.cursorOf(location));
+    }
+
+    @Test
+    public void unpaddedNumbersNeverGetACursorTest() {
+        PollPlanner planner = new PollPlanner(5);
+
+        for (int build = 1; build <= 9; build++) {
+            planner.observe(location, PollPlanner.Strategy.FULL, listing(3, "builds/" + build, build, "builds/" + build));
+        }
+
+        assertNull(planner.cursorOf(location));
+        assertEquals(PollPlanner.KeyOrder.PADDED, PollPlanner.orderOf("builds/0041/app.zip", "builds/0042/app.zip"));
+        assertEquals(PollPlanner.KeyOrder.PADDED, PollPlanner.orderOf("app-20170131.zip", "app-20170201.zip"));
+        assertEquals(PollPlanner.KeyOrder.AMBIGUOUS, PollPlanner.orderOf("builds/41/app.zip", "builds/42/app.zip"));
+        assertEquals(PollPlanner.KeyOrder.UNORDERED, PollPlanner.orderOf("builds/9/app.zip", "builds/10/app.zip"));
+        assertEquals(PollPlanner.KeyOrder.UNORDERED, PollPlanner.orderOf("builds/a/app.zip", "builds/b/app.zip"));
+    }
+
+    @Test
+    public void learnedCursorsAreOffByDefaultTest() {
+        PollPlanner planner = new PollPlanner(0, 5);
+
+        for (int build = 1; build <= 10; build++) {
+            planner.observe(location, PollPlanner.Strategy.FULL, listing(3, key(build), build, key(build)));
+        }
+
+        assertNull(planner.cursorOf(location));
+        assertEquals("polls=10 pages/poll=3.0 changes=9 keys=3001", planner.report(location));
+    }
+
+    @Test
+    public void listsCompletelyAfterVerifyPollsCursorPollsTest() {
+        PollPlanner planner = new PollPlanner(0, 3);
+        assertFalse(planner.isDueForCompleteListing(location));
+
+        planner.observe(location, PollPlanner.Strategy.CURSOR, listing(1, key(1), 1, key(1)));
+        planner.observe(location, PollPlanner.Strategy.PROBE, listing(2, key(1), 1, key(1)));
+        assertFalse(planner.isDueForCompleteListing(location));
+        planner.observe(location, PollPlanner.Strategy.CURSOR, listing(1, key(2), 2, key(2)));
+        assertTrue(planner.isDueForCompleteListing(location));
+        planner.observe(location, PollPlanner.Strategy.FULL, listing(3, key(2), 2, key(2)));
+        assertFalse(planner.isDueForCompleteListing(location));
+    }
+
+    @Test
+    public void prefersListingPathsOfASinglePageTest() {
+        PollPlanner planner = new PollPlanner(5);
+        assertFalse(planner.fitsOnePage(location));
+
+        planner.observe(location, PollPlanner.Strategy.PROBE, listing(1, key(1), 1, key(1)));
+        assertTrue(planner.fitsOnePage(location));
+
+        planner.observe(location, PollPlanner.Strategy.FULL, listing(2, key(2), 2, key(2)));
+        assertFalse(planner.fitsOnePage(location));
+    }
+
+    @Test
+    public void verifiesTheCursorAndFallsBackForGoodTest() {
+        PollPlanner planner = new PollPlanner(3);
+        for (int build = 1; build <= PollPlanner.MIN_SORTED_LISTINGS; build++) {
+            planner.observe(location, PollPlanner.Strategy.FULL, listing(3, key(build), build, key(build)));
+        }
+
+        planner.observe(location, PollPlanner.Strategy.CURSOR, listing(1, key(4), 4, key(4)));
+        assertNotNull(planner.cursorOf(location));
+        planner.observe(location, PollPlanner.Strategy.CURSOR, listing(1, key(4), 4, key(4)));
+        assertNull(planner.cursorOf(location));
+
+        // An older key was uploaded again, only the complete listing sees it.
+        planner.observe(location, PollPlanner.Strategy.FULL, listing(3, key(2), 5, key(4)));
+        for (int build = 6; build <= 10; build++) {
+            planner.observe(location, PollPlanner.Strategy.FULL, listing(3, key(build), build, key(build)));
+        }
+        assertNull(planner.cursorOf(location));
+        assertEquals("polls=11 pages/poll=2.6 changes=9 keys=3001", planner.report(location));
+    }
+
+    private static String key(int build) {
+        return String.format("builds/%03d", build);
+    }
+
+    private static ListingResult listing(int pages, String latestKey, long lastModified, String lastKey) {
+        ListingResult result = new ListingResult();
+        result.add("bucket", latestKey, "etag", lastModified);
+        for (int page = 0; page < pages; page++) {
+            result.addPage(1000, lastKey);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,136 @@
+package com.schibsted.gocd.s3poller;
+
+import com.schibsted.gocd.s3poller.fake.FakeBucket;
+import com.schibsted.gocd.s3poller.fake.FakeS3Server;
+import com.thoughtworks.go.plugin.api.request.DefaultGoPluginApiRequest;
+import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+// End to end: many package materials polled at once through PackageRepositoryMaterial.handle, with the real SDK client
+// talking to a local S3 stand-in. Only run by the pollstorm profile, scale it up with e.g.
+// -Dpollstorm.packages=1000 -Dpollstorm.objects=20000 -Dpollstorm.latencyMillis=30 -Dpollstorm.slowDownEvery=50
+// The throughput and latencies of both rounds are written to pollstorm.resultFile.
+public class PollStormTest {
+
+    static final int PACKAGES = Integer.getInteger("pollstorm.packages", 200);
+    static final int OBJECTS = Integer.getInteger("pollstorm.objects", 200);
+    static final int LATENCY_MILLIS = Integer.getInteger("pollstorm.latencyMillis", 0);
+    static final int SLOW_DOWN_EVERY = Integer.getInteger("pollstorm.slowDownEvery", 100);
+    static final int AGENTS = Integer.getInteger("pollstorm.threads", 50);
+    static final String RESULT_FILE = System.getProperty("pollstorm.resultFile", "target/pollstorm-result.txt");
+
+    FakeS3Server server;
+    PackageRepositoryMaterial material;
+    ExecutorService goServer;
+
+    @Before
+    public void setUp() throws Exception {
+        FakeBucket bucket = new FakeBucket("bucket");
+        for (int i = 0; i < PACKAGES; i++) {
+            bucket.withKeys("package-" + i + "/app-", ".zip", OBJECTS);
+        }
+        server = new FakeS3Server(bucket).withLatencyMillis(LATENCY_MILLIS).withSlowDownEvery(SLOW_DOWN_EVERY).start();
+        material = new PackageRepositoryMaterial(server.createClient());
+        goServer = Executors.newFixedThreadPool(AGENTS);
+    }
+
+    @After
+    public void tearDown() {
+        goServer.shutdownNow();
+        server.stop();
+    }
+
+    @Test
+    public void pollStormTest() throws Exception {
+        Round first = pollAll(PackageRepositoryMaterial.REQUEST_LATEST_PACKAGE_REVISION);
+        long requestsAfterFirst = server.getRequests();
+        Round second = pollAll(PackageRepositoryMaterial.REQUEST_LATEST_PACKAGE_REVISION);
+
+        writeResults(first.report("cold", requestsAfterFirst),
+            second.report("cached", server.getRequests() - requestsAfterFirst));
+        assertNull("the S3 stand-in failed", server.getFailure());
+        assertEquals("second round is answered from the listing cache", requestsAfterFirst, server.getRequests());
+        assertTrue("SlowDown responses were retried", SLOW_DOWN_EVERY == 0 || server.getSlowDowns() > 0);
+        assertEquals(2 * PACKAGES, material.getMetrics().getHandledRequests());
+        assertEquals((long) PACKAGES * OBJECTS, material.getMetrics().getKeysScanned());
+    }
+
+    private Round pollAll(final String requestName) throws Exception {
+        List<Future<Long>> polls = new ArrayList<Future<Long>>();
+        long started = System.nanoTime();
+        for (int i = 0; i < PACKAGES; i++) {
+            final String body = "{\"repository-configuration\":{\"S3_BUCKET\":{\"value\":\"bucket\"}}," +
+                "\"package-configuration\":{\"S3_PATH\":{\"value\":\"package-" + i + "/\"}}}";
+            final String latestKey = String.format("package-%d/app-%07d.zip", i, OBJECTS);
+            polls.add(goServer.submit(new Callable<Long>() {
+                @Override
+                public Long call() {
+                    DefaultGoPluginApiRequest request = new DefaultGoPluginApiRequest(PackageRepositoryMaterial.EXTENSION, "1.0", requestName);
+                    request.setRequestBody(body);
+                    long started = System.nanoTime();
+                    GoPluginApiResponse response = material.handle(request);
+                    long elapsed = System.nanoTime() - started;
+                    assertEquals(200, response.responseCode());
+                    assertTrue(response.responseBody(), response.responseBody().contains("\"revision\":\"" + latestKey + "\""));
+                    return elapsed;
+                }
+            }));
+        }
+        long[] latencies = new long[polls.size()];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = polls.get(i).get();
+        }
+        return new Round(latencies, System.nanoTime() - started);
+    }
+
+    private static void writeResults(String... lines) throws IOException {
+        Writer out = new OutputStreamWriter(new FileOutputStream(RESULT_FILE), "UTF-8");
+        try {
+            for (String line : lines) {
+                out.write(line);
+                out.write('\n');
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private class Round {
+
+        private final long[] latencies;
+        private final long elapsedNanos;
+
+        private Round(long[] latencies, long elapsedNanos) {
+            this.latencies = latencies;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        // Throughput is the polls over the round's wall-clock time, from the first submitted to the last answered.
+        private String report(String round, long s3Requests) {
+            Arrays.sort(latencies);
+            return String.format("poll storm %s: %d packages, %.0f polls/s, p50 %.1f ms, p99 %.1f ms, " +
+                    "%d S3 requests (%d listings, %d HEADs, %d SlowDowns so far)",
+                round, latencies.length, latencies.length / (elapsedNanos / 1e9), latencies[latencies.length / 2] / 1e6,
+                latencies[(int) Math.ceil(latencies.length * 0.99) - 1] / 1e6, s3Requests, server.getListRequests(),
+                server.getHeadRequests(), server.getSlowDowns());
+        }
+    }
+}
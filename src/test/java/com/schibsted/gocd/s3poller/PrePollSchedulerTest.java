@@ -0,0 +1,108 @@
+package com.schibsted.gocd.s3poller;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PrePollSchedulerTest {
+
+    private final S3Location location = new S3Location("bucket", "path/");
+    private PrePollScheduler scheduler;
+
+    @After
+    public void tearDown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void backsOffWhileUnchangedTest() {
+        scheduler = new PrePollScheduler(1, 1000, 4000, 60000);
+
+        assertEquals(1500, scheduler.nextInterval(1000, false));
+        assertEquals(3375, scheduler.nextInterval(2250, false));
+        assertEquals(4000, scheduler.nextInterval(3375, false));
+        assertEquals(1000, scheduler.nextInterval(4000, true));
+        for (int i = 0; i < 100; i++) {
+            long delay = scheduler.jittered(1000);
+            assertTrue(String.valueOf(delay), delay >= 800 && delay <= 1200);
+        }
+    }
+
+    @Test
+    public void detectsChangedRevisionsTest() {
+        assertFalse(PrePollScheduler.changed(revision("a", "1", 1), revision("a", "1", 1)));
+        assertTrue(PrePollScheduler.changed(revision("a", "1", 1), revision("b", "1", 1)));
+        assertTrue(PrePollScheduler.changed(revision("a", "1", 1), revision("a", "2", 1)));
+        assertTrue(PrePollScheduler.changed(revision("a", "1", 1), revision("a", "1", 2)));
+        assertTrue(PrePollScheduler.changed(null, revision("a", "1", 1)));
+    }
+
+    @Test
+    public void servesTheLatestPrepolledRevisionTest() throws Exception {
+        scheduler = new PrePollScheduler(1, 10, 10, 60000);
+        final AtomicInteger polls = new AtomicInteger();
+        final CountDownLatch polledTwice = new CountDownLatch(2);
+        final LatestRevision newer = revision("b", "2", 2);
+
+        scheduler.track(location, revision("a", "1", 1), new Callable<Promise<LatestRevision>>() {
+            @Override
+            public Promise<LatestRevision> call() {
+                polls.incrementAndGet();
+                polledTwice.countDown();
+                return Promise.of(newer);
+            }
+        });
+
+        assertTrue(polledTwice.await(5, TimeUnit.SECONDS));
+        assertSame(newer, scheduler.warm(location));
+        assertNull(scheduler.warm(new S3Location("bucket", "other/")));
+    }
+
+    @Test
+    public void dropsIdlePathsTest() throws Exception {
+        final long[] now = {0};
+        scheduler = new PrePollScheduler(1, 10, 10, 1000) {
+            @Override
+            protected long currentTimeMillis() {
+                return now[0];
+            }
+        };
+        final AtomicInteger polls = new AtomicInteger();
+        scheduler.track(location, revision("a", "1", 1), new Callable<Promise<LatestRevision>>() {
+            @Override
+            public Promise<LatestRevision> call() {
+                polls.incrementAndGet();
+                return Promise.of(null);
+            }
+        });
+        now[0] = 1001;
+
+        for (int i = 0; i < 500 && scheduler.size() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, scheduler.size());
+        assertEquals(0, polls.get());
+    }
+
+    private static LatestRevision revision(String key, String eTag, long lastModified) {
+        S3ObjectSummary summary = new S3ObjectSummary();
+        summary.setKey(key);
+        summary.setETag(eTag);
+        summary.setLastModified(new Date(lastModified));
+        return new LatestRevision(summary, key, null);
+    }
+}
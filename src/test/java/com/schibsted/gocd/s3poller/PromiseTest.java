@@ -0,0 +1,61 @@
+package com.schibsted.gocd.s3poller;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PromiseTest {
+
+    @Test
+    public void callbacksRunOnceWithTheFirstOutcomeTest() {
+        final List<String> outcomes = new ArrayList<String>();
+        Promise<String> promise = new Promise<String>();
+        promise.whenDone(recorder(outcomes));
+
+        promise.complete("first");
+        promise.complete("second");
+        promise.fail(new IllegalStateException("late"));
+        promise.whenDone(recorder(outcomes));
+
+        assertTrue(promise.isDone());
+        assertEquals("first", promise.get());
+        assertEquals(asList("first", "first"), outcomes);
+    }
+
+    @Test
+    public void failuresAreForwardedAndRethrownTest() {
+        final List<String> outcomes = new ArrayList<String>();
+        Promise<String> forwarded = new Promise<String>();
+        forwarded.whenDone(recorder(outcomes));
+
+        Promise.<String>failed(new IllegalStateException("throttled")).forwardTo(forwarded);
+
+        assertEquals(asList("failed: throttled"), outcomes);
+        try {
+            forwarded.get();
+            fail("the failure was swallowed");
+        } catch (IllegalStateException ex) {
+            assertEquals("throttled", ex.getMessage());
+        }
+    }
+
+    private static Promise.Callback<String> recorder(final List<String> outcomes) {
+        return new Promise.Callback<String>() {
+            @Override
+            public void completed(String value) {
+                outcomes.add(value);
+            }
+
+            @Override
+            public void failed(RuntimeException failure) {
+                outcomes.add("failed: " + failure.getMessage());
+            }
+        };
+    }
+}
@@ -0,0 +1,105 @@
+package com.schibsted.gocd.s3poller;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RevisionIndexTest {
+
+    private final S3Location location = new S3Location("bucket", "path/");
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("revision-index", ".idx");
+        assertTrue(file.delete());
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+    }
+
+    @Test
+    public void roundTripTest() throws IOException {
+        RevisionIndex index = new RevisionIndex(file);
+        index.put(location, new RevisionIndex.Entry("path/b", "etag", 1000L, "path/c", new RevisionMetadata("1.0", "abc", null)));
+        index.put(new S3Location("bucket", "other/"), new RevisionIndex.Entry("other/a", null, 2000L, null, new RevisionMetadata(null, null, "http://build")));
+        index.put(new S3Location("bucket", "other/", "depth=1;"), new RevisionIndex.Entry("other/x/a", null, 3000L, null, new RevisionMetadata(null, null, null)));
+        index.flush();
+
+        RevisionIndex loaded = RevisionIndex.load(file);
+
+        assertEquals(3, loaded.size());
+        RevisionIndex.Entry entry = loaded.get(location);
+        assertEquals("path/b", entry.getKey());
+        assertEquals("etag", entry.getETag());
+        assertEquals(1000L, entry.getLastModified());
+        assertEquals("path/c", entry.getLastKey());
+        assertEquals("1.0", entry.getMetadata().getVersion());
+        assertEquals("abc", entry.getMetadata().getSha());
+        assertNull(entry.getMetadata().getBuildUrl());
+        assertEquals("http://build", loaded.get(new S3Location("bucket", "other/")).getMetadata().getBuildUrl());
+        assertEquals("other/x/a", loaded.get(new S3Location("bucket", "other/", "depth=1;")).getKey());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void writesOnlyWhenChangedTest() throws IOException {
+        RevisionIndex index = new RevisionIndex(file);
+        index.flush();
+        assertFalse(file.exists());
+
+        index.put(location, new RevisionIndex.Entry("path/b", "etag", 1000L, "path/b", new RevisionMetadata("1.0", null, null)));
+        index.flush();
+        assertTrue(file.delete());
+        index.put(location, new RevisionIndex.Entry("path/b", "etag", 1000L, "path/b", new RevisionMetadata("1.0", null, null)));
+        index.flush();
+        assertFalse(file.exists());
+        index.put(location, new RevisionIndex.Entry("path/b", "etag", 1000L, "path/b", new RevisionMetadata("1.0", "abc", null)));
+        index.flush();
+        assertTrue(file.exists());
+    }
+
+    @Test
+    public void ignoresCorruptFileTest() throws IOException {
+        RevisionIndex index = new RevisionIndex(file);
+        index.put(location, new RevisionIndex.Entry("path/b", "etag", 1000L, "path/b", new RevisionMetadata("1.0", null, null)));
+        index.flush();
+        RandomAccessFile corrupt = new RandomAccessFile(file, "rw");
+        try {
+            corrupt.seek(20);
+            corrupt.write(corrupt.read() ^ 1);
+        } finally {
+            corrupt.close();
+        }
+
+        assertEquals(0, RevisionIndex.load(file).size());
+    }
+
+    @Test
+    public void ignoresOtherVersionsTest() throws IOException {
+        RevisionIndex index = new RevisionIndex(file);
+        index.put(location, new RevisionIndex.Entry("path/b", "etag", 1000L, "path/b", new RevisionMetadata("1.0", null, null)));
+        index.flush();
+        RandomAccessFile other = new RandomAccessFile(file, "rw");
+        try {
+            other.seek(4);
+            other.writeInt(RevisionIndex.VERSION + 1);
+        } finally {
+            other.close();
+        }
+
+        assertEquals(0, RevisionIndex.load(file).size());
+    }
+}
@@ -0,0 +1,57 @@
+package com.schibsted.gocd.s3poller;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RevisionSourceTest {
+
+    @Test
+    public void namedGroupsAreNumberedLikeJavaDoesTest() {
+        Map<String, Integer> named = new HashMap<String, Integer>();
+        Matcher matcher = RevisionSource.compileNamed(
+            "(?:x)?(a)\\((?<version>[(]\\d+)(?=-)-(?<sha>[0-9a-f]+(\\d)?)", named).matcher("a((12-ff");
+
+        assertTrue(matcher.find());
+        assertEquals(Integer.valueOf(2), named.get("version"));
+        assertEquals(Integer.valueOf(3), named.get("sha"));
+        assertEquals("(12", matcher.group(2));
+        assertEquals("ff", matcher.group(3));
+    }
+
+    @Test
+    public void revisionIsReadFromTheKeyTest() {
+        RevisionSource source = RevisionSource.of("key", "app-(?<version>[^-]+)-(?<sha>[0-9a-f]{7,40})\\.tgz");
+
+        RevisionMetadata revision = source.fromListing("releases/app-1.4.2-3f2a9c1.tgz", "\"etag\"");
+
+        assertEquals("1.4.2", revision.getVersion());
+        assertEquals("3f2a9c1", revision.getSha());
+        assertNull(revision.getBuildUrl());
+        assertNull(source.fromListing("releases/app-1.4.2.tgz", "\"etag\""));
+        assertSame(source, RevisionSource.of("key", "app-(?<version>[^-]+)-(?<sha>[0-9a-f]{7,40})\\.tgz"));
+    }
+
+    @Test
+    public void revisionIsTheETagTest() {
+        RevisionSource source = RevisionSource.of("ETAG", null);
+
+        assertEquals("d41d8cd98f00b204e9800998ecf8427e",
+            source.fromListing("path/app.zip", "\"d41d8cd98f00b204e9800998ecf8427e\"").getVersion());
+        assertNull(source.fromListing("path/app.zip", null));
+        assertNull(RevisionSource.METADATA.fromListing("path/app.zip", "etag"));
+        assertSame(RevisionSource.METADATA, RevisionSource.of(null, null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void keyPatternNeedsAVersionGroupTest() {
+        RevisionSource.of("KEY", "app-(?<sha>[0-9a-f]+)\\.tgz");
+    }
+}
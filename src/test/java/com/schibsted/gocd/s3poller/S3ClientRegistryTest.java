@@ -0,0 +1,83 @@
+package com.schibsted.gocd.s3poller;
+
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class S3ClientRegistryTest {
+
+    private AmazonS3Client defaultClient;
+    private List<String> created;
+    private S3ClientRegistry clients;
+
+    @Before
+    public void setUp() {
+        defaultClient = mock(AmazonS3Client.class);
+        created = new ArrayList<String>();
+        clients = new S3ClientRegistry(defaultClient, null) {
+            @Override
+            protected AmazonS3Client createClient(String region, ClientOptions options) {
+                created.add(region + " " + options.getMaxConnections());
+                return mock(AmazonS3Client.class);
+            }
+        };
+    }
+
+    @Test
+    public void sharesOneClientPerRegionTest() {
+        when(defaultClient.getBucketLocation("eu-1")).thenReturn("EU");
+        when(defaultClient.getBucketLocation("eu-2")).thenReturn("eu-west-1");
+        when(defaultClient.getBucketLocation("us")).thenReturn("US");
+
+        AmazonS3Client eu = clients.clientFor("eu-1");
+
+        assertSame(eu, clients.clientFor("eu-2"));
+        assertSame(eu, clients.clientFor("eu-1"));
+        assertNotSame(eu, clients.clientFor("us"));
+        assertEquals(2, clients.regionalClientCount());
+        verify(defaultClient, times(1)).getBucketLocation("eu-1");
+    }
+
+    @Test
+    public void changedOptionsGetAClientOfTheirOwnTest() {
+        when(defaultClient.getBucketLocation("bucket")).thenReturn("eu-west-1");
+        ClientOptions more = new ClientOptions(512, 1000, 1000, true);
+
+        AmazonS3Client defaults = clients.configure("bucket", ClientOptions.DEFAULTS);
+        AmazonS3Client tuned = clients.configure("bucket", more);
+
+        assertNotSame(defaults, tuned);
+        assertSame(tuned, clients.clientFor("bucket"));
+        assertSame(tuned, clients.configure("bucket", new ClientOptions(512, 1000, 1000, true)));
+        assertEquals(asList("eu-west-1 " + ClientOptions.DEFAULT_MAX_CONNECTIONS, "eu-west-1 512"), created);
+    }
+
+    @Test
+    public void fallsBackToTheDefaultClientTest() {
+        when(defaultClient.getBucketLocation("bucket")).thenThrow(new AmazonS3Exception("Access Denied"));
+
+        assertSame(defaultClient, clients.clientFor("bucket"));
+        assertEquals(0, clients.regionalClientCount());
+    }
+
+    @Test
+    public void fixedRegistryNeverResolvesRegionsTest() {
+        S3ClientRegistry fixed = S3ClientRegistry.fixed(defaultClient);
+
+        assertSame(defaultClient, fixed.configure("bucket", new ClientOptions(1, 1, 1, false)));
+        verify(defaultClient, times(0)).getBucketLocation("bucket");
+    }
+}
@@ -0,0 +1,104 @@
+package com.schibsted.gocd.s3poller;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class S3RequestSchedulerTest {
+
+    @Test
+    public void recognisesThrottlingTest() {
+        assertTrue(S3RequestScheduler.isThrottling(error(503, "SlowDown")));
+        assertTrue(S3RequestScheduler.isThrottling(error(400, "SlowDown")));
+        assertTrue(S3RequestScheduler.isThrottling(error(400, "Throttling")));
+        assertFalse(S3RequestScheduler.isThrottling(error(404, "NoSuchBucket")));
+        assertFalse(S3RequestScheduler.isThrottling(new IllegalStateException()));
+    }
+
+    @Test
+    public void halvesTheRateWhenThrottledTest() {
+        S3RequestScheduler requests = scheduler(100, 0);
+
+        requests.acquire("bucket", S3RequestScheduler.Priority.POLL, "a/");
+        requests.release("bucket", error(503, "SlowDown"));
+        assertEquals(50, requests.rateOf("bucket"), 0.001);
+
+        for (int i = 0; i < 10; i++) {
+            requests.acquire("bucket", S3RequestScheduler.Priority.POLL, "a/");
+            requests.release("bucket", null);
+        }
+        assertEquals(60, requests.rateOf("bucket"), 0.001);
+        assertEquals(100, requests.rateOf("other"), 0.001);
+        assertEquals(1, requests.getThrottled());
+    }
+
+    @Test
+    public void countsThrottlingRetriesOfTheSdkTest() {
+        S3RequestScheduler requests = scheduler(0, 0);
+
+        requests.acquire("bucket", S3RequestScheduler.Priority.POLL, "a/");
+        assertTrue(requests.retryPolicy().getRetryCondition().shouldRetry(new ListObjectsRequest(), error(503, "SlowDown"), 0));
+        requests.release("bucket", null);
+        requests.retryPolicy().getRetryCondition().shouldRetry(new ListObjectsRequest(), error(503, "SlowDown"), 0);
+
+        assertEquals(1, requests.getThrottled());
+    }
+
+    @Test
+    public void servesInteractiveFirstThenFlowsInTurnTest() throws Exception {
+        final S3RequestScheduler requests = scheduler(20, TimeUnit.MILLISECONDS.toNanos(500));
+        requests.acquire("bucket", S3RequestScheduler.Priority.POLL, "a/");
+        requests.release("bucket", error(503, "SlowDown"));
+
+        final List<String> served = Collections.synchronizedList(new ArrayList<String>());
+        List<Thread> threads = new ArrayList<Thread>();
+        String[][] waiters = {{"POLL", "a/", "a1"}, {"POLL", "a/", "a2"}, {"POLL", "b/", "b1"}, {"INTERACTIVE", "", "check"}};
+        for (final String[] waiter : waiters) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    requests.acquire("bucket", S3RequestScheduler.Priority.valueOf(waiter[0]), waiter[1]);
+                    served.add(waiter[2]);
+                    requests.release("bucket", null);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+            while (requests.queued("bucket") < threads.size()) {
+                Thread.sleep(1);
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+
+        assertEquals(asList("check", "a1", "b1", "a2"), served);
+    }
+
+    private static S3RequestScheduler scheduler(double requestsPerSecond, final long backoffNanos) {
+        return new S3RequestScheduler(requestsPerSecond) {
+            @Override
+            long jitteredBackoffNanos(int consecutiveThrottles) {
+                return backoffNanos;
+            }
+        };
+    }
+
+    private static AmazonServiceException error(int status, String code) {
+        AmazonS3Exception ex = new AmazonS3Exception(code);
+        ex.setStatusCode(status);
+        ex.setErrorCode(code);
+        return ex;
+    }
+}
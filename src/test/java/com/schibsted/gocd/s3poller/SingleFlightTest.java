@@ -0,0 +1,71 @@
+package com.schibsted.gocd.s3poller;
+
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class SingleFlightTest {
+
+    @Test
+    public void concurrentCallsShareOneExecutionTest() throws Exception {
+        final SingleFlight<String, Integer> singleFlight = new SingleFlight<String, Integer>();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger executions = new AtomicInteger();
+        final Callable<Integer> poll = new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                executions.incrementAndGet();
+                started.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                return 42;
+            }
+        };
+        Callable<Integer> caller = new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return singleFlight.execute("bucket/path", poll);
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Integer> first = executor.submit(caller);
+            started.await(5, TimeUnit.SECONDS);
+            Future<Integer> second = executor.submit(caller);
+            while (singleFlight.getCoalesced() == 0) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            assertEquals(Integer.valueOf(42), first.get());
+            assertEquals(Integer.valueOf(42), second.get());
+            assertEquals(1, executions.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void nextCallRunsAgainAfterCompletionTest() {
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<String, Integer>();
+        final AtomicInteger executions = new AtomicInteger();
+        Callable<Integer> poll = new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return executions.incrementAndGet();
+            }
+        };
+
+        assertEquals(Integer.valueOf(1), singleFlight.execute("key", poll));
+        assertEquals(Integer.valueOf(2), singleFlight.execute("key", poll));
+    }
+}
@@ -0,0 +1,142 @@
+package com.schibsted.gocd.s3poller;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.internal.StaticCredentialsProvider;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StreamingListingPageSourceTest {
+
+    HttpServer server;
+    List<String> queries = new ArrayList<String>();
+    List<String> responses = new ArrayList<String>();
+    int status = 200;
+    long delayMillis;
+
+    S3ClientRegistry clients = S3ClientRegistry.fixed(null);
+    ListingEngine engine;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                queries.add(exchange.getRequestURI().getRawQuery());
+                assertTrue(exchange.getRequestHeaders().getFirst("Authorization").startsWith("AWS4-HMAC-SHA256"));
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                byte[] body = responses.remove(0).getBytes("UTF-8");
+                exchange.sendResponseHeaders(status, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        StreamingListingPageSource pages = new StreamingListingPageSource(
+            new StaticCredentialsProvider(new BasicAWSCredentials("access", "secret")), clients,
+            "http://127.0.0.1:" + server.getAddress().getPort());
+        engine = new ListingEngine(pages, Executors.newSingleThreadExecutor());
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void followsMarkersAndKeepsNewestObjectTest() {
+        responses.add(page(true, contents("path/a", "2015-07-01T10:00:00.000Z", "\"etag-a\""),
+            contents("path/b", "2015-07-03T10:00:00.000Z", "\"etag-b\"")));
+        responses.add(page(false, contents("path/c d", "2015-07-02T10:00:00.000Z", "\"etag-c\"")));
+
+        ListingResult result = engine.listAfter("bucket", "path/", null);
+
+        assertEquals("path/b", result.getLatest().getKey());
+        assertEquals("etag-b", result.getLatest().getETag());
+        assertEquals("bucket", result.getLatest().getBucketName());
+        assertEquals(Iso8601.parseMillis("2015-07-03T10:00:00.000Z"), result.getLatest().getLastModified().getTime());
+        assertEquals("path/c d", result.getLastKey());
+        assertEquals(3, result.getKeyCount());
+        assertEquals(2, result.getPageCount());
+        assertEquals("marker=path%2Fb&prefix=path%2F", queries.get(1));
+    }
+
+    @Test
+    public void greatestKeyIsKeptWhateverItsDateTest() {
+        responses.add(page(false, contents("path/a", "2015-07-03T10:00:00.000Z", "\"etag-a\""),
+            contents("path/b", "2015-07-01T10:00:00.000Z", "\"etag-b\"")));
+
+        ListingResult result = engine.listGreatest("bucket", "path/");
+
+        assertEquals("path/b", result.getLatest().getKey());
+        assertEquals(1, queries.size());
+    }
+
+    @Test
+    public void errorResponseIsThrownAsS3ExceptionTest() {
+        status = 403;
+        responses.add("<Error><Code>AccessDenied</Code><Message>Access Denied</Message></Error>");
+
+        try {
+            engine.list("bucket", "path/");
+            fail();
+        } catch (AmazonS3Exception ex) {
+            assertEquals(403, ex.getStatusCode());
+            assertEquals("AccessDenied", ex.getErrorCode());
+        }
+    }
+
+    @Test
+    public void slowResponseTimesOutWithTheBucketsSocketTimeoutTest() {
+        clients.configure("bucket", new ClientOptions(ClientOptions.DEFAULT_MAX_CONNECTIONS, 1000, 100, true));
+        delayMillis = 1000;
+        responses.add(page(false, contents("path/a", "2015-07-01T10:00:00.000Z", "\"etag-a\"")));
+
+        try {
+            engine.list("bucket", "path/");
+            fail();
+        } catch (AmazonClientException ex) {
+            assertTrue(ex.getCause() instanceof SocketTimeoutException);
+        }
+    }
+
+    private static String page(boolean truncated, String... contents) {
+        StringBuilder page = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>")
+            .append("<ListBucketResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">")
+            .append("<Name>bucket</Name><Prefix>path/</Prefix><MaxKeys>1000</MaxKeys>")
+            .append("<IsTruncated>").append(truncated).append("</IsTruncated>");
+        for (String content : contents) {
+            page.append(content);
+        }
+        return page.append("</ListBucketResult>").toString();
+    }
+
+    private static String contents(String key, String lastModified, String eTag) {
+        return "<Contents><Key>" + key + "</Key><LastModified>" + lastModified + "</LastModified><ETag>" +
+            eTag.replace("\"", "&quot;") + "</ETag><Size>1</Size><Owner><ID>owner</ID></Owner>" +
+            "<StorageClass>STANDARD</StorageClass></Contents>";
+    }
+}
@@ -0,0 +1,142 @@
+package com.schibsted.gocd.s3poller.events;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.DeleteMessageRequest;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import com.schibsted.gocd.s3poller.ListingResult;
+import com.schibsted.gocd.s3poller.S3Location;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SqsEventConsumerTest {
+
+    private static final String QUEUE_URL = "http://localhost:9324/queue/s3-events";
+
+    @Mock
+    AmazonSQS sqs;
+
+    S3EventIndex index;
+    SqsEventConsumer consumer;
+    S3Location location = new S3Location("bucket", "releases/");
+
+    @Before
+    public void setUp() {
+        index = new S3EventIndex();
+        index.register(location);
+        consumer = new SqsEventConsumer(sqs, QUEUE_URL, index);
+    }
+
+    @Test
+    public void indexIsEmptyUntilReconciledTest() {
+        receive(event("ObjectCreated:Put", "releases/app-2.tgz", "2015-07-01T10:00:00.000Z"));
+
+        consumer.poll(0);
+
+        assertNull(index.latest(location));
+    }
+
+    @Test
+    public void createdObjectsUpdateLatestTest() {
+        index.reconcile(location, listing("releases/app-1.tgz", 1000), 2000);
+        receive(
+            event("ObjectCreated:Put", "releases/app%2B2.tgz", "2015-07-01T10:00:00.000Z"),
+            event("ObjectCreated:Put", "other/app-3.tgz", "2015-07-01T11:00:00.000Z"));
+
+        assertEquals(2, consumer.poll(0));
+
+        assertEquals("releases/app+2.tgz", index.latest(location).getKey());
+        verify(sqs, times(2)).deleteMessage(any(DeleteMessageRequest.class));
+    }
+
+    @Test
+    public void nestedPathsAreAllUpdatedTest() {
+        S3Location nested = new S3Location("bucket", "releases/app/");
+        S3Location otherBucket = new S3Location("other", "releases/");
+        index.register(nested);
+        index.register(otherBucket);
+        index.reconcile(location, listing("releases/app-1.tgz", 1000), 2000);
+        index.reconcile(nested, listing("releases/app/1.tgz", 1000), 2000);
+        index.reconcile(otherBucket, listing("releases/app-1.tgz", 1000), 2000);
+        receive(event("ObjectCreated:Put", "releases/app/2.tgz", "2015-07-01T10:00:00.000Z"));
+
+        consumer.poll(0);
+
+        assertEquals("releases/app/2.tgz", index.latest(location).getKey());
+        assertEquals("releases/app/2.tgz", index.latest(nested).getKey());
+        assertEquals("releases/app-1.tgz", index.latest(otherBucket).getKey());
+    }
+
+    @Test
+    public void unreadableMessagesAreLeftOnTheQueueTest() {
+        receive("not json", event("ObjectCreated:Put", "releases/app-2.tgz", "2015-07-01T10:00:00.000Z"));
+
+        assertEquals(2, consumer.poll(0));
+
+        verify(sqs, never()).deleteMessage(new DeleteMessageRequest(QUEUE_URL, "handle-0"));
+        verify(sqs).deleteMessage(new DeleteMessageRequest(QUEUE_URL, "handle-1"));
+    }
+
+    @Test
+    public void removingLatestObjectRequiresListingTest() {
+        index.reconcile(location, listing("releases/app-1.tgz", 1000), 2000);
+        receive(event("ObjectRemoved:Delete", "releases/app-1.tgz", "2015-07-01T10:00:00.000Z"));
+
+        consumer.poll(0);
+
+        assertNull(index.latest(location));
+    }
+
+    @Test
+    public void snsWrappedEventsAreUnwrappedTest() {
+        String s3Event = event("ObjectCreated:Put", "releases/app-2.tgz", "2015-07-01T10:00:00.000Z");
+        String snsEnvelope = "{\"Type\":\"Notification\",\"Message\":\"" + s3Event.replace("\"", "\\\"") + "\"}";
+
+        S3EventNotification notification = S3EventNotification.parse(snsEnvelope).get(0);
+
+        assertEquals("releases/app-2.tgz", notification.getObject().getKey());
+        assertEquals("bucket", notification.getObject().getBucketName());
+        assertEquals(1435744800000L, notification.getObject().getLastModified().getTime());
+    }
+
+    private void receive(String... bodies) {
+        ReceiveMessageResult result = new ReceiveMessageResult();
+        for (String body : bodies) {
+            result.getMessages().add(new Message().withBody(body).withReceiptHandle("handle-" + result.getMessages().size()));
+        }
+        when(sqs.receiveMessage(any(ReceiveMessageRequest.class))).thenReturn(result);
+    }
+
+    private static String event(String eventName, String key, String eventTime) {
+        return "{\"Records\":[{\"eventVersion\":\"2.0\",\"eventSource\":\"aws:s3\",\"eventTime\":\"" + eventTime + "\"," +
+            "\"eventName\":\"" + eventName + "\",\"s3\":{\"bucket\":{\"name\":\"bucket\"}," +
+            "\"object\":{\"key\":\"" + key + "\",\"size\":1024,\"eTag\":\"d41d8cd98f00b204e9800998ecf8427e\"}}}]}";
+    }
+
+    private static ListingResult listing(String key, long lastModified) {
+        S3ObjectSummary summary = new S3ObjectSummary();
+        summary.setBucketName("bucket");
+        summary.setKey(key);
+        summary.setLastModified(new Date(lastModified));
+        ListingResult result = new ListingResult();
+        result.add(Arrays.asList(summary));
+        return result;
+    }
+}
@@ -0,0 +1,95 @@
+package com.schibsted.gocd.s3poller.fake;
+
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+// The objects of one bucket, listed with S3's paging, marker and delimiter semantics.
+public class FakeBucket {
+
+    private final String name;
+    private final NavigableMap<String, S3ObjectSummary> objects = new ConcurrentSkipListMap<String, S3ObjectSummary>();
+
+    public FakeBucket(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Keys <prefix>build-0000001/app.zip ... with increasing timestamps.
+    public FakeBucket withBuilds(String prefix, int count) {
+        return withKeys(prefix + "build-", "/app.zip", count);
+    }
+
+    // Keys <prefix>0000001<suffix> ... with increasing timestamps.
+    public FakeBucket withKeys(String prefix, String suffix, int count) {
+        for (int i = 1; i <= count; i++) {
+            put(String.format("%s%07d%s", prefix, i, suffix), 1436000000000L + i * 1000L);
+        }
+        return this;
+    }
+
+    public void put(String key, long lastModified) {
+        S3ObjectSummary summary = new S3ObjectSummary();
+        summary.setBucketName(name);
+        summary.setKey(key);
+        summary.setETag(Integer.toHexString(key.hashCode()));
+        summary.setSize(key.length());
+        summary.setStorageClass("STANDARD");
+        summary.setLastModified(new Date(lastModified));
+        objects.put(key, summary);
+    }
+
+    public S3ObjectSummary get(String key) {
+        return objects.get(key);
+    }
+
+    public ObjectListing list(String prefix, String marker, String delimiter, int maxKeys) {
+        prefix = prefix == null ? "" : prefix;
+        ObjectListing listing = new ObjectListing();
+        listing.setBucketName(name);
+        listing.setPrefix(prefix);
+        listing.setMarker(marker);
+        listing.setDelimiter(delimiter);
+        listing.setMaxKeys(maxKeys);
+        Map<String, S3ObjectSummary> tail = marker == null || marker.compareTo(prefix) < 0
+            ? objects.tailMap(prefix, true) : objects.tailMap(marker, false);
+        int count = 0;
+        String last = null;
+        for (Map.Entry<String, S3ObjectSummary> entry : tail.entrySet()) {
+            String key = entry.getKey();
+            if (!key.startsWith(prefix)) {
+                break;
+            }
+            if (delimiter != null && (rolledUp(last, key, delimiter) || rolledUp(marker, key, delimiter))) {
+                continue;
+            }
+            if (count == maxKeys) {
+                listing.setTruncated(true);
+                listing.setNextMarker(last);
+                break;
+            }
+            int split = delimiter == null ? -1 : key.indexOf(delimiter, prefix.length());
+            if (split >= 0) {
+                last = key.substring(0, split + delimiter.length());
+                listing.getCommonPrefixes().add(last);
+            } else {
+                last = key;
+                listing.getObjectSummaries().add(entry.getValue());
+            }
+            count++;
+        }
+        return listing;
+    }
+
+    // Keys under a common prefix that was already returned.
+    private static boolean rolledUp(String commonPrefix, String key, String delimiter) {
+        return commonPrefix != null && commonPrefix.endsWith(delimiter) && key.startsWith(commonPrefix);
+    }
+}
@@ -0,0 +1,378 @@
+package com.schibsted.gocd.s3poller.fake;
+
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.S3ClientOptions;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.text.SimpleDateFormat;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// S3 compatible stand-in for one bucket, serving path style requests over HTTP: GET Bucket (v1 listing), HEAD Bucket,
+// GET Bucket location and HEAD Object. Latency and 503 SlowDown responses can be injected.
+// HTTP/1.1 is served by hand: com.sun.net.httpserver capitalises header names, and the SDK only recognises user
+// metadata in lower case x-amz-meta- headers, as S3 sends them.
+public class FakeS3Server {
+
+    private static final String UTF_8 = "UTF-8";
+
+    private final FakeBucket bucket;
+    private int pageSize = 1000;
+    private long latencyMillis;
+    private int slowDownEvery;
+
+    private ServerSocket serverSocket;
+    private ExecutorService executor;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong listRequests = new AtomicLong();
+    private final AtomicLong headRequests = new AtomicLong();
+    private final AtomicLong slowDowns = new AtomicLong();
+    private final AtomicReference<IOException> failure = new AtomicReference<IOException>();
+
+    public FakeS3Server(FakeBucket bucket) {
+        this.bucket = bucket;
+    }
+
+    public FakeS3Server withPageSize(int pageSize) {
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    public FakeS3Server withLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+        return this;
+    }
+
+    // Every n-th request is answered with 503 SlowDown, 0 never.
+    public FakeS3Server withSlowDownEvery(int slowDownEvery) {
+        this.slowDownEvery = slowDownEvery;
+        return this;
+    }
+
+    public FakeS3Server start() throws IOException {
+        serverSocket = new ServerSocket(0, 512, InetAddress.getByName("127.0.0.1"));
+        executor = Executors.newCachedThreadPool();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        });
+        return this;
+    }
+
+    public void stop() {
+        try {
+            serverSocket.close();
+        } catch (IOException ignored) {
+        }
+        executor.shutdownNow();
+    }
+
+    public String getEndpoint() {
+        return "http://127.0.0.1:" + serverSocket.getLocalPort();
+    }
+
+    // A real SDK client, pointed at this server.
+    public AmazonS3Client createClient() {
+        AmazonS3Client client = new AmazonS3Client(new BasicAWSCredentials("access", "secret"));
+        client.setEndpoint(getEndpoint());
+        client.setS3ClientOptions(new S3ClientOptions().withPathStyleAccess(true));
+        return client;
+    }
+
+    // The first request it could not read or answer, other than the client closing the connection.
+    public IOException getFailure() {
+        return failure.get();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getListRequests() {
+        return listRequests.get();
+    }
+
+    public long getHeadRequests() {
+        return headRequests.get();
+    }
+
+    public long getSlowDowns() {
+        return slowDowns.get();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        connection(socket);
+                    }
+                });
+            } catch (IOException ex) {
+                // closed by stop()
+            }
+        }
+    }
+
+    // Serves requests of a kept alive connection until the client closes it.
+    private void connection(Socket socket) {
+        try {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            Exchange exchange;
+            while ((exchange = Exchange.read(in, out)) != null) {
+                serve(exchange);
+                out.flush();
+            }
+        } catch (SocketException ignored) {
+        } catch (IOException ex) {
+            failure.compareAndSet(null, ex);
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void serve(Exchange exchange) throws IOException {
+        long request = requests.incrementAndGet();
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (slowDownEvery > 0 && request % slowDownEvery == 0) {
+            slowDowns.incrementAndGet();
+            error(exchange, 503, "SlowDown", "Please reduce your request rate.");
+            return;
+        }
+
+        String path = exchange.rawPath;
+        int keyStart = path.indexOf('/', 1);
+        String bucketName = decode(keyStart < 0 ? path.substring(1) : path.substring(1, keyStart));
+        String key = keyStart < 0 ? "" : decode(path.substring(keyStart + 1));
+        Map<String, String> query = query(exchange.rawQuery);
+        if (!bucket.getName().equals(bucketName)) {
+            error(exchange, 404, "NoSuchBucket", "The specified bucket does not exist");
+        } else if (!key.isEmpty()) {
+            headObject(exchange, key);
+        } else if ("HEAD".equals(exchange.method)) {
+            exchange.respond(200, null);
+        } else if (query.containsKey("location")) {
+            xml(exchange, 200, "<LocationConstraint xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\"/>");
+        } else {
+            listObjects(exchange, query);
+        }
+    }
+
+    private void listObjects(Exchange exchange, Map<String, String> query) throws IOException {
+        listRequests.incrementAndGet();
+        int maxKeys = query.containsKey("max-keys") ? Math.min(Integer.parseInt(query.get("max-keys")), pageSize) : pageSize;
+        ObjectListing listing = bucket.list(query.get("prefix"), query.get("marker"), query.get("delimiter"), maxKeys);
+        boolean urlEncoded = "url".equals(query.get("encoding-type"));
+
+        StringBuilder xml = new StringBuilder("<ListBucketResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">");
+        element(xml, "Name", bucket.getName());
+        element(xml, "Prefix", encode(listing.getPrefix(), urlEncoded));
+        element(xml, "Marker", encode(listing.getMarker() == null ? "" : listing.getMarker(), urlEncoded));
+        element(xml, "MaxKeys", String.valueOf(maxKeys));
+        if (listing.getDelimiter() != null) {
+            element(xml, "Delimiter", encode(listing.getDelimiter(), urlEncoded));
+            if (listing.isTruncated()) {
+                element(xml, "NextMarker", encode(listing.getNextMarker(), urlEncoded));
+            }
+        }
+        if (urlEncoded) {
+            element(xml, "EncodingType", "url");
+        }
+        element(xml, "IsTruncated", String.valueOf(listing.isTruncated()));
+        SimpleDateFormat iso8601 = dateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        for (S3ObjectSummary summary : listing.getObjectSummaries()) {
+            xml.append("<Contents>");
+            element(xml, "Key", encode(summary.getKey(), urlEncoded));
+            element(xml, "LastModified", iso8601.format(summary.getLastModified()));
+            element(xml, "ETag", "\"" + summary.getETag() + "\"");
+            element(xml, "Size", String.valueOf(summary.getSize()));
+            xml.append("<Owner><ID>owner</ID><DisplayName>owner</DisplayName></Owner>");
+            element(xml, "StorageClass", summary.getStorageClass());
+            xml.append("</Contents>");
+        }
+        for (String commonPrefix : listing.getCommonPrefixes()) {
+            xml.append("<CommonPrefixes>");
+            element(xml, "Prefix", encode(commonPrefix, urlEncoded));
+            xml.append("</CommonPrefixes>");
+        }
+        xml.append("</ListBucketResult>");
+        xml(exchange, 200, xml.toString());
+    }
+
+    private void headObject(Exchange exchange, String key) throws IOException {
+        headRequests.incrementAndGet();
+        S3ObjectSummary summary = bucket.get(key);
+        if (summary == null) {
+            error(exchange, 404, "NoSuchKey", "The specified key does not exist.");
+            return;
+        }
+        exchange.responseHeaders.put("ETag", "\"" + summary.getETag() + "\"");
+        exchange.responseHeaders.put("Last-Modified", dateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'").format(summary.getLastModified()));
+        exchange.responseHeaders.put("x-amz-meta-version", key);
+        exchange.responseHeaders.put("x-amz-meta-sha", summary.getETag());
+        exchange.respond(200, null);
+    }
+
+    private static void error(Exchange exchange, int status, String code, String message) throws IOException {
+        if ("HEAD".equals(exchange.method)) {
+            exchange.respond(status, null);
+            return;
+        }
+        StringBuilder xml = new StringBuilder("<Error>");
+        element(xml, "Code", code);
+        element(xml, "Message", message);
+        xml.append("</Error>");
+        xml(exchange, status, xml.toString());
+    }
+
+    private static void xml(Exchange exchange, int status, String body) throws IOException {
+        exchange.responseHeaders.put("Content-Type", "application/xml");
+        exchange.respond(status, ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + body).getBytes(UTF_8));
+    }
+
+    private static void element(StringBuilder xml, String name, String value) {
+        xml.append('<').append(name).append('>');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '<') {
+                xml.append("&lt;");
+            } else if (c == '>') {
+                xml.append("&gt;");
+            } else if (c == '&') {
+                xml.append("&amp;");
+            } else if (c == '"') {
+                xml.append("&quot;");
+            } else {
+                xml.append(c);
+            }
+        }
+        xml.append("</").append(name).append('>');
+    }
+
+    private static Map<String, String> query(String rawQuery) throws UnsupportedEncodingException {
+        Map<String, String> query = new HashMap<String, String>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String parameter : rawQuery.split("&")) {
+            int split = parameter.indexOf('=');
+            if (split < 0) {
+                query.put(decode(parameter), "");
+            } else {
+                query.put(decode(parameter.substring(0, split)), decode(parameter.substring(split + 1)));
+            }
+        }
+        return query;
+    }
+
+    private static String decode(String value) throws UnsupportedEncodingException {
+        return URLDecoder.decode(value.replace("+", "%2B"), UTF_8);
+    }
+
+    private static String encode(String value, boolean urlEncoded) throws UnsupportedEncodingException {
+        return urlEncoded ? URLEncoder.encode(value, UTF_8).replace("+", "%20") : value;
+    }
+
+    private static SimpleDateFormat dateFormat(String pattern) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format;
+    }
+
+    static class Exchange {
+
+        final String method;
+        final String rawPath;
+        final String rawQuery;
+        final Map<String, String> responseHeaders = new LinkedHashMap<String, String>();
+        private final OutputStream out;
+
+        private Exchange(String method, String target, OutputStream out) {
+            this.method = method;
+            int query = target.indexOf('?');
+            this.rawPath = query < 0 ? target : target.substring(0, query);
+            this.rawQuery = query < 0 ? null : target.substring(query + 1);
+            this.out = out;
+        }
+
+        static Exchange read(InputStream in, OutputStream out) throws IOException {
+            String requestLine = line(in);
+            if (requestLine == null || requestLine.isEmpty()) {
+                return null;
+            }
+            String[] parts = requestLine.split(" ");
+            long contentLength = 0;
+            String header;
+            while ((header = line(in)) != null && !header.isEmpty()) {
+                if (header.toLowerCase(Locale.US).startsWith("content-length:")) {
+                    contentLength = Long.parseLong(header.substring("content-length:".length()).trim());
+                }
+            }
+            for (long skipped = 0; skipped < contentLength; skipped++) {
+                in.read();
+            }
+            return new Exchange(parts[0], parts[1], out);
+        }
+
+        private static String line(InputStream in) throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) != -1 && b != '\n') {
+                if (b != '\r') {
+                    line.write(b);
+                }
+            }
+            return b == -1 && line.size() == 0 ? null : line.toString(UTF_8);
+        }
+
+        // A null body answers a HEAD request or an empty response.
+        void respond(int status, byte[] body) throws IOException {
+            StringBuilder head = new StringBuilder("HTTP/1.1 ").append(status).append(status < 400 ? " OK" : " Error").append("\r\n");
+            head.append("x-amz-request-id: fake\r\n");
+            for (Map.Entry<String, String> header : responseHeaders.entrySet()) {
+                head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+            }
+            head.append("Content-Length: ").append(body == null ? 0 : body.length).append("\r\n\r\n");
+            out.write(head.toString().getBytes(UTF_8));
+            if (body != null) {
+                out.write(body);
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.schibsted.gocd.s3poller.inventory;
+
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.S3Object;
+import com.schibsted.gocd.s3poller.KeyTrie;
+import com.schibsted.gocd.s3poller.ListingResult;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class InventoryScannerTest {
+
+    private static final String MANIFEST_JSON = "{\"sourceBucket\":\"bucket\",\"destinationBucket\":\"arn:aws:s3:::inventory\"," +
+        "\"version\":\"2016-11-30\",\"creationTimestamp\":\"1435744800000\",\"fileFormat\":\"CSV\"," +
+        "\"fileSchema\":\"Bucket, Key, Size, LastModifiedDate, ETag\",\"files\":[" +
+        "{\"key\":\"reports/bucket/all/data/a.csv.gz\"},{\"key\":\"reports/bucket/all/data/b.csv.gz\"}]}";
+
+    @Mock
+    AmazonS3Client client;
+
+    InventoryScanner scanner;
+
+    @Before
+    public void setUp() {
+        scanner = new InventoryScanner(client);
+    }
+
+    @Test
+    public void resolvesLatestSnapshotManifestTest() {
+        ObjectListing listing = new ObjectListing();
+        listing.setCommonPrefixes(Arrays.asList(
+            "reports/bucket/all/2015-06-30T00-00Z/", "reports/bucket/all/2015-07-01T00-00Z/",
+            "reports/bucket/all/data/", "reports/bucket/all/hive/"));
+        when(client.listObjects(any(ListObjectsRequest.class))).thenReturn(listing);
+
+        assertEquals("reports/bucket/all/2015-07-01T00-00Z/manifest.json",
+            scanner.resolveManifestKey("inventory", "reports/bucket/all"));
+    }
+
+    @Test
+    public void scansDataFilesForNewestObjectUnderPrefixTest() throws IOException {
+        when(client.getObject("inventory", "manifest.json")).thenReturn(object(MANIFEST_JSON.getBytes("UTF-8")));
+        when(client.getObject("inventory", "reports/bucket/all/data/a.csv.gz")).thenReturn(object(gzip(
+            "\"bucket\",\"releases/app-1.tgz\",\"10\",\"2015-06-01T10:00:00.000Z\",\"etag-1\"\n" +
+            "\"bucket\",\"releases/app%2B2.tgz\",\"10\",\"2015-06-03T10:00:00.000Z\",\"etag-2\"\n")));
+        when(client.getObject("inventory", "reports/bucket/all/data/b.csv.gz")).thenReturn(object(gzip(
+            "\"bucket\",\"other/app-9.tgz\",\"10\",\"2015-06-09T10:00:00.000Z\",\"etag-9\"\n" +
+            "\"bucket\",\"releases/app-3.tgz\",\"10\",\"2015-06-02T10:00:00.000Z\",\"etag-3\"\n")));
+
+        InventoryManifest manifest = scanner.readManifest("inventory", "manifest.json");
+        ListingResult result = scanner.scan("inventory", manifest, "releases/");
+
+        assertEquals("releases/app+2.tgz", result.getLatest().getKey());
+        assertEquals("etag-2", result.getLatest().getETag());
+        assertEquals("bucket", result.getLatest().getBucketName());
+        assertEquals("releases/app-3.tgz", result.getLastKey());
+        assertEquals(3, result.getKeyCount());
+    }
+
+    @Test
+    public void scansEveryKeyIntoATrieTest() throws IOException {
+        when(client.getObject("inventory", "manifest.json")).thenReturn(object(MANIFEST_JSON.getBytes("UTF-8")));
+        when(client.getObject("inventory", "reports/bucket/all/data/a.csv.gz")).thenReturn(object(gzip(
+            "\"bucket\",\"releases/app-1.tgz\",\"10\",\"2015-06-01T10:00:00.000Z\",\"etag-1\"\n" +
+            "\"bucket\",\"releases/\",\"0\",\"2015-06-04T10:00:00.000Z\",\"etag-0\"\n")));
+        when(client.getObject("inventory", "reports/bucket/all/data/b.csv.gz")).thenReturn(object(gzip(
+            "\"bucket\",\"other/app-9.tgz\",\"10\",\"2015-06-09T10:00:00.000Z\",\"etag-9\"\n" +
+            "\"bucket\",\"releases/app-3.tgz\",\"10\",\"2015-06-02T10:00:00.000Z\",\"etag-3\"\n")));
+
+        KeyTrie keys = new KeyTrie(100);
+        scanner.scan("inventory", scanner.readManifest("inventory", "manifest.json"), "", keys.indexing());
+
+        assertEquals(3, keys.size());
+        assertEquals("etag-3", keys.latestUnder("bucket", "releases/").getLatest().getETag());
+        assertEquals("other/app-9.tgz", keys.latestUnder("bucket", "").getLatest().getKey());
+        assertEquals("releases/app-3.tgz", keys.greatestKeyUnder("releases/"));
+    }
+
+    @Test
+    public void parsesQuotedCsvFieldsTest() {
+        List<String> fields = new ArrayList<String>();
+        InventoryScanner.parseCsvLine("\"a,b\",\"say \"\"hi\"\"\",,plain", fields);
+        assertEquals(Arrays.asList("a,b", "say \"hi\"", "", "plain"), fields);
+    }
+
+    private static S3Object object(byte[] content) {
+        S3Object object = new S3Object();
+        object.setObjectContent(new ByteArrayInputStream(content));
+        return object;
+    }
+
+    private static byte[] gzip(String content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+        gzip.write(content.getBytes("UTF-8"));
+        gzip.close();
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,92 @@
+package com.schibsted.gocd.s3poller.metrics;
+
+import com.schibsted.gocd.s3poller.LruCache;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PollMetricsTest {
+
+    @Test
+    public void histogramQuantileTest() {
+        Histogram histogram = new Histogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(2000000L);
+        }
+        histogram.record(3000000000L);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(0.0025, histogram.quantile(0.5), 0);
+        assertEquals(0.0025, histogram.quantile(0.99), 0);
+        assertEquals(5, histogram.quantile(1), 0);
+        assertEquals(99, histogram.cumulativeCount(1));
+        assertEquals(100, histogram.cumulativeCount(Histogram.BOUNDS.length));
+    }
+
+    @Test
+    public void countsCallsByKindTest() {
+        PollMetrics metrics = new PollMetrics();
+        long started = System.nanoTime();
+        metrics.handle("latest-revision").record(started, true);
+        metrics.s3("listObjects", "bucket").record(started, false);
+        metrics.poll("bucket", "path/").addListed(1000, 1);
+        metrics.poll("bucket", "path/").addListed(500, 1);
+        metrics.poll("bucket", "path/").record(started, true);
+
+        assertEquals(1, metrics.getHandledRequests());
+        assertEquals(0, metrics.getHandleErrors());
+        assertEquals(1, metrics.getS3Errors());
+        assertEquals(1500, metrics.getKeysScanned());
+        assertEquals(2, metrics.getPagesFetched());
+        assertEquals(1, metrics.getSlowestPackages().length);
+        assertTrue(metrics.getSlowestPackages()[0].startsWith("bucket=\"bucket\",path=\"path/\""));
+    }
+
+    @Test
+    public void prometheusTextTest() {
+        PollMetrics metrics = new PollMetrics();
+        metrics.poll("bucket", "path/").record(System.nanoTime(), false);
+        metrics.poll("bucket", "path/").addListed(3, 1);
+        metrics.poll("bucket", "path/").setStrategy("CURSOR");
+
+        String text = metrics.getPrometheusText();
+
+        assertTrue(text, text.contains("# TYPE s3poller_poll_seconds histogram\n"));
+        assertTrue(text, text.contains("s3poller_poll_seconds_bucket{bucket=\"bucket\",path=\"path/\",le=\"+Inf\"} 1\n"));
+        assertTrue(text, text.contains("s3poller_poll_seconds_count{bucket=\"bucket\",path=\"path/\"} 1\n"));
+        assertTrue(text, text.contains("s3poller_poll_errors_total{bucket=\"bucket\",path=\"path/\"} 1\n"));
+        assertTrue(text, text.contains("s3poller_poll_keys_scanned_total{bucket=\"bucket\",path=\"path/\"} 3\n"));
+        assertTrue(text, text.contains("s3poller_poll_pages_total{bucket=\"bucket\",path=\"path/\"} 1\n"));
+        assertTrue(text, text.contains("s3poller_poll_strategy{bucket=\"bucket\",path=\"path/\",strategy=\"CURSOR\"} 1\n"));
+    }
+
+    @Test
+    public void exposesCacheStatsTest() {
+        PollMetrics metrics = new PollMetrics();
+        LruCache<String, String> listingCache = new LruCache<String, String>(1, 0);
+        metrics.cache(PollMetrics.LISTING_CACHE, listingCache);
+        metrics.cache(PollMetrics.METADATA_CACHE, new LruCache<String, String>(10, 0));
+        listingCache.put("a", "1");
+        listingCache.get("a");
+        listingCache.put("b", "2");
+        listingCache.get("a");
+        listingCache.get("c");
+
+        assertEquals(1, metrics.getListingCacheHits());
+        assertEquals(2, metrics.getListingCacheMisses());
+        assertEquals(1, metrics.getListingCacheEvictions());
+        assertEquals(1, metrics.getListingCacheSize());
+        assertEquals(0, metrics.getMetadataCacheMisses());
+
+        String text = metrics.getPrometheusText();
+
+        assertTrue(text, text.contains("# TYPE s3poller_cache_hits_total counter\n"));
+        assertTrue(text, text.contains("s3poller_cache_hits_total{cache=\"listing\"} 1\n"));
+        assertTrue(text, text.contains("s3poller_cache_misses_total{cache=\"listing\"} 2\n"));
+        assertTrue(text, text.contains("s3poller_cache_evictions_total{cache=\"listing\"} 1\n"));
+        assertTrue(text, text.contains("# TYPE s3poller_cache_size gauge\n"));
+        assertTrue(text, text.contains("s3poller_cache_size{cache=\"listing\"} 1\n"));
+        assertTrue(text, text.contains("s3poller_cache_size{cache=\"metadata\"} 0\n"));
+    }
+}